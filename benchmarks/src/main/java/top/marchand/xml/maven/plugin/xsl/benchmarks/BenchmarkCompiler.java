@@ -0,0 +1,76 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.benchmarks;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import javax.xml.transform.stream.StreamSource;
+import net.sf.saxon.s9api.SaxonApiException;
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import top.marchand.xml.maven.plugin.xsl.CompilerEngine;
+
+/**
+ * A compiler without Maven project, to call {@link CompilerEngine} methods
+ * from benchmarks. There is no extension function, no manifest, no cache and
+ * no report.
+ * @author cmarchand
+ */
+public class BenchmarkCompiler extends CompilerEngine {
+    /**
+     * A log that only shows warnings and errors, not to measure logging
+     */
+    public static final Log QUIET_LOG = new DefaultLog(new ConsoleLogger(ConsoleLogger.LEVEL_WARN, "benchmark"));
+
+    public BenchmarkCompiler(final File catalog) {
+        super();
+        setCatalogFile(catalog);
+        setLog(QUIET_LOG);
+    }
+
+    /**
+     * Compiles {@code sourceFile} to {@code targetFile}, as workers do.
+     * @param sourceFile The stylesheet
+     * @param targetFile The file to generate
+     * @return {@code true} if source was a package
+     * @throws SaxonApiException In case of failure
+     * @throws FileNotFoundException In case of failure
+     */
+    public boolean compile(final File sourceFile, final File targetFile) throws SaxonApiException, FileNotFoundException {
+        return compileFile(new StreamSource(sourceFile), targetFile, getBuilder(), newXsltCompiler());
+    }
+
+    /**
+     * Compiles a package without saving it, and makes it available to next compilations.
+     * @param packageFile The package source
+     * @throws SaxonApiException In case of failure
+     */
+    public void preparePackage(final File packageFile) throws SaxonApiException {
+        registerPackage(getXsltCompiler().compilePackage(new StreamSource(packageFile)));
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.benchmarks;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.xml.transform.stream.StreamSource;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XsltExecutable;
+import net.sf.saxon.trans.XPathException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks compilation of a module and of a package, through
+ * {@code compileFile}, and export of a compiled module.
+ * Export needs Saxon-EE ; with Saxon-HE, only {@code compileOnly} runs.
+ * @author cmarchand
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CompileBenchmark {
+    @Param({"4"})
+    public int fanOut;
+
+    @Param({"20", "500"})
+    public int templates;
+
+    private Path corpus;
+    private BenchmarkCompiler compiler;
+    private File module;
+    private File pack;
+    private File target;
+    private XsltExecutable executable;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SaxonApiException, XPathException {
+        corpus = Files.createTempDirectory("compileBenchmark");
+        List<Path> stylesheets = new CorpusGenerator().files(2).fanOut(fanOut).fanIn(1).templates(templates).packages(1).generate(corpus);
+        module = stylesheets.get(0).toFile();
+        pack = corpus.resolve("pkg/package0.xsl").toFile();
+        target = corpus.resolve("out/target.sef").toFile();
+        compiler = new BenchmarkCompiler(null);
+        compiler.initSaxon();
+        // modules may use the package
+        compiler.preparePackage(pack);
+        executable = compiler.getXsltCompiler().compile(new StreamSource(module));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try(java.util.stream.Stream<Path> stream = Files.walk(corpus)) {
+            stream.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public boolean compileModule() throws SaxonApiException, FileNotFoundException {
+        return compiler.compile(module, target);
+    }
+
+    @Benchmark
+    public boolean compilePackage() throws SaxonApiException, FileNotFoundException {
+        // a package name can be registered only once
+        compiler.resetBuildState();
+        return compiler.compile(pack, target);
+    }
+
+    @Benchmark
+    public XsltExecutable compileOnly() throws SaxonApiException {
+        return compiler.getXsltCompiler().compile(new StreamSource(module));
+    }
+
+    @Benchmark
+    public void export() throws SaxonApiException {
+        executable.export(OutputStream.nullOutputStream());
+    }
+}
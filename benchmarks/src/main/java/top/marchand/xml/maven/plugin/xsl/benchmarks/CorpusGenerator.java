@@ -0,0 +1,178 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a synthetic stylesheets corpus :
+ * <ul>
+ * <li>{@code main/dNN/mainNNNN.xsl} : the stylesheets to compile, {@code filesPerDir} per directory,
+ * each one importing {@code fanOut} libraries</li>
+ * <li>{@code lib/libNNNN.xsl} : the libraries, each one imported by about {@code fanIn} stylesheets</li>
+ * <li>{@code pkg/packageN.xsl} : {@code xsl:package}s, used by the stylesheets that import the first library</li>
+ * </ul>
+ * Each module declares {@code templates} templates, that drives its size.
+ * The same parameters always generate the same corpus.
+ * <p>Usage : {@code java ... CorpusGenerator <dir> [files] [fanOut] [fanIn] [templates] [packages]}</p>
+ * @author cmarchand
+ */
+public class CorpusGenerator {
+    private static final String XSL_NS = "http://www.w3.org/1999/XSL/Transform";
+    private int files = 1000;
+    private int fanOut = 4;
+    private int fanIn = 20;
+    private int templates = 20;
+    private int packages = 1;
+    private int filesPerDir = 50;
+    private long seed = 42;
+
+    public CorpusGenerator files(final int files) { this.files = files; return this; }
+    public CorpusGenerator fanOut(final int fanOut) { this.fanOut = fanOut; return this; }
+    public CorpusGenerator fanIn(final int fanIn) { this.fanIn = fanIn; return this; }
+    public CorpusGenerator templates(final int templates) { this.templates = templates; return this; }
+    public CorpusGenerator packages(final int packages) { this.packages = packages; return this; }
+    public CorpusGenerator filesPerDir(final int filesPerDir) { this.filesPerDir = filesPerDir; return this; }
+    public CorpusGenerator seed(final long seed) { this.seed = seed; return this; }
+
+    /**
+     * The number of libraries, so that each one is imported by about {@code fanIn} stylesheets
+     * @return The number of libraries
+     */
+    public int getLibraries() {
+        return Math.max(fanOut, Math.max(1, files*fanOut/Math.max(1, fanIn)));
+    }
+
+    /**
+     * Generates the corpus in {@code dir}
+     * @param dir The directory to generate into
+     * @return The generated stylesheets to compile, libraries and packages excluded
+     * @throws IOException If a file can not be written
+     */
+    public List<Path> generate(final Path dir) throws IOException {
+        Random random = new Random(seed);
+        int libraries = getLibraries();
+        for(int p=0; p<packages; p++) {
+            write(dir.resolve("pkg/package"+p+".xsl"), packageModule(p));
+        }
+        for(int l=0; l<libraries; l++) {
+            write(dir.resolve(String.format("lib/lib%04d.xsl", l)), module("lib"+l, Collections.emptyList(), false));
+        }
+        List<Integer> all = new ArrayList<>(libraries);
+        for(int l=0; l<libraries; l++) all.add(l);
+        List<Path> ret = new ArrayList<>(files);
+        for(int f=0; f<files; f++) {
+            Collections.shuffle(all, random);
+            List<String> imports = new ArrayList<>(fanOut);
+            boolean usesPackages = false;
+            for(int l: all.subList(0, Math.min(fanOut, libraries))) {
+                imports.add(String.format("../../lib/lib%04d.xsl", l));
+                usesPackages |= l==0;
+            }
+            Collections.sort(imports);
+            Path main = dir.resolve(String.format("main/d%02d/main%04d.xsl", f/Math.max(1, filesPerDir), f));
+            write(main, module("main"+f, imports, usesPackages));
+            ret.add(main);
+        }
+        return ret;
+    }
+
+    private String module(final String name, final List<String> imports, final boolean usesPackages) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<xsl:stylesheet xmlns:xsl=\"").append(XSL_NS).append("\" xmlns:xs=\"http://www.w3.org/2001/XMLSchema\"")
+                .append(" xmlns:p=\"urn:bench:pkg\" exclude-result-prefixes=\"#all\" version=\"3.0\">\n");
+        for(String href: imports) {
+            sb.append("  <xsl:import href=\"").append(href).append("\"/>\n");
+        }
+        if(usesPackages) {
+            for(int p=0; p<packages; p++) {
+                sb.append("  <xsl:use-package name=\"urn:bench:package").append(p).append("\" package-version=\"1.0\"/>\n");
+            }
+        }
+        appendTemplates(sb, name, usesPackages && packages>0);
+        return sb.append("</xsl:stylesheet>\n").toString();
+    }
+
+    private String packageModule(final int p) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<xsl:package xmlns:xsl=\"").append(XSL_NS).append("\" xmlns:xs=\"http://www.w3.org/2001/XMLSchema\"")
+                .append(" xmlns:p=\"urn:bench:pkg\" name=\"urn:bench:package").append(p).append("\" package-version=\"1.0\"")
+                .append(" exclude-result-prefixes=\"#all\" version=\"3.0\">\n");
+        for(int t=0; t<templates; t++) {
+            sb.append("  <xsl:function name=\"p:f").append(p).append('_').append(t).append("\" as=\"xs:string\" visibility=\"public\">\n")
+                    .append("    <xsl:param name=\"s\" as=\"xs:string\"/>\n")
+                    .append("    <xsl:sequence select=\"upper-case($s) || '").append(t).append("'\"/>\n")
+                    .append("  </xsl:function>\n");
+        }
+        // modes of a package must be declared
+        sb.append("  <xsl:mode name=\"package").append(p).append("\"/>\n");
+        appendTemplates(sb, "package"+p, false);
+        return sb.append("</xsl:package>\n").toString();
+    }
+
+    private void appendTemplates(final StringBuilder sb, final String name, final boolean callPackage) {
+        for(int t=0; t<templates; t++) {
+            sb.append("  <xsl:template match=\"").append(name).append("-e").append(t).append("\" mode=\"").append(name).append("\">\n")
+                    .append("    <xsl:variable name=\"v\" select=\"string-join(for $i in 1 to count(*) return string($i), ',')\"/>\n")
+                    .append("    <out n=\"{").append(callPackage ? "p:f0_0($v)" : "$v").append("}\">\n")
+                    .append("      <xsl:apply-templates select=\"@*, node()\" mode=\"").append(name).append("\"/>\n")
+                    .append("    </out>\n")
+                    .append("  </xsl:template>\n");
+        }
+    }
+
+    private static void write(final Path file, final String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        try(Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(content);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length<1) {
+            System.err.println("Usage: CorpusGenerator <dir> [files] [fanOut] [fanIn] [templates] [packages]");
+            System.exit(1);
+        }
+        CorpusGenerator generator = new CorpusGenerator();
+        if(args.length>1) generator.files(Integer.parseInt(args[1]));
+        if(args.length>2) generator.fanOut(Integer.parseInt(args[2]));
+        if(args.length>3) generator.fanIn(Integer.parseInt(args[3]));
+        if(args.length>4) generator.templates(Integer.parseInt(args[4]));
+        if(args.length>5) generator.packages(Integer.parseInt(args[5]));
+        List<Path> generated = generator.generate(new File(args[0]).toPath());
+        System.out.println(generated.size()+" stylesheets and "+generator.getLibraries()+" libraries generated in "+args[0]);
+    }
+}
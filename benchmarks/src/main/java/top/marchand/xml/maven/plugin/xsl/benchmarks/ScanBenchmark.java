@@ -0,0 +1,115 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import top.marchand.xml.maven.plugin.xsl.FileSet;
+import top.marchand.xml.maven.plugin.xsl.scandir.DirectoryScanner;
+import top.marchand.xml.maven.plugin.xsl.scandir.GlobMatcher;
+
+/**
+ * Benchmarks fileset scanning and glob matching on a generated corpus.
+ * @author cmarchand
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanBenchmark {
+    @Param({"1000", "10000"})
+    public int files;
+
+    @Param({"default", "many"})
+    public String patterns;
+
+    private Path corpus;
+    private FileSet fileset;
+    private GlobMatcher includes;
+    private GlobMatcher excludes;
+    private List<Path> relativePaths;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        corpus = Files.createTempDirectory("scanBenchmark");
+        new CorpusGenerator().files(files).templates(1).generate(corpus);
+        fileset = new FileSet(corpus.toString());
+        if("many".equals(patterns)) {
+            for(int i=0; i<20; i++) {
+                fileset.getIncludes().add("main/d"+String.format("%02d", i)+"/**/*.xsl");
+                fileset.getExcludes().add("**/generated"+i+"/**");
+                fileset.getExcludes().add("**/*.bak"+i);
+            }
+            fileset.getExcludes().add("regex:.*/tmp[0-9]+/.*");
+        }
+        includes = new GlobMatcher(fileset.getIncludes());
+        excludes = new GlobMatcher(fileset.getExcludes());
+        relativePaths = new ArrayList<>();
+        try(java.util.stream.Stream<Path> stream = Files.walk(corpus)) {
+            stream.filter(Files::isRegularFile).forEach(p -> relativePaths.add(corpus.relativize(p)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try(java.util.stream.Stream<Path> stream = Files.walk(corpus)) {
+            stream.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public List<Path> scan() {
+        return new DirectoryScanner(fileset, corpus.toFile(), BenchmarkCompiler.QUIET_LOG).scan();
+    }
+
+    @Benchmark
+    public void globMatching(final Blackhole blackhole) {
+        for(Path rel: relativePaths) {
+            blackhole.consume(includes.matches(rel) && !excludes.matches(rel));
+        }
+    }
+}
@@ -29,43 +29,29 @@ package top.marchand.xml.maven.plugin.xsl;
 import com.google.common.base.Joiner;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.xml.transform.URIResolver;
-import javax.xml.transform.stream.StreamSource;
 import net.sf.saxon.Configuration;
-import net.sf.saxon.lib.ExtensionFunctionDefinition;
-import net.sf.saxon.s9api.Axis;
 import net.sf.saxon.s9api.DocumentBuilder;
 import net.sf.saxon.s9api.Processor;
 import net.sf.saxon.s9api.SaxonApiException;
-import net.sf.saxon.s9api.XPathCompiler;
-import net.sf.saxon.s9api.XPathExecutable;
-import net.sf.saxon.s9api.XPathSelector;
-import net.sf.saxon.s9api.XdmItem;
 import net.sf.saxon.s9api.XdmNode;
-import net.sf.saxon.s9api.XdmSequenceIterator;
 import net.sf.saxon.s9api.XsltCompiler;
-import net.sf.saxon.s9api.XsltExecutable;
-import net.sf.saxon.s9api.XsltPackage;
 import net.sf.saxon.trans.XPathException;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.DependencyResolutionRequiredException;
-import org.apache.maven.artifact.resolver.filter.ArtifactFilter;
-import org.apache.maven.artifact.versioning.OverConstrainedVersionException;
 import org.apache.maven.plugin.AbstractMojo;
-import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.DefaultProjectBuildingRequest;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.ProjectBuildingRequest;
@@ -74,49 +60,177 @@ import org.apache.maven.shared.dependency.graph.DependencyGraphBuilderException;
 import org.apache.maven.shared.dependency.graph.DependencyNode;
 import org.apache.maven.shared.dependency.graph.traversal.DependencyNodeVisitor;
 import org.xml.sax.ext.EntityResolver2;
-import org.xmlresolver.Catalog;
-import org.xmlresolver.Resolver;
 import top.marchand.maven.saxon.utils.SaxonOptions;
-import top.marchand.maven.saxon.utils.SaxonUtils;
-import top.marchand.xml.maven.plugin.xsl.parsers.XcSAXParserFactory;
+import top.marchand.xml.maven.plugin.xsl.cache.ArtifactCache;
+import top.marchand.xml.maven.plugin.xsl.extensions.DescriptorProbe;
+import top.marchand.xml.maven.plugin.xsl.extensions.ExtensionDiscovery;
+import top.marchand.xml.maven.plugin.xsl.extensions.ExtensionFunctions;
+import top.marchand.xml.maven.plugin.xsl.jfr.ExtensionLoadingEvent;
+import top.marchand.xml.maven.plugin.xsl.packages.PackageArchive;
+import top.marchand.xml.maven.plugin.xsl.packages.PackageArchive.PackageInfo;
 
 /**
  * Ancestor class with all required code to compile a XSL
  *
+ * Compilation is made by a {@link CompilerEngine}, configured from the mojo
+ * parameters by {@link #initSaxon() }. This class finds what depends on the
+ * Maven project : extension functions and dependencies packages.
+ *
+ * All mutable state belongs to the instance : Maven creates one per
+ * execution, so that executions of a parallel build do not share anything
+ * but the Saxon contexts returned by {@link #getSharedContexts() }.
+ *
  * @author <a href="mailto:christophe@marchand.top">Christophe Marchand</a>
  */
 public abstract class AbstractCompiler extends AbstractMojo {
-    protected DocumentBuilder builder;
-    protected XsltCompiler compiler;
     private static final String LOG_PREFIX = "[AbstractXslCompiler] ";
-    private List<URL> addedToSaxonJars;
+    private CompilerEngine engine;
+    private ExtensionDiscovery extensionDiscovery;
+    private boolean extensionDiscoveryReused;
+    private List<File> dependencyPackageArchives;
     
     public abstract DependencyGraphBuilder getGraphBuilder();
 
     public abstract MavenProject getProject();
+
     /**
      * The catalog file to use. It may retruns null.
      * @return The catalog file to use.
      */
     public abstract File getCatalogFile();
 
+    /**
+     * If {@code true}, the {@code uri} entries of the catalog, and of the
+     * catalogs it chains to, are indexed once when Saxon is initialized.
+     * @return {@code true} if the catalog is indexed
+     */
+    public abstract boolean isCatalogIndexed();
+
+    /**
+     * The file where the build manifest is stored. If {@code null}, incremental
+     * compilation is disabled, and all stylesheets are compiled.
+     * @return The manifest file
+     */
+    public abstract File getManifestFile();
+
+    /**
+     * The file where the result of extension functions discovery is stored.
+     * If {@code null}, discovery is made on each build.
+     * @return The discovery file
+     */
+    public abstract File getExtensionDiscoveryFile();
+
+    /**
+     * The maximum number of parsed modules kept in memory, to be shared by all
+     * compilations. If 0, modules are parsed each time they are imported or included.
+     * @return The number of modules to keep
+     */
+    public abstract int getModuleCacheSize();
+
+    /**
+     * The cache where compiled files are stored and fetched from. If
+     * {@code null}, no cache is used. The cache is closed at the end of
+     * {@link #compileUnits(java.util.List, int) }.
+     * @return The artifact cache
+     */
+    public abstract ArtifactCache getArtifactCache();
+
+    /**
+     * The file where the compilation report is written, without extension :
+     * a {@code .json} and a {@code .csv} files are written. If {@code null},
+     * no report is written.
+     * @return The report file
+     */
+    public abstract File getReportFile();
+
+    /**
+     * The number of slowest stylesheets to log at the end of the build.
+     * @return The number of stylesheets to log
+     */
+    public abstract int getReportSlowest();
+
+    /**
+     * If {@code true}, compiled stylesheets and packages are written gzip-compressed.
+     * @return {@code true} if compiled files are compressed
+     */
+    public abstract boolean isSefCompressed();
+
+    /**
+     * The Saxon contexts shared by all executions of the build, by key. If
+     * {@code null}, this execution initializes Saxon for itself.
+     * @return The shared contexts
+     */
+    public abstract Map<String,SaxonContext> getSharedContexts();
+
+    /**
+     * If {@code true}, the compiled packages that dependencies publish are
+     * imported, and the units that are the same packages are not compiled.
+     * @return {@code true} if dependencies packages are imported
+     */
+    public abstract boolean isDependencyPackagesImported();
+
+    /**
+     * Returns the SaxonOptions associated to this plugin
+     * @return Saxon optiones
+     */
+    public abstract SaxonOptions getSaxonOptions();
+
+    /**
+     * Initialize Saxon configuration : creates the engine, and configures it
+     * from the mojo parameters.
+     * @throws net.sf.saxon.trans.XPathException In case of problem
+     */
+    protected void initSaxon() throws XPathException {
+        extensionDiscovery = null;
+        engine = createEngine();
+        engine.setLog(getLog());
+        engine.setCatalogFile(getCatalogFile());
+        engine.setCatalogIndexed(isCatalogIndexed());
+        engine.setSaxonOptions(getSaxonOptions());
+        engine.setManifestFile(getManifestFile());
+        engine.setModuleCacheSize(getModuleCacheSize());
+        engine.setArtifactCache(getArtifactCache());
+        engine.setReportFile(getReportFile());
+        engine.setReportSlowest(getReportSlowest());
+        engine.setSefCompressed(isSefCompressed());
+        engine.setSharedContexts(getSharedContexts());
+        engine.setDependencyPackageArchives(getDependencyPackageArchives());
+        engine.initSaxon();
+    }
+
+    /**
+     * Creates the engine {@link #initSaxon() } configures. It loads the
+     * extension functions of project dependencies.
+     * @return A new engine
+     */
+    protected CompilerEngine createEngine() {
+        return new ProjectCompilerEngine();
+    }
+
+    /**
+     * The engine created by last {@link #initSaxon() }
+     * @return The engine
+     */
+    protected CompilerEngine getEngine() { return engine; }
+
+    /**
+     * Releases what {@link #initSaxon() } has created, unless it is shared
+     * with other executions of the build.
+     */
+    protected void closeSaxon() {
+        if(engine!=null) engine.closeSaxon();
+    }
+
     /**
      * Compiles a {@code source} to a {@code targetFile}.
-     * If the file is a {@code&lt;package&gt;}, {@link #compilePackage(net.sf.saxon.s9api.XdmNode, java.io.File) } is called,
-     * else {@link #compileModule(net.sf.saxon.s9api.XdmNode, java.io.File) } is called.
      * @param source The source file to compile
      * @param targetFile The target file to generate
      * @throws SaxonApiException In case of failure
      * @throws FileNotFoundException In case of failure
+     * @see CompilerEngine#compileFile(javax.xml.transform.Source, java.io.File) 
      */
     protected void compileFile(final javax.xml.transform.Source source, final File targetFile) throws SaxonApiException, FileNotFoundException {
-        XdmNode document = builder.build(source);
-        XdmNode documentRoot = (XdmNode) document.axisIterator(Axis.CHILD).next();
-        if (documentRoot.getNodeName().getLocalName().equals("package")) {
-            compilePackage(documentRoot, targetFile);
-        } else {
-            compileModule(documentRoot, targetFile);
-        }
+        engine.compileFile(source, targetFile);
     }
 
     /**
@@ -127,9 +241,7 @@ public abstract class AbstractCompiler extends AbstractMojo {
      * @throws FileNotFoundException In case of failure
      */
     protected void compileModule(final XdmNode document, final File targetFile) throws SaxonApiException, FileNotFoundException {
-        XsltExecutable exec = compiler.compile(document.asSource());
-        targetFile.getParentFile().mkdirs();
-        exec.export(new FileOutputStream(targetFile));
+        engine.compileModule(document, targetFile);
     }
 
     /**
@@ -139,87 +251,109 @@ public abstract class AbstractCompiler extends AbstractMojo {
      * @throws SaxonApiException In case of failure
      */
     protected void compilePackage(final XdmNode document, final File targetFile) throws SaxonApiException {
-        XsltPackage pack = compiler.compilePackage(document.asSource());
-        pack.save(targetFile);
-        compiler.importPackage(pack);
+        engine.compilePackage(document, targetFile);
     }
 
     /**
-     * Initialize Saxon configuration
-     * @throws net.sf.saxon.trans.XPathException In case of problem
+     * Compiles all {@code units}, on {@code threads} workers.
+     * @param units The units to compile
+     * @param threads The number of workers. If less than 2, compilation is sequential
+     * @return {@code true} if at least one unit failed to compile
+     * @see CompilerEngine#compileUnits(java.util.List, int) 
      */
-    protected void initSaxon() throws XPathException {
-        Configuration config = Configuration.newConfiguration();
-        addedToSaxonJars = new ArrayList<>();
-        config.setSourceParserClass(XcSAXParserFactory.class.getName());
-        Processor proc = new Processor(config);
-        SaxonUtils.prepareSaxonConfiguration(proc,getSaxonOptions());
-        if(getSaxonOptions()!=null ) {
-            compiler.setRelocatable("on".equals(getSaxonOptions().getRelocate()));
+    protected boolean compileUnits(final List<CompilationUnit> units, final int threads) {
+        return engine.compileUnits(units, threads);
+    }
+
+    /**
+     * Compiles units while they are found by a running scan.
+     * @param stream The units, as they are found
+     * @param threads The number of workers
+     * @return {@code true} if at least one unit failed to compile
+     * @see CompilerEngine#compileUnits(java.util.Iterator, int) 
+     */
+    protected boolean compileUnits(final Iterator<CompilationUnit> stream, final int threads) {
+        return engine.compileUnits(stream, threads);
+    }
+
+    /**
+     * Forgets what has been learned during previous build.
+     * @see CompilerEngine#resetBuildState() 
+     */
+    protected void resetBuildState() {
+        engine.resetBuildState();
+    }
+
+    /**
+     * The packages files saved by last compilation : compiled, reused, or up
+     * to date, with their names, versions and sources keys
+     * @return The packages files
+     */
+    protected Map<File,PackageInfo> getPackageFiles() {
+        return engine.getPackageFiles();
+    }
+
+    /**
+     * The jars and directories of compile classpath that contain compiled
+     * packages, as published by {@link PackageArchive}. Empty if dependencies
+     * packages are not imported.
+     * @return The packages archives
+     */
+    protected List<File> getDependencyPackageArchives() {
+        if(dependencyPackageArchives!=null) return dependencyPackageArchives;
+        List<File> ret = new ArrayList<>();
+        if(isDependencyPackagesImported() && getProject()!=null) {
+            try {
+                final List<String> classpath = getProject().getCompileClasspathElements();
+                for(String element: classpath) {
+                    File file = new File(element);
+                    if(PackageArchive.containsPackages(file)) ret.add(file);
+                }
+            } catch(DependencyResolutionRequiredException ex) {
+                getLog().debug(LOG_PREFIX+"compile classpath is unknown, no package is imported: "+ex.getMessage());
+            }
         }
-        Resolver uriResolver;
-        if(getCatalogFile()!=null) {
-            getLog().debug(LOG_PREFIX+"Setting catalog to "+getCatalogFile().toURI());
-            uriResolver = new Resolver(new Catalog(getCatalogFile().toURI().toString()));
+        dependencyPackageArchives = ret;
+        return ret;
+    }
+
+    /**
+     * Finds the jars of project dependencies that declare extension functions,
+     * and the jars they depend on. Discovery is made once per initialization,
+     * and reused from previous build if compile classpath has not changed.
+     * @return The discovery. Function classes are known only if it has been reused
+     */
+    private ExtensionDiscovery discoverExtensions() throws IOException, DependencyResolutionRequiredException, DependencyGraphBuilderException {
+        if(extensionDiscovery!=null) return extensionDiscovery;
+        final List<String> classpath = getProject().getCompileClasspathElements();
+        String classpathKey = ExtensionDiscovery.computeClasspathKey(classpath);
+        final ExtensionDiscovery previous = ExtensionDiscovery.load(getExtensionDiscoveryFile());
+        if(previous.isUpToDate(classpathKey)) {
+            getLog().debug(LOG_PREFIX+"classpath has not changed, extension functions discovery is reused");
+            extensionDiscoveryReused = true;
+            extensionDiscovery = previous;
         } else {
-            uriResolver = new Resolver();
-        }
-        config.setURIResolver(uriResolver);
-        builder = proc.newDocumentBuilder();
-        // load extension functions
-        final URLClassLoader saxonClassLoader = (URLClassLoader)(config.getClass().getClassLoader());
-        try {
-            XPathCompiler xpCompiler = proc.newXPathCompiler();
-            XPathExecutable xpExec = xpCompiler.compile("/gaulois-services/saxon/extensions/function");
-            final List<String> classpath = getProject().getCompileClasspathElements();
+            final ExtensionDiscovery discovery = new ExtensionDiscovery(classpathKey);
             DependencyNode rootNode = getGraphBuilder().buildDependencyGraph(getProjectBuildingRequest(), artifact -> true);
-            rootNode.accept(new DependencyNodeVisitor() {
-                @Override
-                public boolean visit(DependencyNode dn) {
-                    try {
-                        return processDependency(dn, classpath, saxonClassLoader);
-                    } catch(OverConstrainedVersionException ex) {
-                        getLog().error(LOG_PREFIX+"while processing dependency "+dn.toNodeString(), ex);
-                        return false;
-                    }
-                }
-                @Override
-                public boolean endVisit(DependencyNode dn) {
-                    return true;
-                }
-            });
-            for(Enumeration<URL> enumer = saxonClassLoader.findResources("META-INF/services/top.marchand.xml.gaulois.xml"); enumer.hasMoreElements();) {
-                URL serviceUrl = enumer.nextElement();
-                getLog().debug(LOG_PREFIX+"loading service "+serviceUrl.toExternalForm());
-                XdmNode document = builder.build(new StreamSource(serviceUrl.openStream()));
-                XPathSelector selector = xpExec.load();
-                selector.setContextItem(document);
-              for (XdmItem xdmItem : selector.evaluate()) {
-                String className = xdmItem.getStringValue();
-                try {
-                  Class clazz = saxonClassLoader.loadClass(className);
-                  if (extendsClass(clazz, ExtensionFunctionDefinition.class)) {
-                    @SuppressWarnings("unchecked")
-                    Class<ExtensionFunctionDefinition> cle = (Class<ExtensionFunctionDefinition>) clazz;
-                    Constructor<ExtensionFunctionDefinition> constructor = cle.getConstructor();
-                    config.registerExtensionFunction(constructor.newInstance());
-                    getLog().debug(LOG_PREFIX + className + "registered as Saxon extension function");
-                  } else {
-                    getLog().warn(LOG_PREFIX + className + " does not extends " + ExtensionFunctionDefinition.class.getName());
-                  }
-                } catch (ClassNotFoundException | InstantiationException | IllegalAccessException |
-                         NoSuchMethodException | InvocationTargetException ex) {
-                  getLog().warn(LOG_PREFIX + "unable to load extension function " + className);
-                }
-              }
+            List<String> addedJars = new ArrayList<>();
+            for(URL url: findExtensionJars(rootNode, classpath, new DescriptorProbe(previous, discovery, getLog()))) {
+                addedJars.add(url.toExternalForm());
             }
-        } catch(IOException | SaxonApiException | DependencyResolutionRequiredException | DependencyGraphBuilderException ex) {
-            getLog().error(LOG_PREFIX+"while looking for resources in /META-INF/services/top.marchand.xml.gaulois/", ex);
+            discovery.setAddedJars(addedJars);
+            extensionDiscoveryReused = false;
+            extensionDiscovery = discovery;
         }
+        return extensionDiscovery;
+    }
 
-        compiler = proc.newXsltCompiler();
-        // https://saxonica.plan.io/issues/3835
-        compiler.setJustInTimeCompilation(false);
+    private void saveExtensionDiscovery(final ExtensionDiscovery discovery) {
+        File file = getExtensionDiscoveryFile();
+        if(file==null) return;
+        try {
+            discovery.save(file);
+        } catch(IOException ex) {
+            getLog().warn(LOG_PREFIX+"unable to write "+file.getAbsolutePath(), ex);
+        }
     }
 
   private ProjectBuildingRequest getProjectBuildingRequest() {
@@ -228,44 +362,57 @@ public abstract class AbstractCompiler extends AbstractMojo {
     return buildingRequest;
   }
 
-  private boolean processDependency(DependencyNode dn, List<String> classpath, URLClassLoader saxonClassLoader) throws OverConstrainedVersionException {
-        String artifactPath = constructArtifactPath(dn.getArtifact());
-        String jarFileName = getJarFileName(artifactPath, classpath);
-        if(jarFileName!=null && jarFileName.endsWith(".jar")) {
-            // only jar files may contain extension function libraries
-            try {
-                URL jarUrl = new File(jarFileName).toURI().toURL();
-                getLog().debug(LOG_PREFIX+"url="+jarUrl.toExternalForm());
-                URL[] urls = new URL[] {jarUrl};
-                // look if parent has been added. If yes, add children
-                if(dn.getParent()!=null) {
-                    DependencyNode parent = dn.getParent();
-                    String parentArtifactPath = constructArtifactPath(parent.getArtifact());
-                    String parentJarFileName = getJarFileName(parentArtifactPath, classpath);
-                    if(parentJarFileName!=null) {
-                        URL jarParentUrl = new File(parentJarFileName).toURI().toURL();
-                        if(addedToSaxonJars.contains(jarParentUrl)) {
-                            addJarToClassLoader(jarUrl, saxonClassLoader);
-                            return true;
-                        }
-                    }
-                }
-                try(URLClassLoader ucl = new URLClassLoader(urls)) {
-                  Enumeration<URL> enumer = ucl.findResources("META-INF/services/top.marchand.xml.gaulois.xml");
-                  if (enumer.hasMoreElements()) {
-                    addJarToClassLoader(jarUrl, saxonClassLoader);
-                    return true;
-                  }
+    /**
+     * Finds all dependency jars that contain an extension functions
+     * descriptor, and the dependencies of these jars.
+     * @return The jars to add to Saxon classpath
+     */
+    private List<URL> findExtensionJars(DependencyNode rootNode, List<String> classpath, DescriptorProbe probe) throws MalformedURLException {
+        final Map<DependencyNode, File> jars = new LinkedHashMap<>();
+        rootNode.accept(new DependencyNodeVisitor() {
+            @Override
+            public boolean visit(DependencyNode dn) {
+                File jar = getJarFile(dn, classpath);
+                // only jar files may contain extension function libraries
+                if(jar!=null && jar.getName().endsWith(".jar") && jar.isFile()) {
+                    jars.put(dn, jar);
                 }
                 return true;
-            } catch(IOException ex) {
-                getLog().error("while processing dependency "+dn.toNodeString()+" with jarFileName "+jarFileName, ex);
-                return false;
             }
-            
+            @Override
+            public boolean endVisit(DependencyNode dn) {
+                return true;
+            }
+        });
+        Set<File> withDescriptor = probe.probe(new LinkedHashSet<>(jars.values()), Runtime.getRuntime().availableProcessors());
+        Set<File> added = new HashSet<>();
+        List<URL> ret = new ArrayList<>();
+        for(Map.Entry<DependencyNode, File> me: jars.entrySet()) {
+            File jar = me.getValue();
+            // look if parent has been added. If yes, add children
+            File parentJar = me.getKey().getParent()==null ? null : jars.get(me.getKey().getParent());
+            if(withDescriptor.contains(jar) || (parentJar!=null && added.contains(parentJar))) {
+                URL jarUrl = jar.toURI().toURL();
+                getLog().debug(LOG_PREFIX+"url="+jarUrl.toExternalForm());
+                ret.add(jarUrl);
+                added.add(jar);
+            }
         }
-        return true;
+        return ret;
+    }
+
+    /**
+     * Returns the file of a dependency. The resolved artifact file is used if
+     * there is one, else the file is searched in classpath.
+     */
+    private File getJarFile(DependencyNode dn, List<String> classpath) {
+        Artifact art = dn.getArtifact();
+        if(art==null) return null;
+        if(art.getFile()!=null) return art.getFile();
+        String jarFileName = getJarFileName(constructArtifactPath(art), classpath);
+        return jarFileName==null ? null : new File(jarFileName);
     }
+
     private String getJarFileName(String artifactPath, List<String> classpath) {
         String jarFileName = null;
         for(String s:classpath) {
@@ -276,6 +423,7 @@ public abstract class AbstractCompiler extends AbstractMojo {
         }
         return jarFileName;
     }
+
     private String constructArtifactPath(Artifact art) {
         String[] groups = art.getGroupId().split("\\.");
         String[] artifacts = art.getArtifactId().split("\\.");
@@ -285,56 +433,109 @@ public abstract class AbstractCompiler extends AbstractMojo {
         elements[elements.length-1] = art.getBaseVersion();
         return Joiner.on(File.separator).skipNulls().join(elements);
     }
+
     /**
      * Returns the Processor the plugin uses.
      * @return The processor used
      */
-    protected Processor getProcessor() { return compiler.getProcessor(); }
+    protected Processor getProcessor() { return engine.getProcessor(); }
     
     /**
      * Because we may need a compiler elsewhere
      * @return The XSL compiler used
      */
-    protected XsltCompiler getXsltCompiler() { return compiler; }
+    protected XsltCompiler getXsltCompiler() { return engine.getXsltCompiler(); }
     
     /**
      * Because we may need a URIResolver elsewhere
      * @return  The URI resolver used
      */
-    protected URIResolver getUriResolver() { return compiler.getURIResolver(); }
+    protected URIResolver getUriResolver() { return engine.getUriResolver(); }
     
     /**
      * Returns the EntityResolver to use
      * @return The EntityResolver
      */
-    protected EntityResolver2 getEntityResolver() { return (EntityResolver2)getUriResolver(); }
+    protected EntityResolver2 getEntityResolver() { return engine.getEntityResolver(); }
     
     /**
      * Because we may need a DocumentBuilder elsewhere !
      * @return The document builder
      */
-    protected DocumentBuilder getBuilder() { return builder; }
+    protected DocumentBuilder getBuilder() { return engine.getBuilder(); }
 
     /**
-     * Returns the SaxonOptions associated to this plugin
-     * @return Saxon optiones
+     * The engine of a mojo : extension functions are found in project dependencies.
      */
-    public abstract SaxonOptions getSaxonOptions();
+    protected class ProjectCompilerEngine extends CompilerEngine {
 
-    private boolean extendsClass(Class toCheck, Class inheritor) {
-        if(toCheck.equals(inheritor)) return true;
-        if(toCheck.equals(Object.class)) return false;
-        return extendsClass(toCheck.getSuperclass(), inheritor);
-    }
-    
-    protected void addJarToClassLoader(URL url, URLClassLoader ucl) {
-        try {
-            Method meth = ucl.getClass().getMethod("addURL", URL.class);
-            meth.invoke(ucl, url);
-            addedToSaxonJars.add(url);
-            getLog().debug(LOG_PREFIX+url.toExternalForm()+" added to saxon classpath");
-        } catch (SecurityException | NoSuchMethodException | IllegalAccessException | InvocationTargetException ex) {
-            getLog().error("while adding "+url.toString()+" to classloader", ex);
+        /**
+         * Finds extension functions in project dependencies, loads the jars that
+         * declare them in a child of Saxon class loader, and registers them.
+         * Saxon class loader is never modified, as it is shared by all executions
+         * of the plugin.
+         * @param proc The processor to register functions in
+         * @return The loaded extension functions
+         */
+        @Override
+        protected ExtensionFunctions loadExtensionFunctions(final Processor proc) {
+            final Configuration config = proc.getUnderlyingConfiguration();
+            ExtensionLoadingEvent event = new ExtensionLoadingEvent();
+            event.begin();
+            try {
+                ExtensionDiscovery discovery = discoverExtensions();
+                List<URL> jars = new ArrayList<>();
+                for(String jar: discovery.getAddedJars()) {
+                    jars.add(new URL(jar));
+                    getLog().debug(LOG_PREFIX+jar+" added to saxon classpath");
+                }
+                URLClassLoader classLoader = new URLClassLoader(jars.toArray(new URL[0]), config.getClass().getClassLoader());
+                config.getDynamicLoader().setClassLoader(classLoader);
+                List<String> classes;
+                if(extensionDiscoveryReused) {
+                    classes = discovery.getFunctionClasses();
+                } else {
+                    classes = ExtensionFunctions.readServiceDescriptors(proc, classLoader, getLog());
+                    discovery.setFunctionClasses(classes);
+                    saveExtensionDiscovery(discovery);
+                }
+                ExtensionFunctions.register(config, classLoader, classes, getLog());
+                event.end();
+                if(event.shouldCommit()) {
+                    event.reused = extensionDiscoveryReused;
+                    event.jars = jars.size();
+                    event.functions = classes.size();
+                    event.commit();
+                }
+                return new ExtensionFunctions(jars, classLoader, classes);
+            } catch(IOException | SaxonApiException | DependencyResolutionRequiredException | DependencyGraphBuilderException ex) {
+                getLog().error(LOG_PREFIX+"while looking for resources in /META-INF/services/top.marchand.xml.gaulois/", ex);
+                return ExtensionFunctions.NONE;
+            }
+        }
+
+        /**
+         * The jars of project dependencies that declare extension functions
+         */
+        @Override
+        protected String computeExtensionsKey() {
+            try {
+                return Joiner.on('\n').join(discoverExtensions().getAddedJars());
+            } catch(IOException | DependencyResolutionRequiredException | DependencyGraphBuilderException | RuntimeException ex) {
+                getLog().debug(LOG_PREFIX+"extension jars are unknown, Saxon is not shared: "+ex.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * Completes the discovery with the functions the shared context has loaded
+         */
+        @Override
+        protected void sharedContextReused(final SaxonContext context) {
+            if(!extensionDiscoveryReused) {
+                extensionDiscovery.setFunctionClasses(context.getFunctionClasses());
+                saveExtensionDiscovery(extensionDiscovery);
+            }
         }
     }
 }
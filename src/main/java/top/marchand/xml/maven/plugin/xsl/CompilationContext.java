@@ -0,0 +1,75 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl;
+
+import top.marchand.xml.maven.plugin.xsl.cache.ArtifactCache;
+import top.marchand.xml.maven.plugin.xsl.deps.DependencyGraph;
+import top.marchand.xml.maven.plugin.xsl.incremental.BuildManifest;
+
+/**
+ * What is shared by all compilations of a build.
+ * @author cmarchand
+ */
+class CompilationContext {
+    private final BuildManifest manifest;
+    private final DependencyGraph graph;
+    private final ArtifactCache cache;
+    private final String configurationKey;
+
+    CompilationContext(final BuildManifest manifest, final DependencyGraph graph, final ArtifactCache cache, final String configurationKey) {
+        super();
+        this.manifest = manifest;
+        this.graph = graph;
+        this.cache = cache;
+        this.configurationKey = configurationKey;
+    }
+
+    /**
+     * The manifest of the build. {@code null} if incremental compilation is disabled.
+     */
+    BuildManifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * The dependency graph of all units. {@code null} if it can not be built.
+     */
+    DependencyGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * The artifact cache. {@code null} if no cache is used.
+     */
+    ArtifactCache getCache() {
+        return cache;
+    }
+
+    String getConfigurationKey() {
+        return configurationKey;
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl;
+
+import java.io.File;
+
+/**
+ * A stylesheet to compile : where it comes from, and where the compiled file
+ * has to be written.
+ * A unit is either based on a file found by a {@link FileSet} scan, or on a
+ * URI that will be resolved through the compiler's URIResolver.
+ * @author cmarchand
+ */
+public class CompilationUnit {
+    private final File sourceFile;
+    private final String uri;
+    private final File targetFile;
+    private final String name;
+
+    private CompilationUnit(final File sourceFile, final String uri, final File targetFile, final String name) {
+        super();
+        this.sourceFile = sourceFile;
+        this.uri = uri;
+        this.targetFile = targetFile;
+        this.name = name;
+    }
+
+    /**
+     * Creates a unit for a file found in a fileset
+     * @param sourceFile The file to compile
+     * @param targetFile The file to generate
+     * @param name The name to use in logs, usually the path relative to fileset's dir
+     * @return The compilation unit
+     */
+    public static CompilationUnit fromFile(final File sourceFile, final File targetFile, final String name) {
+        return new CompilationUnit(sourceFile, null, targetFile, name);
+    }
+
+    /**
+     * Creates a unit for a URI based fileset
+     * @param uri The URI to resolve
+     * @param targetFile The file to generate
+     * @return The compilation unit
+     */
+    public static CompilationUnit fromUri(final String uri, final File targetFile) {
+        return new CompilationUnit(null, uri, targetFile, uri);
+    }
+
+    /**
+     * The source file. {@code null} if this unit is URI based.
+     * @return The source file
+     */
+    public File getSourceFile() {
+        return sourceFile;
+    }
+
+    /**
+     * The URI to resolve. {@code null} if this unit is file based.
+     * @return The URI to resolve
+     */
+    public String getUri() {
+        return uri;
+    }
+
+    public File getTargetFile() {
+        return targetFile;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
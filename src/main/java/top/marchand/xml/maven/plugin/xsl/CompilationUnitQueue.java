@@ -0,0 +1,79 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The units found by a scan that is still running. Scan threads add units,
+ * and the compiler iterates over them ; {@link #hasNext()} waits until a unit
+ * is available or until the queue is closed.
+ * @author cmarchand
+ */
+class CompilationUnitQueue implements Iterator<CompilationUnit> {
+    private static final CompilationUnit END = CompilationUnit.fromUri("", null);
+    private final BlockingQueue<CompilationUnit> queue = new LinkedBlockingQueue<>();
+    private CompilationUnit next;
+
+    /**
+     * Adds a unit. May be called from any thread.
+     */
+    void add(final CompilationUnit unit) {
+        queue.add(unit);
+    }
+
+    /**
+     * Notifies that no more unit will be added.
+     */
+    void close() {
+        queue.add(END);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(next==null) {
+            try {
+                next = queue.take();
+            } catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                next = END;
+            }
+        }
+        return next!=END;
+    }
+
+    @Override
+    public CompilationUnit next() {
+        if(!hasNext()) throw new NoSuchElementException();
+        CompilationUnit ret = next;
+        next = null;
+        return ret;
+    }
+}
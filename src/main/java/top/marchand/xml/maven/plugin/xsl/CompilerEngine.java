@@ -0,0 +1,1211 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.CountingInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamSource;
+import net.sf.saxon.s9api.Axis;
+import net.sf.saxon.s9api.DocumentBuilder;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XdmNodeKind;
+import net.sf.saxon.s9api.XdmSequenceIterator;
+import net.sf.saxon.s9api.XsltCompiler;
+import net.sf.saxon.s9api.XsltExecutable;
+import net.sf.saxon.s9api.XsltPackage;
+import net.sf.saxon.trans.XPathException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.xml.sax.InputSource;
+import org.xml.sax.ext.EntityResolver2;
+import org.xmlresolver.Catalog;
+import top.marchand.maven.saxon.utils.SaxonOptions;
+import top.marchand.xml.maven.plugin.xsl.cache.ArtifactCache;
+import top.marchand.xml.maven.plugin.xsl.deps.DeclarationScanner;
+import top.marchand.xml.maven.plugin.xsl.deps.DependencyGraph;
+import top.marchand.xml.maven.plugin.xsl.extensions.ExtensionFunctions;
+import top.marchand.xml.maven.plugin.xsl.incremental.BuildManifest;
+import top.marchand.xml.maven.plugin.xsl.incremental.RecordingURIResolver;
+import top.marchand.xml.maven.plugin.xsl.jfr.CompileEvent;
+import top.marchand.xml.maven.plugin.xsl.jfr.ExportEvent;
+import top.marchand.xml.maven.plugin.xsl.jfr.ParseEvent;
+import top.marchand.xml.maven.plugin.xsl.packages.PackageArchive;
+import top.marchand.xml.maven.plugin.xsl.packages.PackageArchive.PackageInfo;
+import top.marchand.xml.maven.plugin.xsl.parsers.ParsingCache;
+import top.marchand.xml.maven.plugin.xsl.parsers.XcSAXParserFactory;
+import top.marchand.xml.maven.plugin.xsl.report.CompilationReport;
+import top.marchand.xml.maven.plugin.xsl.report.CompilationReport.Phase;
+import top.marchand.xml.maven.plugin.xsl.resolver.MemoizingResolver;
+
+/**
+ * The engine that compiles stylesheets : Saxon initialization, compilation
+ * of units on workers, build manifest, dependency graph, artifact cache,
+ * packages and report.
+ *
+ * It does not depend on a Maven project : {@link AbstractCompiler} configures
+ * it from the mojo parameters, and the compile daemon and benchmarks from
+ * their own settings. Extension functions are loaded by
+ * {@link #loadExtensionFunctions(net.sf.saxon.s9api.Processor) }, that
+ * loads none ; subclasses override it to find them.
+ *
+ * All mutable state belongs to the instance, so that engines of a parallel
+ * build do not share anything but the Saxon contexts returned by
+ * {@link #getSharedContexts() }.
+ *
+ * @author cmarchand
+ */
+public class CompilerEngine {
+    // bytes of a source stream read to find its root element
+    private static final int ROOT_SNIFF_LIMIT = 64*1024;
+    private static final String LOG_PREFIX = "[CompilerEngine] ";
+    private Log log;
+    private File catalogFile;
+    private boolean catalogIndexed;
+    private SaxonOptions saxonOptions = new SaxonOptions();
+    private File manifestFile;
+    private int moduleCacheSize;
+    private ArtifactCache artifactCache;
+    private File reportFile;
+    private int reportSlowest;
+    private boolean sefCompressed;
+    private Map<String,SaxonContext> sharedContexts;
+    private List<File> dependencyPackageArchives = Collections.emptyList();
+    private DocumentBuilder builder;
+    private XsltCompiler compiler;
+    private final ContentHashes contentHashes = new ContentHashes();
+    private final PackageRegistry packages = new PackageRegistry(contentHashes, this::getLog);
+    private SefFiles sefFiles = new SefFiles(false);
+    private ModuleCache moduleCache;
+    private MemoizingResolver catalogResolver;
+    private volatile ParsingCache parsingCache;
+    private SaxonContext saxonContext;
+    private boolean saxonShared;
+    private volatile CompilationReport report;
+    // XMLInputFactory is not guaranteed to be thread-safe
+    private final ThreadLocal<DeclarationScanner> rootNameReaders = ThreadLocal.withInitial(DeclarationScanner::new);
+
+    /**
+     * The log messages are sent to. A {@link SystemStreamLog} if none has been set.
+     * @return The log
+     */
+    public Log getLog() {
+        if(log==null) log = new SystemStreamLog();
+        return log;
+    }
+
+    public void setLog(final Log log) {
+        this.log = log;
+    }
+
+    /**
+     * The catalog file to use. It may returns null.
+     * @return The catalog file to use.
+     */
+    public File getCatalogFile() {
+        return catalogFile;
+    }
+
+    public void setCatalogFile(final File catalogFile) {
+        this.catalogFile = catalogFile;
+    }
+
+    /**
+     * If {@code true}, the {@code uri} entries of the catalog, and of the
+     * catalogs it chains to, are indexed once when Saxon is initialized.
+     * @return {@code true} if the catalog is indexed
+     */
+    public boolean isCatalogIndexed() {
+        return catalogIndexed;
+    }
+
+    public void setCatalogIndexed(final boolean catalogIndexed) {
+        this.catalogIndexed = catalogIndexed;
+    }
+
+    /**
+     * The Saxon options Processor and compilers are configured with
+     * @return Saxon options
+     */
+    public SaxonOptions getSaxonOptions() {
+        return saxonOptions;
+    }
+
+    public void setSaxonOptions(final SaxonOptions saxonOptions) {
+        this.saxonOptions = saxonOptions;
+    }
+
+    /**
+     * The file where the build manifest is stored. If {@code null}, incremental
+     * compilation is disabled, and all stylesheets are compiled.
+     * @return The manifest file
+     */
+    public File getManifestFile() {
+        return manifestFile;
+    }
+
+    public void setManifestFile(final File manifestFile) {
+        this.manifestFile = manifestFile;
+    }
+
+    /**
+     * The maximum number of parsed modules kept in memory, to be shared by all
+     * compilations. If 0, modules are parsed each time they are imported or included.
+     * It is read by {@link #initSaxon() }.
+     * @return The number of modules to keep
+     */
+    public int getModuleCacheSize() {
+        return moduleCacheSize;
+    }
+
+    public void setModuleCacheSize(final int moduleCacheSize) {
+        this.moduleCacheSize = moduleCacheSize;
+    }
+
+    /**
+     * The cache where compiled files are stored and fetched from. If
+     * {@code null}, no cache is used. The cache is closed at the end of
+     * {@link #compileUnits(java.util.List, int) }.
+     * @return The artifact cache
+     */
+    public ArtifactCache getArtifactCache() {
+        return artifactCache;
+    }
+
+    public void setArtifactCache(final ArtifactCache artifactCache) {
+        this.artifactCache = artifactCache;
+    }
+
+    /**
+     * The file where the compilation report is written, without extension :
+     * a {@code .json} and a {@code .csv} files are written. If {@code null},
+     * no report is written.
+     * @return The report file
+     */
+    public File getReportFile() {
+        return reportFile;
+    }
+
+    public void setReportFile(final File reportFile) {
+        this.reportFile = reportFile;
+    }
+
+    /**
+     * The number of slowest stylesheets to log at the end of the build.
+     * @return The number of stylesheets to log
+     */
+    public int getReportSlowest() {
+        return reportSlowest;
+    }
+
+    public void setReportSlowest(final int reportSlowest) {
+        this.reportSlowest = reportSlowest;
+    }
+
+    /**
+     * If {@code true}, compiled stylesheets and packages are written gzip-compressed.
+     * @return {@code true} if compiled files are compressed
+     */
+    public boolean isSefCompressed() {
+        return sefCompressed;
+    }
+
+    public void setSefCompressed(final boolean sefCompressed) {
+        this.sefCompressed = sefCompressed;
+        this.sefFiles = new SefFiles(sefCompressed);
+    }
+
+    /**
+     * The Saxon contexts shared by all engines of the build, by key. If
+     * {@code null}, this engine initializes Saxon for itself.
+     * @return The shared contexts
+     */
+    public Map<String,SaxonContext> getSharedContexts() {
+        return sharedContexts;
+    }
+
+    public void setSharedContexts(final Map<String,SaxonContext> sharedContexts) {
+        this.sharedContexts = sharedContexts;
+    }
+
+    /**
+     * The jars and directories that contain compiled packages, as published
+     * by {@link PackageArchive}. Their packages are imported, and the units
+     * that are the same packages are not compiled.
+     * @return The packages archives. Never {@code null}
+     */
+    public List<File> getDependencyPackageArchives() {
+        return dependencyPackageArchives;
+    }
+
+    public void setDependencyPackageArchives(final List<File> dependencyPackageArchives) {
+        this.dependencyPackageArchives = dependencyPackageArchives==null ? Collections.<File>emptyList() : dependencyPackageArchives;
+    }
+
+    /**
+     * Compiles a {@code source} to a {@code targetFile}.
+     * If the file is a {@code&lt;package&gt;}, {@link #compilePackage(net.sf.saxon.s9api.XdmNode, java.io.File) } is called,
+     * else {@link #compileModule(net.sf.saxon.s9api.XdmNode, java.io.File) } is called.
+     * @param source The source file to compile
+     * @param targetFile The target file to generate
+     * @throws SaxonApiException In case of failure
+     * @throws FileNotFoundException In case of failure
+     */
+    protected void compileFile(final javax.xml.transform.Source source, final File targetFile) throws SaxonApiException, FileNotFoundException {
+        compileFile(source, targetFile, builder, compiler);
+    }
+
+    /**
+     * Compiles a {@code source} to a {@code targetFile}, with the given builder and compiler.
+     * This is the method used by workers when compiling in parallel.
+     * Only the root element is read to know if source is a package ; the
+     * source is then parsed by the compiler. If the root element can not be
+     * read without consuming the source, source is parsed into a tree with
+     * {@code builder}, and the tree is compiled.
+     * @param source The source file to compile
+     * @param targetFile The target file to generate
+     * @param builder The document builder to use
+     * @param compiler The XSL compiler to use
+     * @return {@code true} if {@code source} was a package
+     * @throws SaxonApiException In case of failure
+     * @throws FileNotFoundException In case of failure
+     */
+    protected boolean compileFile(final javax.xml.transform.Source source, final File targetFile, final DocumentBuilder builder, final XsltCompiler compiler) throws SaxonApiException, FileNotFoundException {
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        long start = System.nanoTime();
+        javax.xml.transform.Source toCompile = source;
+        String rootName = readRootName(source, event);
+        if(rootName==null) {
+            // source can not be read twice : it is parsed into a tree
+            XdmNode document = builder.build(source);
+            XdmNode documentRoot = getRootElement(document);
+            rootName = documentRoot.getNodeName().getLocalName();
+            toCompile = documentRoot.asSource();
+            event.bytesRead = ParseEvent.sizeOf(source.getSystemId());
+        }
+        addTime(targetFile, Phase.SNIFF, start);
+        event.end();
+        if(event.shouldCommit()) {
+            event.stylesheet = source.getSystemId();
+            event.commit();
+        }
+        if (rootName.equals("package")) {
+            compilePackage(toCompile, targetFile, compiler);
+            return true;
+        } else {
+            compileModule(toCompile, targetFile, compiler);
+            return false;
+        }
+    }
+
+    private static XdmNode getRootElement(final XdmNode document) {
+        XdmSequenceIterator it = document.axisIterator(Axis.CHILD);
+        while(it.hasNext()) {
+            XdmNode child = (XdmNode)it.next();
+            if(child.getNodeKind()==XdmNodeKind.ELEMENT) return child;
+        }
+        throw new IllegalArgumentException(document.getBaseURI()+" has no root element");
+    }
+
+    /**
+     * Reads the root element name of {@code source}, without building a tree.
+     * A stream held by {@code source} is replaced by an equivalent stream.
+     * The number of bytes read is set to {@code event}.
+     * @return The root element local name, or {@code null} if it can not be read
+     */
+    private String readRootName(final javax.xml.transform.Source source, final ParseEvent event) {
+        InputStream is = null;
+        boolean hasReader = false;
+        if(source instanceof SAXSource && ((SAXSource)source).getInputSource()!=null) {
+            is = ((SAXSource)source).getInputSource().getByteStream();
+            hasReader = ((SAXSource)source).getInputSource().getCharacterStream()!=null;
+        } else if(source instanceof StreamSource) {
+            is = ((StreamSource)source).getInputStream();
+            hasReader = ((StreamSource)source).getReader()!=null;
+        } else {
+            return null;
+        }
+        String systemId = source.getSystemId();
+        try {
+            if(is!=null) {
+                // the prefix is read again by the compiler
+                byte[] prefix = readPrefix(is);
+                InputStream replay = new SequenceInputStream(new ByteArrayInputStream(prefix), is);
+                if(source instanceof SAXSource) ((SAXSource)source).getInputSource().setByteStream(replay);
+                else ((StreamSource)source).setInputStream(replay);
+                event.bytesRead = prefix.length;
+                return rootNameReaders.get().readRootName(new ByteArrayInputStream(prefix), systemId);
+            }
+            if(hasReader || systemId==null) return null;
+            try(CountingInputStream sniffed = new CountingInputStream(new URL(systemId).openStream())) {
+                try {
+                    return rootNameReaders.get().readRootName(sniffed, systemId);
+                } finally {
+                    event.bytesRead = sniffed.getCount();
+                }
+            }
+        } catch(IOException | XMLStreamException | IllegalArgumentException ex) {
+            // the compiler reports the problem
+            return null;
+        }
+    }
+
+    private static byte[] readPrefix(final InputStream is) throws IOException {
+        byte[] buffer = new byte[ROOT_SNIFF_LIMIT];
+        int length = 0;
+        int read;
+        while(length<buffer.length && (read = is.read(buffer, length, buffer.length-length))>0) {
+            length += read;
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Compiles a standard XSL module.
+     * @param document The source document
+     * @param targetFile The file to generate
+     * @throws SaxonApiException In case of failure
+     * @throws FileNotFoundException In case of failure
+     */
+    protected void compileModule(final XdmNode document, final File targetFile) throws SaxonApiException, FileNotFoundException {
+        compileModule(document, targetFile, compiler);
+    }
+
+    /**
+     * Compiles a standard XSL module with the given compiler.
+     * @param document The source document
+     * @param targetFile The file to generate
+     * @param compiler The XSL compiler to use
+     * @throws SaxonApiException In case of failure
+     * @throws FileNotFoundException In case of failure
+     */
+    protected void compileModule(final XdmNode document, final File targetFile, final XsltCompiler compiler) throws SaxonApiException, FileNotFoundException {
+        compileModule(document.asSource(), targetFile, compiler);
+    }
+
+    /**
+     * Compiles a standard XSL module with the given compiler, from a source
+     * the compiler parses itself.
+     * @param source The source
+     * @param targetFile The file to generate
+     * @param compiler The XSL compiler to use
+     * @throws SaxonApiException In case of failure
+     * @throws FileNotFoundException In case of failure
+     */
+    protected void compileModule(final javax.xml.transform.Source source, final File targetFile, final XsltCompiler compiler) throws SaxonApiException, FileNotFoundException {
+        String systemId = source.getSystemId();
+        CompileEvent compileEvent = new CompileEvent();
+        compileEvent.begin();
+        long start = System.nanoTime();
+        XsltExecutable exec = compiler.compile(source);
+        addTime(targetFile, Phase.COMPILE, start);
+        commit(compileEvent, systemId, false);
+        ExportEvent exportEvent = new ExportEvent();
+        exportEvent.begin();
+        start = System.nanoTime();
+        sefFiles.write(targetFile, exec::export);
+        addTime(targetFile, Phase.EXPORT, start);
+        commit(exportEvent, systemId, targetFile);
+    }
+
+    /**
+     * Compiles a package, and adds to to the compiler.
+     * @param document The source document
+     * @param targetFile The file to generate
+     * @throws SaxonApiException In case of failure
+     */
+    protected void compilePackage(final XdmNode document, final File targetFile) throws SaxonApiException {
+        compilePackage(document, targetFile, compiler);
+    }
+
+    /**
+     * Compiles a package with the given compiler, and registers it so that
+     * all compilers created after can use it.
+     * @param document The source document
+     * @param targetFile The file to generate
+     * @param compiler The XSL compiler to use
+     * @throws SaxonApiException In case of failure
+     */
+    protected void compilePackage(final XdmNode document, final File targetFile, final XsltCompiler compiler) throws SaxonApiException {
+        compilePackage(document.asSource(), targetFile, compiler);
+    }
+
+    /**
+     * Compiles a package with the given compiler, from a source the compiler
+     * parses itself, and registers it so that all compilers created after can use it.
+     * @param source The source
+     * @param targetFile The file to generate
+     * @param compiler The XSL compiler to use
+     * @throws SaxonApiException In case of failure
+     */
+    protected void compilePackage(final javax.xml.transform.Source source, final File targetFile, final XsltCompiler compiler) throws SaxonApiException {
+        String systemId = source.getSystemId();
+        CompileEvent compileEvent = new CompileEvent();
+        compileEvent.begin();
+        long start = System.nanoTime();
+        XsltPackage pack = compiler.compilePackage(source);
+        packages.compiled(targetFile, pack);
+        addTime(targetFile, Phase.COMPILE, start);
+        commit(compileEvent, systemId, true);
+        ExportEvent exportEvent = new ExportEvent();
+        exportEvent.begin();
+        start = System.nanoTime();
+        sefFiles.savePackage(pack, targetFile);
+        addTime(targetFile, Phase.EXPORT, start);
+        commit(exportEvent, systemId, targetFile);
+        registerPackage(pack);
+    }
+
+    private void addTime(final File targetFile, final Phase phase, final long start) {
+        CompilationReport current = report;
+        CompilationReport.Entry entry = current==null ? null : current.get(targetFile);
+        if(entry!=null) entry.addTime(phase, System.nanoTime()-start);
+    }
+
+    private static void commit(final CompileEvent event, final String systemId, final boolean isPackage) {
+        event.end();
+        if(event.shouldCommit()) {
+            event.stylesheet = systemId;
+            event.xslPackage = isPackage;
+            event.commit();
+        }
+    }
+
+    private static void commit(final ExportEvent event, final String systemId, final File targetFile) {
+        event.end();
+        if(event.shouldCommit()) {
+            event.stylesheet = systemId;
+            event.targetFile = targetFile.getAbsolutePath();
+            event.bytesWritten = targetFile.length();
+            event.commit();
+        }
+    }
+
+    /**
+     * Makes {@code pack} available to the main compiler, and to all compilers
+     * that will be created by {@link #newXsltCompiler() }.
+     * @param pack The package to register
+     * @throws SaxonApiException If the package can not be imported
+     */
+    protected void registerPackage(final XsltPackage pack) throws SaxonApiException {
+        packages.register(pack);
+    }
+
+    /**
+     * Forgets what has been learned during previous build : compiled packages,
+     * content of modules, resolved URIs, DTDs and entities. Processor, extension functions and parsed
+     * modules cache are kept, so that the same stylesheets can be built again.
+     */
+    public void resetBuildState() {
+        compiler = getProcessor().newXsltCompiler();
+        configureCompiler(compiler);
+        packages.reset(compiler);
+        contentHashes.clear();
+        // resolved files may have been created or deleted since
+        if(catalogResolver!=null) catalogResolver.clear();
+        // DTDs and entities too ; engines that share the context keep theirs
+        parsingCache = new ParsingCache();
+        XcSAXParserFactory.setParsingCache(parsingCache);
+    }
+
+    /**
+     * Creates a new XSL compiler on the shared Processor, configured as the
+     * main one, and with all packages compiled up to now.
+     * @return A new XSL compiler
+     * @throws SaxonApiException If a package can not be imported
+     */
+    protected XsltCompiler newXsltCompiler() throws SaxonApiException {
+        XsltCompiler ret = getProcessor().newXsltCompiler();
+        configureCompiler(ret);
+        if(moduleCache!=null) {
+            ret.setURIResolver(moduleCache.wrap(ret.getURIResolver()));
+        }
+        packages.importAll(ret);
+        return ret;
+    }
+
+    private void configureCompiler(final XsltCompiler xslCompiler) {
+        if(getSaxonOptions()!=null) {
+            xslCompiler.setRelocatable("on".equals(getSaxonOptions().getRelocate()));
+        }
+        // https://saxonica.plan.io/issues/3835
+        xslCompiler.setJustInTimeCompilation(false);
+    }
+
+    /**
+     * Returns the source to compile for {@code unit}.
+     * @param unit The unit to compile
+     * @param compiler The compiler whose URIResolver is used for URI based units
+     * @return The source to compile
+     * @throws TransformerException If the URI can not be resolved
+     */
+    protected javax.xml.transform.Source openSource(final CompilationUnit unit, final XsltCompiler compiler) throws TransformerException {
+        if(unit.getUri()!=null) {
+            javax.xml.transform.Source source = compiler.getURIResolver().resolve(unit.getUri(), null);
+            getLog().debug(LOG_PREFIX+"source systemId="+source.getSystemId());
+            return source;
+        }
+        // let the parser open and close the stream
+        SAXSource source = new SAXSource(new InputSource(unit.getSourceFile().toURI().toString()));
+        getLog().debug(LOG_PREFIX+"source systemId="+source.getSystemId());
+        return source;
+    }
+
+    /**
+     * Compiles all {@code units}, on {@code threads} workers.
+     * Units are compiled by levels : packages are compiled before the units
+     * that use them, whatever the order of {@code units}, and are then imported
+     * in the compilers of next levels. All units of a level are compiled at
+     * the same time.
+     * Each worker uses its own {@link XsltCompiler} and {@link DocumentBuilder},
+     * created from the shared Processor. Errors are collected, and logged at
+     * the end, in the order of {@code units}, whatever the order of compilation.
+     * @param units The units to compile
+     * @param threads The number of workers. If less than 2, compilation is sequential
+     * @return {@code true} if at least one unit failed to compile
+     */
+    public boolean compileUnits(final List<CompilationUnit> units, final int threads) {
+        report = getReportFile()==null ? null : new CompilationReport();
+        packages.importDependencyPackages(getDependencyPackageArchives());
+        IncrementalBuild incremental = newIncrementalBuild();
+        BuildManifest manifest = incremental.loadManifest();
+        String configurationKey = computeConfigurationKey(manifest);
+        // without a configuration key, nothing compiled before can be reused
+        if(configurationKey==null) manifest = null;
+        else if(manifest!=null) manifest.setConfigurationKey(configurationKey);
+        if(manifest!=null) manifest.retain(IncrementalBuild.getTargetFiles(units));
+        DependencyGraph graph = incremental.buildDependencyGraph(units, incremental.loadGraph(manifest));
+        incremental.saveGraph(graph, manifest);
+        final List<CompilationUnit> toCompile = manifest==null ? units : incremental.selectUnitsToCompile(units, manifest, graph, packages);
+        final CompilationContext context = new CompilationContext(manifest, graph, configurationKey==null ? null : getArtifactCache(), configurationKey);
+        final Exception[] errors = new Exception[toCompile.size()];
+        List<List<Integer>> levels = scheduleLevels(toCompile, graph);
+        ExecutorService executor = threads<2 || toCompile.size()<2 ? null : Executors.newFixedThreadPool(Math.min(threads, toCompile.size()));
+        try {
+            for(List<Integer> level: levels) {
+                UnitScheduler.compileLevel(toCompile, level, executor, unitTask(context), errors);
+            }
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            getLog().error(LOG_PREFIX+"interrupted while compiling", ex);
+            return true;
+        } finally {
+            if(executor!=null) executor.shutdownNow();
+            closeCache(context.getCache());
+        }
+        boolean hasError = logErrors(toCompile, errors, manifest);
+        incremental.saveManifest(manifest);
+        writeReport(graph);
+        return hasError;
+    }
+
+    /**
+     * Compiles units while they are found by a running scan. Units that are
+     * not packages and that use no package are compiled as soon as they are
+     * found. Packages and units that use packages are compiled once all units
+     * are known, and units found before are compiled, by levels, as in
+     * {@link #compileUnits(java.util.List, int)} : no more than {@code threads}
+     * units are compiled at the same time. Errors are logged at the end, in the order units have been found.
+     * @param stream The units, as they are found
+     * @param threads The number of workers
+     * @return {@code true} if at least one unit failed to compile
+     */
+    public boolean compileUnits(final Iterator<CompilationUnit> stream, final int threads) {
+        report = getReportFile()==null ? null : new CompilationReport();
+        packages.importDependencyPackages(getDependencyPackageArchives());
+        IncrementalBuild incremental = newIncrementalBuild();
+        BuildManifest manifest = incremental.loadManifest();
+        String configurationKey = computeConfigurationKey(manifest);
+        // without a configuration key, nothing compiled before can be reused
+        if(configurationKey==null) manifest = null;
+        else if(manifest!=null) manifest.setConfigurationKey(configurationKey);
+        DependencyGraph previousGraph = incremental.loadGraph(manifest);
+        ArtifactCache cache = configurationKey==null ? null : getArtifactCache();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        List<CompilationUnit> units = new ArrayList<>();
+        List<CompilationUnit> deferred = new ArrayList<>();
+        Map<CompilationUnit,Future<Exception>> started = new LinkedHashMap<>();
+        Map<CompilationUnit,Exception> errorsByUnit = new HashMap<>();
+        // grows as units are found : shared modules are read once
+        DependencyGraph graph = new DependencyGraph();
+        final UnitScheduler.UnitTask streamTask = unitTask(new CompilationContext(manifest, graph, cache, configurationKey));
+        try {
+            while(stream.hasNext()) {
+                final CompilationUnit unit = stream.next();
+                units.add(unit);
+                String systemId = getSystemId(unit);
+                if(graph!=null && systemId!=null && !incremental.addToDependencyGraph(graph, systemId, previousGraph)) graph = null;
+                if(graph==null || systemId==null || graph.isPackage(systemId) || graph.mayUsePackages(systemId)) {
+                    deferred.add(unit);
+                } else if(manifest==null || !manifest.isUpToDate(unit.getTargetFile())) {
+                    started.put(unit, executor.submit(() -> streamTask.compile(unit, true)));
+                }
+            }
+            getLog().debug(LOG_PREFIX+units.size()+" units found, "+started.size()+" compiled while scanning");
+            // deferred units may be compiled in this thread : workers have to be done, not to exceed threads
+            for(Map.Entry<CompilationUnit,Future<Exception>> me: started.entrySet()) {
+                Exception ex = UnitScheduler.getError(me.getValue());
+                if(ex!=null) errorsByUnit.put(me.getKey(), ex);
+            }
+            if(manifest!=null) manifest.retain(IncrementalBuild.getTargetFiles(units));
+            incremental.saveGraph(graph, manifest);
+            List<CompilationUnit> toCompile = manifest==null ? deferred : incremental.selectUnitsToCompile(deferred, manifest, graph, packages);
+            CompilationContext context = new CompilationContext(manifest, graph, cache, configurationKey);
+            Exception[] errors = new Exception[toCompile.size()];
+            for(List<Integer> level: scheduleLevels(toCompile, graph)) {
+                UnitScheduler.compileLevel(toCompile, level, threads<2 ? null : executor, unitTask(context), errors);
+            }
+            for(int i=0; i<errors.length; i++) {
+                if(errors[i]!=null) errorsByUnit.put(toCompile.get(i), errors[i]);
+            }
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            getLog().error(LOG_PREFIX+"interrupted while compiling", ex);
+            return true;
+        } finally {
+            executor.shutdownNow();
+            closeCache(cache);
+        }
+        Exception[] errors = new Exception[units.size()];
+        for(int i=0; i<errors.length; i++) {
+            errors[i] = errorsByUnit.get(units.get(i));
+        }
+        boolean hasError = logErrors(units, errors, manifest);
+        incremental.saveManifest(manifest);
+        writeReport(graph);
+        return hasError;
+    }
+
+    private IncrementalBuild newIncrementalBuild() {
+        return new IncrementalBuild(getManifestFile(), this::getSystemId, this::resolveHref, getLog());
+    }
+
+    /**
+     * Groups the indexes of {@code units} by compilation level.
+     */
+    private List<List<Integer>> scheduleLevels(final List<CompilationUnit> units, final DependencyGraph graph) {
+        List<String> systemIds = new ArrayList<>(units.size());
+        for(CompilationUnit unit: units) systemIds.add(getSystemId(unit));
+        List<List<Integer>> ret = UnitScheduler.scheduleLevels(systemIds, graph);
+        if(ret.size()>1) {
+            getLog().debug(LOG_PREFIX+"compiling in "+ret.size()+" levels");
+        }
+        return ret;
+    }
+
+    /**
+     * Compiles a unit with a new compiler. Workers use a document builder of their own.
+     */
+    private UnitScheduler.UnitTask unitTask(final CompilationContext context) {
+        return (unit, worker) -> {
+            try {
+                return compileUnit(unit, worker ? getProcessor().newDocumentBuilder() : builder, newXsltCompiler(), context);
+            } catch(SaxonApiException ex) {
+                return ex;
+            }
+        };
+    }
+
+    /**
+     * Logs compilation errors, in {@code units} order, and removes failed
+     * units from manifest.
+     * @return {@code true} if there is at least one error
+     */
+    private boolean logErrors(final List<CompilationUnit> units, final Exception[] errors, final BuildManifest manifest) {
+        boolean hasError = false;
+        for(int i=0; i<errors.length; i++) {
+            if(errors[i]!=null) {
+                hasError = true;
+                getLog().error(LOG_PREFIX+"while compiling "+units.get(i), errors[i]);
+                if(manifest!=null) manifest.remove(units.get(i).getTargetFile());
+            }
+        }
+        return hasError;
+    }
+
+    /**
+     * Completes the report with sizes, writes it, and logs the slowest stylesheets.
+     */
+    private void writeReport(final DependencyGraph graph) {
+        CompilationReport current = report;
+        if(current==null) return;
+        for(CompilationReport.Entry entry: current.getEntries()) {
+            entry.setSourceSize(ParseEvent.sizeOf(entry.getSource()));
+            if(graph!=null && graph.contains(entry.getSource())) {
+                long closureSize = 0;
+                for(String uri: graph.getClosure(entry.getSource())) {
+                    closureSize += Math.max(0, ParseEvent.sizeOf(uri));
+                }
+                entry.setClosureSize(closureSize);
+            }
+            if(entry.getTargetFile().isFile()) entry.setTargetSize(entry.getTargetFile().length());
+        }
+        try {
+            current.write(getReportFile());
+        } catch(IOException ex) {
+            getLog().warn(LOG_PREFIX+"unable to write compilation report", ex);
+        }
+        List<CompilationReport.Entry> slowest = current.getSlowest(getReportSlowest());
+        if(!slowest.isEmpty()) {
+            getLog().info(LOG_PREFIX+"slowest stylesheets:");
+            for(CompilationReport.Entry entry: slowest) {
+                getLog().info(LOG_PREFIX+String.format("  %6d ms  %s (root read %d ms, compile %d ms, export %d ms)",
+                        TimeUnit.NANOSECONDS.toMillis(entry.getTotalNanos()), entry.getSource(),
+                        TimeUnit.NANOSECONDS.toMillis(entry.getSniffNanos()),
+                        TimeUnit.NANOSECONDS.toMillis(entry.getCompileNanos()),
+                        TimeUnit.NANOSECONDS.toMillis(entry.getExportNanos())));
+            }
+        }
+    }
+
+    private Exception compileUnit(final CompilationUnit unit, final DocumentBuilder builder, final XsltCompiler compiler, final CompilationContext context) {
+        CompilationReport current = report;
+        CompilationReport.Entry entry = current==null ? null : current.start(unit.getTargetFile(), getSystemId(unit));
+        // workers parse with readers of their own
+        XcSAXParserFactory.setEntityResolver(catalogResolver);
+        XcSAXParserFactory.setParsingCache(parsingCache);
+        try {
+            BuildManifest manifest = context.getManifest();
+            if(reuseDependencyPackage(unit, context)) {
+                if(entry!=null) {
+                    entry.setPackage(true);
+                    entry.setStatus(CompilationReport.Status.CACHED);
+                }
+                return null;
+            }
+            String contentKey = context.getCache()==null && !saxonShared ? null : computeContentKey(unit, context);
+            String cacheKey = context.getCache()==null ? null : contentKey;
+            if(cacheKey!=null && fetchFromCache(unit, cacheKey, compiler, context)) {
+                if(entry!=null) entry.setStatus(CompilationReport.Status.CACHED);
+                return null;
+            }
+            if(contentKey!=null && reuseSharedPackage(unit, contentKey, context)) {
+                if(entry!=null) {
+                    entry.setPackage(true);
+                    entry.setStatus(CompilationReport.Status.CACHED);
+                }
+                storeInCache(unit, cacheKey, context);
+                return null;
+            }
+            RecordingURIResolver recorder = null;
+            if(manifest!=null) {
+                recorder = new RecordingURIResolver(compiler.getURIResolver());
+                compiler.setURIResolver(recorder);
+            }
+            javax.xml.transform.Source source = openSource(unit, compiler);
+            boolean isPackage = compileFile(source, unit.getTargetFile(), builder, compiler);
+            if(entry!=null) entry.setPackage(isPackage);
+            if(isPackage) packages.recordPackageFile(unit.getTargetFile(), getSystemId(unit), context.getGraph());
+            if(recorder!=null) {
+                recorder.record(source.getSystemId());
+                manifest.record(unit.getTargetFile(), recorder.getResolved(), isPackage);
+            }
+            XsltPackage compiled = isPackage && contentKey!=null && saxonShared ? packages.getCompiled(unit.getTargetFile()) : null;
+            if(compiled!=null) saxonContext.putPackage(contentKey, compiled);
+            storeInCache(unit, cacheKey, context);
+            return null;
+        } catch(SaxonApiException | IOException | TransformerException | RuntimeException ex) {
+            if(entry!=null) entry.setStatus(CompilationReport.Status.FAILED);
+            return ex;
+        }
+    }
+
+    private void storeInCache(final CompilationUnit unit, final String cacheKey, final CompilationContext context) {
+        if(cacheKey==null) return;
+        try {
+            context.getCache().store(cacheKey, unit.getTargetFile());
+        } catch(IOException ex) {
+            getLog().warn(LOG_PREFIX+"unable to store "+unit+" in cache: "+ex.getMessage());
+        }
+    }
+
+    /**
+     * Saves and registers the package another execution of this build has
+     * compiled from the same sources, if {@code unit} is a package.
+     * @return {@code true} if the package has been reused
+     */
+    private boolean reuseSharedPackage(final CompilationUnit unit, final String contentKey, final CompilationContext context) throws SaxonApiException, IOException {
+        String systemId = getSystemId(unit);
+        if(!saxonShared || !context.getGraph().isPackage(systemId)) return false;
+        XsltPackage pack = saxonContext.getPackage(contentKey);
+        if(pack==null) return false;
+        getLog().debug(LOG_PREFIX+unit+" has already been compiled in this build");
+        long start = System.nanoTime();
+        sefFiles.savePackage(pack, unit.getTargetFile());
+        addTime(unit.getTargetFile(), Phase.EXPORT, start);
+        registerPackage(pack);
+        packages.recordPackageFile(unit.getTargetFile(), systemId, context.getGraph());
+        if(context.getManifest()!=null) {
+            context.getManifest().record(unit.getTargetFile(), context.getGraph().getClosure(systemId), true);
+        }
+        return true;
+    }
+
+    /**
+     * Saves the package a dependency publishes, if {@code unit} is the same
+     * package : same name, same version, and sources with the same content.
+     * It is already imported, it is not registered again.
+     * @return {@code true} if the package of a dependency has been saved
+     */
+    private boolean reuseDependencyPackage(final CompilationUnit unit, final CompilationContext context) throws SaxonApiException, IOException {
+        DependencyGraph graph = context.getGraph();
+        if(graph==null) return false;
+        String systemId = getSystemId(unit);
+        XsltPackage imported = packages.findDependencyPackage(systemId, graph);
+        if(imported==null) return false;
+        getLog().debug(LOG_PREFIX+unit+" is imported from a dependency, it is not compiled");
+        long start = System.nanoTime();
+        sefFiles.savePackage(imported, unit.getTargetFile());
+        addTime(unit.getTargetFile(), Phase.EXPORT, start);
+        packages.recordPackageFile(unit.getTargetFile(), systemId, graph);
+        if(context.getManifest()!=null) {
+            context.getManifest().record(unit.getTargetFile(), context.getGraph().getClosure(systemId), true);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the compiled file of {@code unit} from cache. A package is loaded
+     * and registered, as if it had been compiled.
+     * @return {@code true} if the unit has been fetched from cache
+     */
+    private boolean fetchFromCache(final CompilationUnit unit, final String cacheKey, final XsltCompiler compiler, final CompilationContext context) throws IOException {
+        File targetFile = unit.getTargetFile();
+        try {
+            if(!context.getCache().fetch(cacheKey, targetFile)) return false;
+        } catch(IOException ex) {
+            getLog().warn(LOG_PREFIX+"unable to get "+unit+" from cache: "+ex.getMessage());
+            return false;
+        }
+        String systemId = getSystemId(unit);
+        boolean isPackage = context.getGraph().isPackage(systemId);
+        if(isPackage) {
+            try {
+                registerPackage(SefFiles.loadPackage(targetFile, compiler));
+            } catch(SaxonApiException | RuntimeException ex) {
+                getLog().debug(LOG_PREFIX+"unable to load cached package "+unit+", it is compiled");
+                targetFile.delete();
+                return false;
+            }
+            packages.recordPackageFile(targetFile, systemId, context.getGraph());
+        }
+        if(context.getManifest()!=null) {
+            context.getManifest().record(targetFile, context.getGraph().getClosure(systemId), isPackage);
+        }
+        return true;
+    }
+
+    /**
+     * Computes the content key of {@code unit} : the configuration key, and the
+     * content of all modules it depends on. If the compiled file is not
+     * relocatable, the unit system ID is part of the key. It is the key of
+     * the unit in the artifact cache, and of shared packages.
+     * Returns {@code null} if dependencies of the unit, or the configuration
+     * key, are not known.
+     */
+    private String computeContentKey(final CompilationUnit unit, final CompilationContext context) throws IOException {
+        if(context.getGraph()==null || context.getConfigurationKey()==null) return null;
+        String systemId = getSystemId(unit);
+        if(systemId==null || !context.getGraph().isComplete(systemId)) return null;
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(context.getConfigurationKey(), StandardCharsets.UTF_8);
+        if(getSaxonOptions()==null || !"on".equals(getSaxonOptions().getRelocate())) {
+            hasher.putString(systemId, StandardCharsets.UTF_8);
+        }
+        for(String uri: context.getGraph().getClosure(systemId)) {
+            hasher.putString(contentHashes.get(uri), StandardCharsets.UTF_8);
+        }
+        return hasher.hash().toString();
+    }
+
+    private void closeCache(final ArtifactCache cache) {
+        if(cache==null) return;
+        try {
+            cache.close();
+        } catch(IOException ex) {
+            getLog().warn(LOG_PREFIX+"while closing artifact cache", ex);
+        }
+    }
+
+    /**
+     * Returns the system ID of {@code unit} source, or {@code null} if it can not be resolved.
+     * @param unit The unit
+     * @return The source system ID
+     */
+    protected String getSystemId(final CompilationUnit unit) {
+        if(unit.getSourceFile()!=null) return unit.getSourceFile().toURI().toString();
+        return resolveHref(unit.getUri(), null);
+    }
+
+    /**
+     * Resolves {@code href} the same way the compiler does, without reading the resource.
+     * @param href The href to resolve
+     * @param base The base URI. May be {@code null}
+     * @return The resolved URI, or {@code null}
+     */
+    protected String resolveHref(final String href, final String base) {
+        try {
+            javax.xml.transform.Source source = getUriResolver().resolve(href, base);
+            if(source!=null && source.getSystemId()!=null) {
+                closeSource(source);
+                return source.getSystemId();
+            }
+        } catch(TransformerException | RuntimeException ex) {
+            // standard resolution below
+        }
+        try {
+            URI uri = base==null ? new URI(href) : new URI(base).resolve(href);
+            return uri.isAbsolute() ? uri.toString() : null;
+        } catch(URISyntaxException | IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Closes the streams a resolved source may hold, when it is not read.
+     * @param source The source to close
+     */
+    static void closeSource(final javax.xml.transform.Source source) {
+        try {
+            if(source instanceof SAXSource && ((SAXSource)source).getInputSource()!=null) {
+                InputSource is = ((SAXSource)source).getInputSource();
+                if(is.getByteStream()!=null) is.getByteStream().close();
+                if(is.getCharacterStream()!=null) is.getCharacterStream().close();
+            } else if(source instanceof StreamSource) {
+                StreamSource ss = (StreamSource)source;
+                if(ss.getInputStream()!=null) ss.getInputStream().close();
+                if(ss.getReader()!=null) ss.getReader().close();
+            }
+        } catch(IOException ex) {
+            // nothing to do
+        }
+    }
+
+    /**
+     * The packages files saved by last compilation : compiled, reused, or up
+     * to date, with their names, versions and sources keys
+     * @return The packages files
+     */
+    public Map<File,PackageInfo> getPackageFiles() {
+        return packages.getPackageFiles();
+    }
+
+    /**
+     * The jars that have been added to Saxon classpath for extension functions
+     * @return The jars URLs
+     */
+    protected List<URL> getExtensionJars() {
+        return saxonContext==null ? Collections.<URL>emptyList() : saxonContext.getExtensionJars();
+    }
+
+    /**
+     * Computes a key of everything, except stylesheets, that may change the
+     * compilation result : plugin and Saxon versions, Saxon options, catalog
+     * and extension jars. Catalog and jars are identified by their content.
+     * If a manifest is given, the content of files that have not changed
+     * since previous build is not hashed again.
+     * @param manifest The manifest of previous build, or {@code null}
+     * @return The configuration key, or {@code null} if a file can not be read
+     */
+    protected String computeConfigurationKey(final BuildManifest manifest) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(String.valueOf(getClass().getPackage().getImplementationVersion()), StandardCharsets.UTF_8);
+        hasher.putString(getProcessor().getSaxonEdition()+" "+getProcessor().getSaxonProductVersion(), StandardCharsets.UTF_8);
+        hasher.putString(SaxonContextFactory.describe(getSaxonOptions()), StandardCharsets.UTF_8);
+        hasher.putBoolean(isSefCompressed());
+        // content, not location, so that key is the same on all machines
+        try {
+            if(getCatalogFile()!=null) {
+                hasher.putString(getConfigurationHash(getCatalogFile().toURI().toString(), manifest), StandardCharsets.UTF_8);
+            }
+            for(URL jar: getExtensionJars()) {
+                hasher.putString(getConfigurationHash(jar.toExternalForm(), manifest), StandardCharsets.UTF_8);
+            }
+            for(File archive: getDependencyPackageArchives()) {
+                hasher.putString(getConfigurationHash(archive.toURI().toString(), manifest), StandardCharsets.UTF_8);
+            }
+        } catch(IOException ex) {
+            getLog().warn(LOG_PREFIX+"unable to compute configuration key, incremental compilation and artifact cache are not used: "+ex.getMessage());
+            return null;
+        }
+        return hasher.hash().toString();
+    }
+
+    private String getConfigurationHash(final String uri, final BuildManifest manifest) throws IOException {
+        return manifest==null ? contentHashes.get(uri) : manifest.getConfigurationHash(uri);
+    }
+
+    /**
+     * Initialize Saxon configuration, or reuses the shared context another
+     * engine of the build has initialized with the same settings.
+     * @throws net.sf.saxon.trans.XPathException In case of problem
+     */
+    public void initSaxon() throws XPathException {
+        // packages can only be imported in compilers of the Processor that has loaded them
+        packages.forgetDependencyPackages();
+        SaxonContextFactory factory = new SaxonContextFactory(getCatalogFile(), isCatalogIndexed(), getSaxonOptions(), getModuleCacheSize(), getLog());
+        Map<String,SaxonContext> contexts = getSharedContexts();
+        String extensionsKey = contexts==null ? null : computeExtensionsKey();
+        String contextKey = extensionsKey==null ? null : factory.computeKey(extensionsKey);
+        SaxonContext context = contextKey==null ? null : contexts.get(contextKey);
+        if(context==null) {
+            context = factory.create(this::loadExtensionFunctions);
+            if(contextKey!=null) {
+                SaxonContext previous = contexts.putIfAbsent(contextKey, context);
+                if(previous!=null) {
+                    // another execution has initialized the same context meanwhile
+                    closeQuietly(context);
+                    context = previous;
+                }
+            }
+        } else {
+            getLog().debug(LOG_PREFIX+"Saxon has already been initialized in this build, it is reused");
+            sharedContextReused(context);
+        }
+        saxonContext = context;
+        saxonShared = contextKey!=null;
+        catalogResolver = context.getResolver();
+        moduleCache = context.getModuleCache();
+        parsingCache = context.getParsingCache();
+        XcSAXParserFactory.setEntityResolver(catalogResolver);
+        XcSAXParserFactory.setParsingCache(parsingCache);
+        Processor proc = context.getProcessor();
+        builder = proc.newDocumentBuilder();
+        compiler = proc.newXsltCompiler();
+        configureCompiler(compiler);
+        packages.reset(compiler);
+    }
+
+    /**
+     * Called by {@link #initSaxon() } when a shared context is reused :
+     * extension functions have not been loaded by this engine.
+     * @param context The reused context
+     */
+    protected void sharedContextReused(final SaxonContext context) {
+        // nothing to do
+    }
+
+    /**
+     * Releases what {@link #initSaxon() } has created, unless it is shared
+     * with other executions of the build, and the parsers of current thread.
+     */
+    public void closeSaxon() {
+        if(saxonContext!=null && !saxonShared) closeQuietly(saxonContext);
+        saxonContext = null;
+        // worker threads have ended, this one may be reused by another build
+        XcSAXParserFactory.releaseThread();
+    }
+
+    private void closeQuietly(final SaxonContext context) {
+        try {
+            context.close();
+        } catch(IOException ex) {
+            getLog().debug(LOG_PREFIX+"while closing extension jars: "+ex.getMessage());
+        }
+    }
+
+    /**
+     * Identifies the extension functions {@link #loadExtensionFunctions(net.sf.saxon.s9api.Processor) }
+     * would load, without loading them : engines with the same key share their
+     * Saxon context.
+     * @return The key, or {@code null} if extension functions can not be known
+     * before they are loaded
+     */
+    protected String computeExtensionsKey() {
+        return "";
+    }
+
+    /**
+     * Loads extension functions, and registers them in {@code proc}. This
+     * engine loads none.
+     * @param proc The processor to register functions in
+     * @return The loaded extension functions
+     */
+    protected ExtensionFunctions loadExtensionFunctions(final Processor proc) {
+        return ExtensionFunctions.NONE;
+    }
+
+    /**
+     * Returns the Processor the plugin uses.
+     * @return The processor used
+     */
+    public Processor getProcessor() { return compiler.getProcessor(); }
+    
+    /**
+     * Because we may need a compiler elsewhere
+     * @return The XSL compiler used
+     */
+    public XsltCompiler getXsltCompiler() { return compiler; }
+    
+    /**
+     * Because we may need a URIResolver elsewhere
+     * @return  The URI resolver used
+     */
+    public URIResolver getUriResolver() { return compiler.getURIResolver(); }
+    
+    /**
+     * Returns the EntityResolver to use
+     * @return The EntityResolver
+     */
+    public EntityResolver2 getEntityResolver() { return (EntityResolver2)getUriResolver(); }
+    
+    /**
+     * Because we may need a DocumentBuilder elsewhere !
+     * @return The document builder
+     */
+    public DocumentBuilder getBuilder() { return builder; }
+
+}
@@ -31,6 +31,7 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 import org.apache.maven.plugin.logging.Log;
 import top.marchand.xml.maven.plugin.xsl.scandir.DirectoryScanner;
 import top.marchand.xml.maven.plugin.xsl.scandir.ScanListener;
@@ -161,6 +162,41 @@ public class FileSet {
         return foundFiles;
     }
 
+    /**
+     * Scans this FileSet, and gives each matching file to {@code consumer}
+     * as soon as it is found. {@link #getDir()} is relocated before the
+     * first file is given.
+     * @param projectBaseDir. Used to relocate {@link #dir } if {@code dir} does not exists
+     * @param log The log to use while scanning
+     * @param listener The scan listener to use. May be {@code null}
+     * @param consumer The consumer of matching files, relative to {@link #getDir()}. May be called concurrently
+     * @see DirectoryScanner#scan(java.util.function.Consumer)
+     */
+    public void scan(File projectBaseDir, Log log, ScanListener listener, Consumer<Path> consumer) {
+        DirectoryScanner scanner = new DirectoryScanner(this, projectBaseDir, log);
+        scanner.setScanListener(listener);
+        this.dir=scanner.getBaseDir().getAbsolutePath();
+        scanner.scan(consumer);
+    }
+
+    /**
+     * Returns the files found by previous scan, relative to {@link #getDir()}
+     * @return The files, or {@code null} if this FileSet has not been scanned
+     * since files have been forgotten
+     */
+    List<Path> getFoundFiles() {
+        return foundFiles;
+    }
+
+    /**
+     * Forgets files found by previous scan, so that next call to
+     * {@link #getFiles(java.io.File, org.apache.maven.plugin.logging.Log, top.marchand.xml.maven.plugin.xsl.scandir.ScanListener)}
+     * scans again.
+     */
+    void forgetFiles() {
+        foundFiles = null;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
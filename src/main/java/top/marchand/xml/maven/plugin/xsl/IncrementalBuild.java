@@ -0,0 +1,249 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import net.sf.saxon.s9api.SaxonApiException;
+import org.apache.maven.plugin.logging.Log;
+import top.marchand.xml.maven.plugin.xsl.deps.DependencyGraph;
+import top.marchand.xml.maven.plugin.xsl.deps.HrefResolver;
+import top.marchand.xml.maven.plugin.xsl.incremental.BuildManifest;
+import top.marchand.xml.maven.plugin.xsl.jfr.DependencyGraphEvent;
+
+/**
+ * What incremental compilation keeps between builds : the build manifest,
+ * and the dependency graph, stored next to it. Decides which units have to
+ * be compiled again.
+ * @author cmarchand
+ */
+class IncrementalBuild {
+    private static final String LOG_PREFIX = "[IncrementalBuild] ";
+    private final File manifestFile;
+    private final Function<CompilationUnit,String> systemIds;
+    private final HrefResolver resolver;
+    private final Log log;
+
+    /**
+     * Creates the incremental state of a build
+     * @param manifestFile The manifest file. If {@code null}, incremental compilation is disabled
+     * @param systemIds Gives the system ID of a unit source, or {@code null}
+     * @param resolver Resolves hrefs the way the compiler does
+     * @param log The log to use
+     */
+    IncrementalBuild(final File manifestFile, final Function<CompilationUnit,String> systemIds, final HrefResolver resolver, final Log log) {
+        super();
+        this.manifestFile = manifestFile;
+        this.systemIds = systemIds;
+        this.resolver = resolver;
+        this.log = log;
+    }
+
+    /**
+     * Loads the manifest of previous build. Returns {@code null} if
+     * incremental compilation is disabled. Its configuration key has to be set.
+     */
+    BuildManifest loadManifest() {
+        if(manifestFile==null) return null;
+        BuildManifest manifest;
+        try {
+            manifest = BuildManifest.load(manifestFile);
+        } catch(IOException | RuntimeException ex) {
+            log.warn(LOG_PREFIX+"unable to read "+manifestFile.getAbsolutePath()+", all stylesheets will be compiled");
+            manifest = new BuildManifest(manifestFile, null);
+        }
+        return manifest;
+    }
+
+    void saveManifest(final BuildManifest manifest) {
+        if(manifest==null) return;
+        try {
+            manifest.save();
+        } catch(IOException ex) {
+            log.warn(LOG_PREFIX+"unable to write build manifest", ex);
+        }
+    }
+
+    /**
+     * The file where dependency graph is stored between builds, {@code null}
+     * if incremental compilation is disabled.
+     */
+    private File getGraphFile(final BuildManifest manifest) {
+        return manifest==null ? null : new File(manifestFile.getParentFile(), "dependencies.properties");
+    }
+
+    /**
+     * Loads the dependency graph of previous build
+     * @param manifest The manifest. If {@code null}, there is no graph
+     * @return The graph, or {@code null}
+     */
+    DependencyGraph loadGraph(final BuildManifest manifest) {
+        File graphFile = getGraphFile(manifest);
+        return graphFile==null ? null : DependencyGraph.load(graphFile);
+    }
+
+    /**
+     * Saves the dependency graph for next build
+     * @param graph The graph. May be {@code null}
+     * @param manifest The manifest. If {@code null}, the graph is not saved
+     */
+    void saveGraph(final DependencyGraph graph, final BuildManifest manifest) {
+        File graphFile = getGraphFile(manifest);
+        if(graph==null || graphFile==null) return;
+        try {
+            graph.save(graphFile);
+        } catch(IOException ex) {
+            log.warn(LOG_PREFIX+"unable to write dependency graph", ex);
+        }
+    }
+
+    /**
+     * Builds the dependency graph of {@code units}. Returns {@code null} if it
+     * can not be built.
+     * @param previous The graph of previous build. May be {@code null}
+     */
+    DependencyGraph buildDependencyGraph(final List<CompilationUnit> units, final DependencyGraph previous) {
+        List<String> roots = new ArrayList<>(units.size());
+        for(CompilationUnit unit: units) {
+            String systemId = systemIds.apply(unit);
+            if(systemId!=null) roots.add(systemId);
+        }
+        DependencyGraphEvent event = new DependencyGraphEvent();
+        event.begin();
+        try {
+            DependencyGraph graph = DependencyGraph.build(roots, resolver, previous);
+            event.end();
+            if(event.shouldCommit()) {
+                event.roots = roots.size();
+                event.modules = graph.size();
+                event.commit();
+            }
+            return graph;
+        } catch(RuntimeException ex) {
+            log.warn(LOG_PREFIX+"unable to build dependency graph", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Adds the modules reachable from {@code systemId} to {@code graph}
+     * @return {@code false} if the graph can not be built
+     */
+    boolean addToDependencyGraph(final DependencyGraph graph, final String systemId, final DependencyGraph previous) {
+        DependencyGraphEvent event = new DependencyGraphEvent();
+        event.begin();
+        try {
+            int before = graph.size();
+            graph.add(Collections.singletonList(systemId), resolver, previous);
+            event.end();
+            if(event.shouldCommit()) {
+                event.roots = 1;
+                event.modules = graph.size()-before;
+                event.commit();
+            }
+            return true;
+        } catch(RuntimeException ex) {
+            log.warn(LOG_PREFIX+"unable to build dependency graph", ex);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the units that have to be compiled : the ones whose manifest
+     * entry is not up to date, and the ones that use, directly or not, a
+     * package that has to be compiled. Up to date packages are loaded from
+     * their saved file into {@code packages}, so that other units can still
+     * use them. If the dependency graph is not available, and a package has
+     * to be compiled again, all units are compiled.
+     */
+    List<CompilationUnit> selectUnitsToCompile(final List<CompilationUnit> units, final BuildManifest manifest, final DependencyGraph graph, final PackageRegistry packages) {
+        Map<String,CompilationUnit> unitsBySystemId = new LinkedHashMap<>();
+        for(CompilationUnit unit: units) {
+            String systemId = systemIds.apply(unit);
+            if(systemId!=null) unitsBySystemId.put(systemId, unit);
+        }
+        Set<CompilationUnit> stale = new LinkedHashSet<>();
+        Set<String> stalePackages = new HashSet<>();
+        for(Map.Entry<String,CompilationUnit> me: unitsBySystemId.entrySet()) {
+            CompilationUnit unit = me.getValue();
+            if(!manifest.isUpToDate(unit.getTargetFile())) {
+                stale.add(unit);
+                if(isPackage(me.getKey(), unit, manifest, graph)) stalePackages.add(me.getKey());
+            }
+        }
+        for(CompilationUnit unit: units) {
+            if(!unitsBySystemId.containsValue(unit)) stale.add(unit);
+        }
+        if(!stalePackages.isEmpty()) {
+            if(graph==null) {
+                log.info(LOG_PREFIX+"a package has changed, all stylesheets are compiled");
+                return units;
+            }
+            for(String dependent: graph.getDependents(stalePackages)) {
+                CompilationUnit unit = unitsBySystemId.get(dependent);
+                if(unit!=null) stale.add(unit);
+            }
+        }
+        for(Map.Entry<String,CompilationUnit> me: unitsBySystemId.entrySet()) {
+            CompilationUnit unit = me.getValue();
+            if(!stale.contains(unit) && isPackage(me.getKey(), unit, manifest, graph)) {
+                try {
+                    packages.loadSaved(unit.getTargetFile(), me.getKey(), graph);
+                } catch(SaxonApiException | RuntimeException ex) {
+                    log.info(LOG_PREFIX+"unable to load "+unit.getTargetFile()+", all stylesheets are compiled");
+                    return units;
+                }
+            }
+        }
+        List<CompilationUnit> ret = new ArrayList<>(stale.size());
+        for(CompilationUnit unit: units) {
+            if(stale.contains(unit)) ret.add(unit);
+        }
+        log.info(LOG_PREFIX+(units.size()-ret.size())+" stylesheet(s) up to date, "+ret.size()+" to compile");
+        return ret;
+    }
+
+    private static boolean isPackage(final String systemId, final CompilationUnit unit, final BuildManifest manifest, final DependencyGraph graph) {
+        if(graph!=null && graph.contains(systemId)) return graph.isPackage(systemId);
+        return manifest.isPackage(unit.getTargetFile());
+    }
+
+    static List<File> getTargetFiles(final List<CompilationUnit> units) {
+        List<File> targets = new ArrayList<>(units.size());
+        for(CompilationUnit unit: units) targets.add(unit.getTargetFile());
+        return targets;
+    }
+}
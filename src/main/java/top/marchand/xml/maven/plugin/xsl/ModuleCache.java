@@ -0,0 +1,122 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.URIResolver;
+import net.sf.saxon.om.NodeInfo;
+import net.sf.saxon.s9api.DocumentBuilder;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XdmNode;
+
+/**
+ * A cache of parsed stylesheet modules, shared by all compilers of a build.
+ * When many stylesheets import the same modules, each module is parsed only
+ * once : the compilers get the cached tree instead of the file.
+ * Trees are kept by soft references, in a LRU map of bounded size. Entries
+ * are keyed by system ID, and by last modification date for files.
+ * @author cmarchand
+ */
+public class ModuleCache {
+    private final Processor processor;
+    private final Map<String, SoftReference<XdmNode>> trees;
+
+    /**
+     * Creates a cache
+     * @param processor The processor used to build trees
+     * @param maxEntries The maximum number of modules kept
+     */
+    public ModuleCache(final Processor processor, final int maxEntries) {
+        super();
+        this.processor = processor;
+        this.trees = new LinkedHashMap<String, SoftReference<XdmNode>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SoftReference<XdmNode>> eldest) {
+                return size()>maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns a URIResolver that looks for modules in this cache, and resolves
+     * them with {@code delegate} if they are not.
+     * @param delegate The resolver that really resolves
+     * @return The caching resolver
+     */
+    public URIResolver wrap(final URIResolver delegate) {
+        return (href, base) -> resolve(href, base, delegate);
+    }
+
+    private Source resolve(final String href, final String base, final URIResolver delegate) throws TransformerException {
+        Source source = delegate.resolve(href, base);
+        if(source==null || source.getSystemId()==null || source instanceof NodeInfo) return source;
+        String key = getKey(source.getSystemId());
+        XdmNode tree = get(key);
+        if(tree==null) {
+            DocumentBuilder builder = processor.newDocumentBuilder();
+            // compiler needs them for error messages
+            builder.setLineNumbering(true);
+            try {
+                tree = builder.build(source);
+            } catch(SaxonApiException ex) {
+                throw new TransformerException(ex);
+            }
+            put(key, tree);
+        } else {
+            CompilerEngine.closeSource(source);
+        }
+        return tree.getUnderlyingNode();
+    }
+
+    private synchronized XdmNode get(final String key) {
+        SoftReference<XdmNode> ref = trees.get(key);
+        return ref==null ? null : ref.get();
+    }
+
+    private synchronized void put(final String key, final XdmNode tree) {
+        trees.put(key, new SoftReference<>(tree));
+    }
+
+    private static String getKey(final String systemId) {
+        if(systemId.startsWith("file:")) {
+            try {
+                File f = new File(new URI(systemId));
+                return systemId+"#"+f.lastModified();
+            } catch(Exception ex) {
+                // not a valid file URI
+            }
+        }
+        return systemId;
+    }
+}
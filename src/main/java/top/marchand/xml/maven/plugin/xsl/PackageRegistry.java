@@ -0,0 +1,279 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XsltCompiler;
+import net.sf.saxon.s9api.XsltPackage;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+import top.marchand.xml.maven.plugin.xsl.deps.DependencyGraph;
+import top.marchand.xml.maven.plugin.xsl.packages.PackageArchive;
+import top.marchand.xml.maven.plugin.xsl.packages.PackageArchive.PackageInfo;
+
+/**
+ * The packages of a build : the ones compiled, loaded or reused, that all
+ * compilers import, the files they are saved to, and the packages imported
+ * from dependencies.
+ * @author cmarchand
+ */
+class PackageRegistry {
+    private static final String LOG_PREFIX = "[PackageRegistry] ";
+    private final ContentHashes contentHashes;
+    private final Supplier<Log> log;
+    private final List<XsltPackage> compiledPackages = new ArrayList<>();
+    private XsltCompiler compiler;
+    private final Map<File,XsltPackage> packagesByTarget = new ConcurrentHashMap<>();
+    private final Map<File,PackageInfo> packageFiles = new ConcurrentHashMap<>();
+    private Map<String,ImportedPackage> dependencyPackages;
+
+    /**
+     * Creates a registry
+     * @param contentHashes The hashes sources keys are computed from
+     * @param log Gives the log to use
+     */
+    PackageRegistry(final ContentHashes contentHashes, final Supplier<Log> log) {
+        super();
+        this.contentHashes = contentHashes;
+        this.log = log;
+    }
+
+    /**
+     * Forgets the packages of previous build. Packages are registered in
+     * {@code compiler} from now on.
+     * @param compiler The main compiler
+     */
+    void reset(final XsltCompiler compiler) {
+        synchronized(compiledPackages) {
+            compiledPackages.clear();
+            this.compiler = compiler;
+        }
+        packagesByTarget.clear();
+        packageFiles.clear();
+    }
+
+    /**
+     * Forgets the packages of dependencies : they can only be imported in
+     * compilers of the Processor that has loaded them.
+     */
+    void forgetDependencyPackages() {
+        dependencyPackages = null;
+    }
+
+    /**
+     * Makes {@code pack} available to the main compiler, and to all compilers
+     * {@link #importAll(net.sf.saxon.s9api.XsltCompiler) } is called on.
+     * @param pack The package to register
+     * @throws SaxonApiException If the package can not be imported
+     */
+    void register(final XsltPackage pack) throws SaxonApiException {
+        synchronized(compiledPackages) {
+            compiledPackages.add(pack);
+            compiler.importPackage(pack);
+        }
+    }
+
+    /**
+     * Imports all registered packages in {@code xslCompiler}
+     * @param xslCompiler A new compiler
+     * @throws SaxonApiException If a package can not be imported
+     */
+    void importAll(final XsltCompiler xslCompiler) throws SaxonApiException {
+        synchronized(compiledPackages) {
+            for(XsltPackage pack: compiledPackages) {
+                xslCompiler.importPackage(pack);
+            }
+        }
+    }
+
+    /**
+     * Loads the package saved to {@code targetFile} by a previous build, and registers it.
+     * @param targetFile The saved package
+     * @param systemId The package source system ID
+     * @param graph The dependency graph. May be {@code null}
+     * @throws SaxonApiException If the package can not be loaded
+     */
+    void loadSaved(final File targetFile, final String systemId, final DependencyGraph graph) throws SaxonApiException {
+        register(SefFiles.loadPackage(targetFile, compiler));
+        recordPackageFile(targetFile, systemId, graph);
+    }
+
+    /**
+     * Records the package compiled to {@code targetFile}
+     */
+    void compiled(final File targetFile, final XsltPackage pack) {
+        packagesByTarget.put(targetFile, pack);
+    }
+
+    /**
+     * Returns the package compiled to {@code targetFile} in this build
+     * @return The package, or {@code null}
+     */
+    XsltPackage getCompiled(final File targetFile) {
+        return packagesByTarget.get(targetFile);
+    }
+
+    /**
+     * The packages files saved by last compilation : compiled, reused, or up
+     * to date, with their names, versions and sources keys
+     */
+    Map<File,PackageInfo> getPackageFiles() {
+        return packageFiles;
+    }
+
+    /**
+     * Records that {@code targetFile} is a package file, with the name and
+     * version of the package, and the key of its sources.
+     */
+    void recordPackageFile(final File targetFile, final String systemId, final DependencyGraph graph) {
+        String sourceKey = null;
+        try {
+            sourceKey = computeSourceKey(systemId, graph);
+        } catch(IOException ex) {
+            log.get().debug(LOG_PREFIX+"sources of "+systemId+" can not be read: "+ex.getMessage());
+        }
+        packageFiles.put(targetFile, new PackageInfo(
+                graph==null ? null : graph.getPackageName(systemId),
+                graph==null ? null : graph.getPackageVersion(systemId),
+                sourceKey));
+    }
+
+    /**
+     * Computes the key of the sources of package {@code systemId} : the
+     * content of all modules it depends on, wherever they are, so that the
+     * same sources have the same key in a dependency jar and in a project.
+     * Returns {@code null} if dependencies of the package are not fully known.
+     */
+    private String computeSourceKey(final String systemId, final DependencyGraph graph) throws IOException {
+        if(systemId==null || graph==null || !graph.isComplete(systemId)) return null;
+        List<String> hashes = new ArrayList<>();
+        for(String uri: graph.getClosure(systemId)) {
+            hashes.add(contentHashes.get(uri));
+        }
+        Collections.sort(hashes);
+        Hasher hasher = Hashing.sha256().newHasher();
+        for(String hash: hashes) {
+            hasher.putString(hash, StandardCharsets.UTF_8);
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Returns the package a dependency publishes, if {@code systemId} is the
+     * same package : same name, same version, and sources with the same content.
+     * It is already imported.
+     * @return The package, or {@code null} if no dependency publishes it
+     */
+    XsltPackage findDependencyPackage(final String systemId, final DependencyGraph graph) throws IOException {
+        if(dependencyPackages==null || dependencyPackages.isEmpty() || graph==null) return null;
+        String name = graph.getPackageName(systemId);
+        ImportedPackage imported = name==null ? null : dependencyPackages.get(importKey(name, graph.getPackageVersion(systemId)));
+        if(imported==null || imported.sourceKey==null) return null;
+        if(!imported.sourceKey.equals(computeSourceKey(systemId, graph))) {
+            log.get().debug(LOG_PREFIX+systemId+" differs from the package of the same version a dependency publishes, it is compiled");
+            return null;
+        }
+        return imported.pack;
+    }
+
+    /**
+     * Loads the packages of dependencies, once per initialization, and
+     * registers them, so that units use them as if they had been compiled.
+     * @param archives The jars and directories that contain packages
+     */
+    void importDependencyPackages(final List<File> archives) {
+        if(dependencyPackages==null) {
+            dependencyPackages = new HashMap<>();
+            for(File archive: archives) {
+                loadDependencyPackages(archive);
+            }
+            if(!dependencyPackages.isEmpty()) {
+                log.get().info(LOG_PREFIX+dependencyPackages.size()+" package(s) imported from dependencies");
+            }
+        }
+        for(ImportedPackage imported: dependencyPackages.values()) {
+            try {
+                register(imported.pack);
+            } catch(SaxonApiException ex) {
+                log.get().warn(LOG_PREFIX+"unable to import package "+imported.pack.getName()+": "+ex.getMessage());
+            }
+        }
+    }
+
+    private static String importKey(final String name, final String version) {
+        return name+"\u0000"+version;
+    }
+
+    private void loadDependencyPackages(final File archive) {
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("xsl-packages");
+            for(Map.Entry<Path,PackageInfo> me: PackageArchive.extract(archive, dir).entrySet()) {
+                XsltPackage pack = SefFiles.loadPackage(me.getKey().toFile(), compiler);
+                PackageInfo info = me.getValue();
+                // a package that is not fully indexed is imported, but never replaces a unit
+                String key = info!=null && info.isComplete() ? importKey(info.getName(), info.getVersion()) : importKey(pack.getName(), pack.getVersion());
+                String sourceKey = info!=null && info.isComplete() ? info.getSourceKey() : null;
+                // first dependency wins, as on the classpath
+                if(dependencyPackages.putIfAbsent(key, new ImportedPackage(pack, sourceKey))==null) {
+                    log.get().debug(LOG_PREFIX+"package "+pack.getName()+" "+pack.getVersion()+" imported from "+archive);
+                }
+            }
+        } catch(IOException | SaxonApiException | RuntimeException ex) {
+            log.get().warn(LOG_PREFIX+"unable to import packages of "+archive+", they are compiled: "+ex.getMessage());
+        } finally {
+            if(dir!=null) FileUtils.deleteQuietly(dir.toFile());
+        }
+    }
+
+    /**
+     * A package imported from a dependency, and the key of its sources
+     */
+    private static class ImportedPackage {
+        private final XsltPackage pack;
+        private final String sourceKey;
+        ImportedPackage(final XsltPackage pack, final String sourceKey) {
+            super();
+            this.pack = pack;
+            this.sourceKey = sourceKey;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.XsltPackage;
+import org.apache.maven.execution.MavenSession;
+import org.eclipse.aether.SessionData;
+import top.marchand.xml.maven.plugin.xsl.parsers.ParsingCache;
+import top.marchand.xml.maven.plugin.xsl.resolver.MemoizingResolver;
+
+/**
+ * What {@link CompilerEngine#initSaxon() } builds, and that may be shared
+ * by all executions of a build that have the same Saxon options, catalog and
+ * extension jars : the Processor, with its extension functions, the catalog
+ * resolver, the DTDs and entities it has resolved, the parsed modules cache,
+ * and the packages compiled up to now.
+ * Extension functions are loaded in a class loader of their own, so that
+ * contexts never change the plugin class loader.
+ * @author cmarchand
+ */
+public class SaxonContext {
+    private final Processor processor;
+    private final MemoizingResolver resolver;
+    private final ParsingCache parsingCache;
+    private final ModuleCache moduleCache;
+    private final List<URL> extensionJars;
+    private final URLClassLoader extensionClassLoader;
+    private final List<String> functionClasses;
+    private final Map<String,XsltPackage> packages = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a context
+     * @param processor The processor, with extension functions registered
+     * @param resolver The catalog resolver
+     * @param parsingCache The DTDs and entities resolved through {@code resolver}
+     * @param moduleCache The parsed modules cache. May be {@code null}
+     * @param extensionJars The jars that have been added to Saxon classpath
+     * @param extensionClassLoader The class loader of extension jars. May be {@code null}
+     * @param functionClasses The extension functions classes
+     */
+    public SaxonContext(final Processor processor, final MemoizingResolver resolver, final ParsingCache parsingCache, final ModuleCache moduleCache, final List<URL> extensionJars, final URLClassLoader extensionClassLoader, final List<String> functionClasses) {
+        super();
+        this.processor = processor;
+        this.resolver = resolver;
+        this.parsingCache = parsingCache;
+        this.moduleCache = moduleCache;
+        this.extensionJars = new ArrayList<>(extensionJars);
+        this.extensionClassLoader = extensionClassLoader;
+        this.functionClasses = new ArrayList<>(functionClasses);
+    }
+
+    /**
+     * Returns the contexts shared by all executions of {@code session}, by key.
+     * They are kept in session data, so that they are forgotten at the end of
+     * the build, and closed by {@link SaxonContextCloser} if the plugin is a
+     * build extension.
+     * @param session The Maven session
+     * @return The shared contexts
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String,SaxonContext> getSharedContexts(final MavenSession session) {
+        SessionData data = session.getRepositorySession().getData();
+        // the class, not its name : another version of the plugin has other classes
+        Object ret = data.get(SaxonContext.class);
+        if(ret==null) {
+            data.set(SaxonContext.class, null, new ConcurrentHashMap<String,SaxonContext>());
+            ret = data.get(SaxonContext.class);
+        }
+        return (Map<String,SaxonContext>)ret;
+    }
+
+    /**
+     * Closes the contexts shared by all executions of {@code session}
+     * @param session The Maven session, that has ended
+     */
+    @SuppressWarnings("unchecked")
+    public static void closeSharedContexts(final MavenSession session) {
+        if(session.getRepositorySession()==null) return;
+        Object contexts = session.getRepositorySession().getData().get(SaxonContext.class);
+        if(!(contexts instanceof Map)) return;
+        for(SaxonContext context: ((Map<String,SaxonContext>)contexts).values()) {
+            try {
+                context.close();
+            } catch(IOException ex) {
+                // jars are closed when class loader is garbage collected
+            }
+        }
+        ((Map<String,SaxonContext>)contexts).clear();
+    }
+
+    public Processor getProcessor() {
+        return processor;
+    }
+
+    public MemoizingResolver getResolver() {
+        return resolver;
+    }
+
+    public ParsingCache getParsingCache() {
+        return parsingCache;
+    }
+
+    public ModuleCache getModuleCache() {
+        return moduleCache;
+    }
+
+    public List<URL> getExtensionJars() {
+        return extensionJars;
+    }
+
+    public List<String> getFunctionClasses() {
+        return functionClasses;
+    }
+
+    public URLClassLoader getExtensionClassLoader() {
+        return extensionClassLoader;
+    }
+
+    /**
+     * Returns a package compiled by an execution of this build
+     * @param key The key of the package source and of all it depends on
+     * @return The package, or {@code null}
+     */
+    public XsltPackage getPackage(final String key) {
+        return packages.get(key);
+    }
+
+    /**
+     * Makes a compiled package available to next executions of this build
+     * @param key The key of the package source and of all it depends on
+     * @param pack The package
+     */
+    public void putPackage(final String key, final XsltPackage pack) {
+        packages.putIfAbsent(key, pack);
+    }
+
+    /**
+     * Closes the extension jars. The Processor must not be used anymore.
+     * @throws IOException If a jar can not be closed
+     */
+    public void close() throws IOException {
+        if(extensionClassLoader!=null) extensionClassLoader.close();
+    }
+}
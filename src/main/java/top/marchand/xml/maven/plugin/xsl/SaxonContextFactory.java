@@ -0,0 +1,153 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.function.Function;
+import net.sf.saxon.Configuration;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.trans.XPathException;
+import org.apache.maven.plugin.logging.Log;
+import org.xmlresolver.Catalog;
+import org.xmlresolver.Resolver;
+import top.marchand.maven.saxon.utils.SaxonOptions;
+import top.marchand.maven.saxon.utils.SaxonUtils;
+import top.marchand.xml.maven.plugin.xsl.extensions.ExtensionFunctions;
+import top.marchand.xml.maven.plugin.xsl.parsers.ParsingCache;
+import top.marchand.xml.maven.plugin.xsl.parsers.XcSAXParserFactory;
+import top.marchand.xml.maven.plugin.xsl.resolver.CatalogIndex;
+import top.marchand.xml.maven.plugin.xsl.resolver.MemoizingResolver;
+
+/**
+ * Creates the {@link SaxonContext} of a Saxon configuration : Processor,
+ * catalog resolver, parsed modules cache and extension functions.
+ * @author cmarchand
+ */
+class SaxonContextFactory {
+    private static final String LOG_PREFIX = "[SaxonContextFactory] ";
+    private final File catalogFile;
+    private final boolean catalogIndexed;
+    private final SaxonOptions saxonOptions;
+    private final int moduleCacheSize;
+    private final Log log;
+
+    SaxonContextFactory(final File catalogFile, final boolean catalogIndexed, final SaxonOptions saxonOptions, final int moduleCacheSize, final Log log) {
+        super();
+        this.catalogFile = catalogFile;
+        this.catalogIndexed = catalogIndexed;
+        this.saxonOptions = saxonOptions;
+        this.moduleCacheSize = moduleCacheSize;
+        this.log = log;
+    }
+
+    /**
+     * Computes the key of what a context depends on : Saxon options,
+     * catalog, and extension functions.
+     * @param extensionsKey The key of extension functions
+     * @return The context key
+     */
+    String computeKey(final String extensionsKey) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(describe(saxonOptions), StandardCharsets.UTF_8);
+        hasher.putString(catalogFile==null ? "" : catalogFile.getAbsolutePath(), StandardCharsets.UTF_8);
+        hasher.putBoolean(catalogIndexed);
+        hasher.putInt(moduleCacheSize);
+        hasher.putString(extensionsKey, StandardCharsets.UTF_8);
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Creates the Processor, with the catalog resolver and the extension
+     * functions {@code extensionLoader} loads.
+     * @param extensionLoader Loads extension functions in a Processor
+     * @return The new context
+     * @throws XPathException If Saxon can not be configured
+     */
+    SaxonContext create(final Function<Processor,ExtensionFunctions> extensionLoader) throws XPathException {
+        Configuration config = Configuration.newConfiguration();
+        config.setSourceParserClass(XcSAXParserFactory.class.getName());
+        Processor proc = new Processor(config);
+        SaxonUtils.prepareSaxonConfiguration(proc, saxonOptions);
+        Resolver uriResolver;
+        CatalogIndex catalogIndex = null;
+        if(catalogFile!=null) {
+            log.debug(LOG_PREFIX+"Setting catalog to "+catalogFile.toURI());
+            uriResolver = new Resolver(new Catalog(catalogFile.toURI().toString()));
+            if(catalogIndexed) catalogIndex = indexCatalog();
+        } else {
+            uriResolver = new Resolver();
+        }
+        MemoizingResolver catalogResolver = new MemoizingResolver(uriResolver, catalogIndex);
+        config.setURIResolver(catalogResolver);
+        ParsingCache parsingCache = new ParsingCache();
+        XcSAXParserFactory.setEntityResolver(catalogResolver);
+        XcSAXParserFactory.setParsingCache(parsingCache);
+        ExtensionFunctions extensions = extensionLoader.apply(proc);
+        ModuleCache moduleCache = moduleCacheSize>0 ? new ModuleCache(proc, moduleCacheSize) : null;
+        return new SaxonContext(proc, catalogResolver, parsingCache, moduleCache, extensions.getJars(), extensions.getClassLoader(), extensions.getFunctionClasses());
+    }
+
+    private CatalogIndex indexCatalog() {
+        try {
+            CatalogIndex ret = CatalogIndex.build(catalogFile.toURI().toString());
+            log.debug(LOG_PREFIX+ret.size()+" URIs indexed from "+ret.getCatalogCount()+" catalogs");
+            return ret;
+        } catch(IOException ex) {
+            log.warn(LOG_PREFIX+"catalog can not be indexed, it will be looked up", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Returns a description of all fields of {@code options}, sorted by name.
+     */
+    static String describe(final Object options) {
+        if(options==null) return "null";
+        TreeMap<String,String> values = new TreeMap<>();
+        for(Class<?> clazz = options.getClass(); clazz!=null && !clazz.equals(Object.class); clazz = clazz.getSuperclass()) {
+            for(Field field: clazz.getDeclaredFields()) {
+                if(Modifier.isStatic(field.getModifiers())) continue;
+                try {
+                    field.setAccessible(true);
+                    Object value = field.get(options);
+                    values.put(clazz.getName()+"."+field.getName(), value instanceof Object[] ? Arrays.deepToString((Object[])value) : String.valueOf(value));
+                } catch(IllegalAccessException | RuntimeException ex) {
+                    values.put(clazz.getName()+"."+field.getName(), "?");
+                }
+            }
+        }
+        return values.toString();
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XsltCompiler;
+import net.sf.saxon.s9api.XsltPackage;
+
+/**
+ * Writes compiled stylesheets and packages, gzip-compressed or not, and loads
+ * saved packages back.
+ * @author cmarchand
+ */
+class SefFiles {
+    private static final int EXPORT_BUFFER_SIZE = 64*1024;
+    private final boolean compressed;
+
+    SefFiles(final boolean compressed) {
+        super();
+        this.compressed = compressed;
+    }
+
+    /**
+     * Writes a compiled file to {@code targetFile}, through a temporary file
+     * that is renamed once complete : a failure never leaves a truncated file.
+     */
+    void write(final File targetFile, final Export export) throws SaxonApiException {
+        Path target = targetFile.toPath().toAbsolutePath();
+        Path tmp = null;
+        try {
+            Files.createDirectories(target.getParent());
+            tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmp), EXPORT_BUFFER_SIZE);
+            try(OutputStream out = compressed ? new GZIPOutputStream(os, EXPORT_BUFFER_SIZE) : os) {
+                export.write(out);
+            }
+            moveAtomically(tmp, target);
+        } catch(IOException ex) {
+            throw new SaxonApiException(ex);
+        } finally {
+            deleteQuietly(tmp);
+        }
+    }
+
+    /**
+     * Saves {@code pack} to {@code targetFile}, through a temporary file. A
+     * package can only be saved to a file : it is compressed from this file.
+     */
+    void savePackage(final XsltPackage pack, final File targetFile) throws SaxonApiException {
+        Path target = targetFile.toPath().toAbsolutePath();
+        Path saved = null;
+        try {
+            Files.createDirectories(target.getParent());
+            saved = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            pack.save(saved.toFile());
+            if(compressed) {
+                final Path toCompress = saved;
+                write(targetFile, os -> Files.copy(toCompress, os));
+            } else {
+                moveAtomically(saved, target);
+            }
+        } catch(IOException ex) {
+            throw new SaxonApiException(ex);
+        } finally {
+            deleteQuietly(saved);
+        }
+    }
+
+    /**
+     * Loads a package saved by {@link #savePackage(net.sf.saxon.s9api.XsltPackage, java.io.File) },
+     * compressed or not.
+     * @param packageFile The saved package
+     * @param compiler The compiler to load package with
+     * @return The package
+     * @throws SaxonApiException If package can not be loaded
+     */
+    static XsltPackage loadPackage(final File packageFile, final XsltCompiler compiler) throws SaxonApiException {
+        if(!isGzipped(packageFile)) {
+            return compiler.loadLibraryPackage(packageFile.toURI());
+        }
+        // Saxon loads packages from an URI only
+        Path expanded = null;
+        try(InputStream is = new GZIPInputStream(new FileInputStream(packageFile), EXPORT_BUFFER_SIZE)) {
+            expanded = Files.createTempFile(packageFile.getName(), ".sef");
+            Files.copy(is, expanded, StandardCopyOption.REPLACE_EXISTING);
+            return compiler.loadLibraryPackage(expanded.toUri());
+        } catch(IOException ex) {
+            throw new SaxonApiException(ex);
+        } finally {
+            deleteQuietly(expanded);
+        }
+    }
+
+    private static boolean isGzipped(final File file) {
+        try(InputStream is = new FileInputStream(file)) {
+            return is.read()==0x1f && is.read()==0x8b;
+        } catch(IOException ex) {
+            return false;
+        }
+    }
+
+    private static void moveAtomically(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch(AtomicMoveNotSupportedException ex) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteQuietly(final Path path) {
+        if(path==null) return;
+        try {
+            Files.deleteIfExists(path);
+        } catch(IOException ex) {
+            // temporary file, nothing to do
+        }
+    }
+
+    /**
+     * Writes a compiled file to a stream
+     */
+    interface Export {
+        void write(OutputStream os) throws SaxonApiException, IOException;
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import top.marchand.xml.maven.plugin.xsl.deps.DependencyGraph;
+
+/**
+ * Schedules the compilation of units by levels : packages are compiled
+ * before the units that use them, and all units of a level are compiled at
+ * the same time.
+ * @author cmarchand
+ */
+final class UnitScheduler {
+
+    private UnitScheduler() {
+        super();
+    }
+
+    /**
+     * Groups the indexes of units by compilation level. Without dependency
+     * graph, there is only one level, in units order.
+     * @param systemIds The system IDs of units sources
+     * @param graph The dependency graph. May be {@code null}
+     * @return The levels, in compilation order
+     */
+    static List<List<Integer>> scheduleLevels(final List<String> systemIds, final DependencyGraph graph) {
+        int[] unitLevels = graph==null ? new int[systemIds.size()] : graph.getPackageLevels(systemIds);
+        List<List<Integer>> ret = new ArrayList<>();
+        for(int i=0; i<unitLevels.length; i++) {
+            while(ret.size()<=unitLevels[i]) ret.add(new ArrayList<>());
+            ret.get(unitLevels[i]).add(i);
+        }
+        return ret;
+    }
+
+    /**
+     * Compiles the units of a level, and waits for all of them to be compiled.
+     * If {@code executor} is {@code null}, units are compiled in current thread.
+     * @param units The units
+     * @param level The indexes of units to compile
+     * @param executor The workers. May be {@code null}
+     * @param task Compiles a unit
+     * @param errors Where errors are stored, at the index of their unit
+     * @throws InterruptedException If interrupted while waiting for workers
+     */
+    static void compileLevel(final List<CompilationUnit> units, final List<Integer> level, final ExecutorService executor, final UnitTask task, final Exception[] errors) throws InterruptedException {
+        if(executor==null || level.size()<2) {
+            for(int i: level) {
+                errors[i] = task.compile(units.get(i), false);
+            }
+            return;
+        }
+        List<Future<Exception>> futures = new ArrayList<>(level.size());
+        for(int i: level) {
+            final CompilationUnit unit = units.get(i);
+            futures.add(executor.submit(() -> task.compile(unit, true)));
+        }
+        for(int j=0; j<futures.size(); j++) {
+            errors[level.get(j)] = getError(futures.get(j));
+        }
+    }
+
+    /**
+     * Waits for a compilation started on a worker
+     * @return The compilation error, or {@code null}
+     * @throws InterruptedException If interrupted while waiting
+     */
+    static Exception getError(final Future<Exception> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch(ExecutionException ex) {
+            return ex.getCause() instanceof Exception ? (Exception)ex.getCause() : ex;
+        }
+    }
+
+    /**
+     * Compiles a unit
+     */
+    interface UnitTask {
+        /**
+         * Compiles {@code unit}
+         * @param unit The unit to compile
+         * @param worker {@code true} if called from a worker thread
+         * @return The compilation error, or {@code null}
+         */
+        Exception compile(CompilationUnit unit, boolean worker);
+    }
+}
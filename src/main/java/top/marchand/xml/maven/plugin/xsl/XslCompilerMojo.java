@@ -26,26 +26,50 @@
  */
 package top.marchand.xml.maven.plugin.xsl;
 
+import com.google.common.hash.Hashing;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.sax.SAXSource;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import net.sf.saxon.s9api.SaxonApiException;
 import net.sf.saxon.trans.XPathException;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.*;
 import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectHelper;
 import org.apache.maven.shared.dependency.graph.DependencyGraphBuilder;
-import org.xml.sax.InputSource;
 import top.marchand.maven.saxon.utils.SaxonOptions;
+import top.marchand.xml.maven.plugin.xsl.cache.ArtifactCache;
+import top.marchand.xml.maven.plugin.xsl.cache.HttpArtifactCache;
+import top.marchand.xml.maven.plugin.xsl.cache.LocalArtifactCache;
+import top.marchand.xml.maven.plugin.xsl.cache.ReadOnlyArtifactCache;
+import top.marchand.xml.maven.plugin.xsl.cache.TieredArtifactCache;
+import top.marchand.xml.maven.plugin.xsl.daemon.DaemonClient;
+import top.marchand.xml.maven.plugin.xsl.daemon.DaemonProtocol;
+import top.marchand.xml.maven.plugin.xsl.extensions.ExtensionDiscovery;
+import top.marchand.xml.maven.plugin.xsl.packages.PackageArchive;
 import top.marchand.xml.maven.plugin.xsl.scandir.ScanListener;
 
 /**
@@ -55,7 +79,8 @@ import top.marchand.xml.maven.plugin.xsl.scandir.ScanListener;
  */
 @Mojo(name = "xsl-compiler",
     defaultPhase = LifecyclePhase.COMPILE,
-    requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME)
+    requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME,
+    threadSafe = true)
 public class XslCompilerMojo extends AbstractCompiler {
   @Parameter(defaultValue = "${project}", readonly = true, required = true)
   private MavenProject project;
@@ -65,6 +90,20 @@ public class XslCompilerMojo extends AbstractCompiler {
     return project;
   }
 
+  @Parameter(defaultValue = "${session}", readonly = true)
+  private MavenSession session;
+
+  /**
+   * If true, Saxon is initialized once per build : modules that have the same
+   * Saxon options, catalog and extension jars share the same Processor, parsed
+   * modules, and the packages compiled by previous modules.
+   * Extension jars of shared Processors are closed at the end of the build
+   * if the plugin is declared with {@code <extensions>true</extensions>} ;
+   * otherwise, they are closed when they are garbage collected.
+   */
+  @Parameter(defaultValue = "true")
+  private boolean shareSaxon;
+
   @Component(hint = "default")
   private DependencyGraphBuilder dependencyGraphBuilder;
 
@@ -94,6 +133,15 @@ public class XslCompilerMojo extends AbstractCompiler {
   @Parameter
   protected File catalog;
 
+  /**
+   * If true, the {@code uri} entries of the catalog, and of the catalogs it
+   * chains to with {@code nextCatalog}, are read once and indexed, before
+   * compiling. URIs that are not indexed are looked up in the catalogs.
+   * Whatever this parameter, each URI is looked up only once per build.
+   */
+  @Parameter(defaultValue = "false")
+  private boolean catalogIndex;
+
   @Parameter(defaultValue = "${project.basedir}")
   private File projectBaseDir;
 
@@ -103,6 +151,194 @@ public class XslCompilerMojo extends AbstractCompiler {
   @Parameter
   private boolean logExcludedFiles;
 
+  /**
+   * The number of stylesheets compiled at the same time. Each worker uses its
+   * own XSL compiler, all created from the same Saxon Processor.
+   * Defaults to 1, i.e. sequential compilation.
+   */
+  @Parameter(defaultValue = "1")
+  private int threads;
+
+  /**
+   * If true, stylesheets are compiled while source directories are scanned,
+   * and the list of all files is never built. Stylesheets that are packages,
+   * or that use packages, are still compiled once scan is finished.
+   */
+  @Parameter(defaultValue = "false")
+  private boolean streaming;
+
+  /**
+   * If true, stylesheets are compiled by a compile daemon, that keeps Saxon
+   * and extension functions loaded between builds. The daemon is started by
+   * a first build, that compiles in Maven JVM, and is used by next ones. It
+   * is restarted when extension jars, Saxon options or catalog change.
+   * The daemon writes the compilation report, but does not stream. It is
+   * not used when {@code useCache} is true, when packages are attached or
+   * imported from dependencies, or when {@code shareSaxon} is true and the
+   * build has other modules, that would share Saxon with this one.
+   */
+  @Parameter(defaultValue = "false")
+  private boolean daemon;
+
+  /**
+   * The directory where compile daemons write their state and their log.
+   */
+  @Parameter(defaultValue = "${user.home}/.xslcompiler/daemon")
+  private File daemonDirectory;
+
+  /**
+   * The number of minutes after which an unused compile daemon stops.
+   */
+  @Parameter(defaultValue = "180")
+  private int daemonIdleTimeout;
+
+  /**
+   * The time, in milliseconds, a build waits for a message of the compile
+   * daemon. When it is exceeded, stylesheets are compiled in Maven JVM.
+   */
+  @Parameter(defaultValue = "600000")
+  private int daemonReadTimeout;
+
+  /**
+   * The file where the result of extension functions discovery is stored, to
+   * be reused by next builds while compile classpath does not change.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/xsl-compiler/extensions.properties")
+  private File extensionDiscoveryFile;
+
+  /**
+   * If true, timings and sizes of each compiled stylesheet are written to
+   * {@code reportFile}.json and {@code reportFile}.csv. {@code sniffMs} is
+   * the time spent reading the root element ; parsing the stylesheet is
+   * part of {@code compileMs}.
+   */
+  @Parameter(defaultValue = "true")
+  private boolean report;
+
+  /**
+   * The compilation report file, without extension.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/xsl-compiler-report")
+  private File reportFile;
+
+  /**
+   * The number of slowest stylesheets logged at the end of the build.
+   */
+  @Parameter(defaultValue = "10")
+  private int reportSlowest;
+
+  /**
+   * The compression of compiled files : {@code none} or {@code gzip}. Gzip
+   * compressed files are named {@code .sef.gz} ; they can be read through a
+   * {@link java.util.zip.GZIPInputStream}.
+   */
+  @Parameter(defaultValue = "none")
+  private String sefCompression;
+
+  /**
+   * If true, compiled packages are packed in a jar, attached to the project
+   * with {@code packagesClassifier}, so that projects that depend on it do not
+   * compile them again.
+   */
+  @Parameter(defaultValue = "false")
+  private boolean attachPackages;
+
+  /**
+   * The classifier of the attached packages jar
+   */
+  @Parameter(defaultValue = "xsl-packages")
+  private String packagesClassifier;
+
+  /**
+   * If true, the packages jars found on compile classpath are imported. A
+   * stylesheet that declares a package of the same name and version, from
+   * sources with the same content, is not compiled again : the imported
+   * package is saved instead. Otherwise, the stylesheet is compiled.
+   */
+  @Parameter(defaultValue = "false")
+  private boolean importPackages;
+
+  @Component
+  private MavenProjectHelper projectHelper;
+
+  /**
+   * The maximum number of parsed modules kept in memory. When many stylesheets
+   * import or include the same modules, these modules are parsed only once.
+   * 0 disables this cache.
+   */
+  @Parameter(defaultValue = "200")
+  private int moduleCacheSize;
+
+  /**
+   * If true, stylesheets whose source, imported and included modules, Saxon
+   * options and extension jars have not changed since previous build are not
+   * compiled again.
+   */
+  @Parameter(defaultValue = "true")
+  boolean incremental;
+
+  /**
+   * The file where the incremental build manifest is stored.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/xsl-compiler/manifest.properties")
+  private File manifestFile;
+
+  /**
+   * If true, compiled files are stored in a cache shared by all builds of
+   * current user, and fetched from it when a stylesheet, with the same
+   * imported modules and the same configuration, has already been compiled.
+   */
+  @Parameter(defaultValue = "false")
+  private boolean useCache;
+
+  /**
+   * The directory of the compiled files cache.
+   */
+  @Parameter(defaultValue = "${user.home}/.xslcompiler/cache")
+  private File cacheDirectory;
+
+  /**
+   * The maximum size of the compiled files cache, in megabytes. When cache is
+   * larger, least recently used files are deleted.
+   */
+  @Parameter(defaultValue = "1024")
+  private long cacheMaxSize;
+
+  /**
+   * If true, compiled files fetched from cache are hard links to cache files,
+   * when file system allows it. Compiled files must then never be modified.
+   */
+  @Parameter(defaultValue = "false")
+  private boolean cacheHardLinks;
+
+  /**
+   * The URL of a remote compiled files cache, shared by all builds of a
+   * team. An {@code http} or {@code https} URL must point to a server that
+   * supports {@code GET} and {@code PUT} of {@code <url>/<key>} ; a
+   * {@code file} URL must point to a shared directory.
+   * The remote cache is used in addition to local one, if {@code useCache} is true.
+   */
+  @Parameter
+  private String cacheUrl;
+
+  /**
+   * If true, compiled files are never written to the remote cache.
+   */
+  @Parameter(defaultValue = "false")
+  private boolean cacheReadOnly;
+
+  /**
+   * The connection timeout to the remote cache, in milliseconds.
+   */
+  @Parameter(defaultValue = "2000")
+  private int cacheConnectTimeout;
+
+  /**
+   * The read timeout from the remote cache, in milliseconds.
+   */
+  @Parameter(defaultValue = "10000")
+  private int cacheReadTimeout;
+
   /**
    * Saxon options. See {@linkplain  https://github.com/cmarchand/saxonOptions-mvn-plug-utils/wiki}
    */
@@ -113,88 +349,338 @@ public class XslCompilerMojo extends AbstractCompiler {
 
   @Override
   public void execute() throws MojoExecutionException, MojoFailureException {
-    Log log = getLog();
+    checkSefCompression();
+    checkCacheUrl();
+    boolean useDaemon = daemon && isDaemonUsable();
+    if (useDaemon) {
+      Boolean hasError = compileWithDaemon();
+      if (hasError != null) {
+        if (hasError) {
+          throw new MojoExecutionException("Error occured while compiling Xslts. See previous log.");
+        }
+        return;
+      }
+    }
+    boolean hasError;
     try {
-      initSaxon();
-    } catch (XPathException ex) {
-      getLog().error("while configuring Saxon:", ex);
+      try {
+        initSaxon();
+      } catch (XPathException ex) {
+        getLog().error("while configuring Saxon:", ex);
+      }
+      hasError = compileFilesets();
+    } finally {
+      closeSaxon();
     }
-    Path targetDir = classesDirectory.toPath();
-    boolean hasError = false;
-    if (filesets == null) {
-      getLog().error(LOG_PREFIX + "\n" + ERROR_MESSAGE);
-      throw new MojoExecutionException(ERROR_MESSAGE);
+    if (useDaemon) {
+      DaemonClient client = createDaemonClient();
+      if (client != null) {
+        client.start();
+      }
     }
-    ScanListener listener = null;
-    if (logExcludedFiles) {
-      listener = new ScanListener() {
-        @Override
-        public void scanning(File dir) {
-        }
+    if (hasError) {
+      throw new MojoExecutionException("Error occured while compiling Xslts. See previous log.");
+    }
+    if (attachPackages) {
+      attachPackages();
+    }
+  }
 
-        @Override
-        public void fileAccepted(Path rel) {
-        }
+  /**
+   * Packs compiled packages in a jar, and attaches it to the project.
+   */
+  private void attachPackages() throws MojoExecutionException {
+    if (getPackageFiles().isEmpty()) {
+      getLog().debug(LOG_PREFIX + "no package has been compiled, nothing is attached");
+      return;
+    }
+    File archive = new File(project.getBuild().getDirectory(), project.getBuild().getFinalName() + "-" + packagesClassifier + ".jar");
+    try {
+      PackageArchive.write(archive, classesDirectory.toPath(), getPackageFiles());
+    } catch (IOException ex) {
+      throw new MojoExecutionException("unable to write " + archive, ex);
+    }
+    projectHelper.attachArtifact(project, "jar", packagesClassifier, archive);
+    getLog().info(LOG_PREFIX + getPackageFiles().size() + " package(s) attached as " + packagesClassifier);
+  }
 
-        @Override
-        public void fileRejected(Path rel) {
-          getLog().warn(rel.toString() + " has been excluded. If it is a resource, this resource may nto be processed as a resource, and will be probably miss in final delivery.");
-        }
-      };
+  private void checkSefCompression() throws MojoExecutionException {
+    if (!"none".equals(sefCompression) && !"gzip".equals(sefCompression)) {
+      throw new MojoExecutionException("sefCompression must be none or gzip, not " + sefCompression);
+    }
+  }
+
+  /**
+   * Checks that {@code cacheUrl}, if used, is a file, http or https URL
+   * @throws MojoExecutionException If it is not
+   */
+  protected void checkCacheUrl() throws MojoExecutionException {
+    if (!useCache || cacheUrl == null || cacheUrl.trim().isEmpty()) {
+      return;
     }
+    try {
+      URI uri = new URI(cacheUrl.trim());
+      String scheme = uri.getScheme();
+      if ("file".equals(scheme)) {
+        // throws IllegalArgumentException if the URI is not a local file
+        new File(uri);
+      } else if (!"http".equals(scheme) && !"https".equals(scheme)) {
+        throw new MojoExecutionException("cacheUrl must be a file, http or https URL, not " + cacheUrl);
+      }
+    } catch (URISyntaxException | IllegalArgumentException ex) {
+      throw new MojoExecutionException("cacheUrl is not a valid URL: " + cacheUrl, ex);
+    }
+  }
+
+  /**
+   * Returns {@code false} if this execution needs what the compile daemon
+   * does not do.
+   */
+  private boolean isDaemonUsable() {
+    String reason = null;
+    if (attachPackages || !getDependencyPackageArchives().isEmpty()) {
+      reason = "the daemon neither imports nor attaches packages";
+    } else if (useCache) {
+      reason = "the daemon does not use the artifact cache";
+    } else if (shareSaxon && session != null && session.getProjects() != null && session.getProjects().size() > 1) {
+      reason = "modules of this build share Saxon";
+    }
+    if (reason != null) {
+      getLog().debug(LOG_PREFIX + "compile daemon is not used: " + reason);
+    }
+    return reason == null;
+  }
+
+  /**
+   * Compiles filesets with the compile daemon.
+   * @return {@code null} if there is no daemon to compile, or if at least one stylesheet failed to compile
+   */
+  private Boolean compileWithDaemon() throws MojoExecutionException {
+    DaemonClient client = createDaemonClient();
+    if (client == null) {
+      return null;
+    }
+    return client.compile(collectUnits(), threads, getManifestFile(), isSefCompressed(), getReportFile(), getReportSlowest());
+  }
+
+  /**
+   * Creates the client of this project compile daemon. Returns {@code null}
+   * if extension functions discovery is not up to date : the daemon is
+   * started with the jars found by last discovery.
+   */
+  private DaemonClient createDaemonClient() {
+    List<String> untransmittable = DaemonProtocol.getUntransmittableOptions(saxonOptions);
+    if (!untransmittable.isEmpty()) {
+      getLog().info(LOG_PREFIX + "Saxon options " + untransmittable + " can not be sent to the compile daemon, it is not used");
+      return null;
+    }
+    try {
+      String classpathKey = ExtensionDiscovery.computeClasspathKey(project.getCompileClasspathElements());
+      ExtensionDiscovery discovery = ExtensionDiscovery.load(extensionDiscoveryFile);
+      if (!discovery.isUpToDate(classpathKey)) {
+        getLog().debug(LOG_PREFIX + "extension functions have to be discovered, compile daemon is not used");
+        return null;
+      }
+      List<String> classpath = getDaemonClasspath(discovery.getAddedJars());
+      if (classpath == null) {
+        getLog().debug(LOG_PREFIX + "plugin classpath is unknown, compile daemon is not used");
+        return null;
+      }
+      Properties startup = DaemonClient.createStartup(classpathKey, catalog, catalogIndex, saxonOptions, discovery.getAddedJars(), moduleCacheSize, daemonIdleTimeout);
+      String stateName = Hashing.sha256().hashString(projectBaseDir.getAbsolutePath(), StandardCharsets.UTF_8).toString().substring(0, 16);
+      return new DaemonClient(new File(daemonDirectory, stateName + ".properties"), startup, classpath, daemonReadTimeout, getLog());
+    } catch (DependencyResolutionRequiredException ex) {
+      getLog().debug(LOG_PREFIX + "compile daemon is not used: " + ex.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * The daemon classpath : plugin classpath, Maven API, and extension jars.
+   * Returns {@code null} if plugin classpath is not known.
+   */
+  private List<String> getDaemonClasspath(List<String> extensionJars) {
+    if (!(getClass().getClassLoader() instanceof URLClassLoader)) {
+      return null;
+    }
+    Set<String> ret = new LinkedHashSet<>();
+    for (URL url : ((URLClassLoader) getClass().getClassLoader()).getURLs()) {
+      addToClasspath(ret, url);
+    }
+    // Maven API comes from Maven core, not from plugin dependencies
+    for (Class<?> clazz : new Class<?>[]{AbstractMojo.class, MavenProject.class, Model.class, Artifact.class}) {
+      CodeSource source = clazz.getProtectionDomain().getCodeSource();
+      if (source != null) {
+        addToClasspath(ret, source.getLocation());
+      }
+    }
+    for (String jar : extensionJars) {
+      try {
+        addToClasspath(ret, new URL(jar));
+      } catch (MalformedURLException ex) {
+        getLog().debug(LOG_PREFIX + "ignoring " + jar);
+      }
+    }
+    return new ArrayList<>(ret);
+  }
+
+  private static void addToClasspath(Set<String> classpath, URL url) {
+    try {
+      classpath.add(new File(url.toURI()).getAbsolutePath());
+    } catch (URISyntaxException | IllegalArgumentException ex) {
+      // not a file
+    }
+  }
+
+  /**
+   * Scans filesets and compiles all found stylesheets. Saxon must have been
+   * initialized.
+   * @return {@code true} if at least one stylesheet failed to compile
+   * @throws MojoExecutionException If there is no fileset
+   */
+  protected boolean compileFilesets() throws MojoExecutionException {
+    Path targetDir = classesDirectory.toPath();
+    if (streaming) {
+      checkFilesets();
+      return compileWhileScanning(targetDir, createScanListener());
+    }
+    return compileUnits(collectUnits(), threads);
+  }
+
+  /**
+   * Scans filesets and returns the units to compile, in filesets order.
+   * @return The units to compile
+   * @throws MojoExecutionException If there is no fileset
+   */
+  protected List<CompilationUnit> collectUnits() throws MojoExecutionException {
+    checkFilesets();
+    Log log = getLog();
+    Path targetDir = classesDirectory.toPath();
+    ScanListener listener = createScanListener();
+    // filesets are scanned concurrently, results are kept in filesets order
+    List<ForkJoinTask<List<Path>>> scans = new ArrayList<>();
+    for (FileSet fs : filesets) {
+      if (fs.getUri() == null) {
+        scans.add(ForkJoinTask.adapt(() -> fs.getFiles(projectBaseDir, log, listener)));
+      }
+    }
+    ForkJoinTask.invokeAll(scans);
+    List<CompilationUnit> units = new ArrayList<>();
     for (FileSet fs : filesets) {
       if (fs.getUri() != null) {
-        try {
-          String sPath = fs.getUriPath();
-          javax.xml.transform.Source source = compiler.getURIResolver().resolve(fs.getUri(), null);
-          getLog().debug("source systemId=" + source.getSystemId());
-          Path targetPath = targetDir.resolve(sPath);
-          String sourceFileName = sPath.substring(sPath.lastIndexOf("/") + 1);
-          if (sourceFileName.contains("?")) {
-            sourceFileName = sourceFileName.substring(0, sourceFileName.indexOf("?") - 1);
-          }
-          getLog().debug(LOG_PREFIX + " sourceFileName=" + sourceFileName);
-          String targetFileName = FilenameUtils.getBaseName(sourceFileName).concat(".sef");
-          getLog().debug(LOG_PREFIX + " targetFileName=" + targetFileName);
-          File targetFile = targetPath.getParent().resolve(targetFileName).toFile();
-          compileFile(source, targetFile);
-        } catch (IOException | SaxonApiException | TransformerException ex) {
-          hasError = true;
-          getLog().error(LOG_PREFIX + " while compiling " + fs.getUri(), ex);
-        }
+        units.add(createUnit(fs, targetDir));
       } else {
         Path basedir = new File(fs.getDir()).toPath();
         for (Path p : fs.getFiles(projectBaseDir, log, listener)) {
-          try {
-            File sourceFile = basedir.resolve(p).toFile();
-            SAXSource source = new SAXSource(new InputSource(new FileInputStream(sourceFile)));
-            source.setSystemId(sourceFile.toURI().toString());
-            getLog().debug("source systemId 2: " + source.getSystemId());
-            Path targetPath = p.getParent() == null ? targetDir : targetDir.resolve(p.getParent());
-            String sourceFileName = sourceFile.getName();
-            getLog().debug(LOG_PREFIX + " sourceFileName=" + sourceFileName);
-            String targetFileName = FilenameUtils.getBaseName(sourceFileName).concat(".sef");
-            getLog().debug(LOG_PREFIX + " targetFileName=" + targetFileName);
-            File targetFile = targetPath.resolve(targetFileName).toFile();
-            try {
-              compileFile(source, targetFile);
-            } catch (SaxonApiException | FileNotFoundException ex) {
-              hasError = true;
-              getLog().error(LOG_PREFIX + " While compiling " + p, ex);
-            }
-          } catch (FileNotFoundException ex) {
-            // should never happen, file has been previously found
-            hasError = true;
-            getLog().error(LOG_PREFIX + " While compiling " + p, ex);
-          }
+          units.add(createUnit(basedir, p, targetDir));
         }
       }
     }
-    if (hasError) {
-      throw new MojoExecutionException("Error occured while compiling Xslts. See previous log.");
+    return units;
+  }
+
+  private void checkFilesets() throws MojoExecutionException {
+    if (filesets == null) {
+      getLog().error(LOG_PREFIX + "\n" + ERROR_MESSAGE);
+      throw new MojoExecutionException(ERROR_MESSAGE);
     }
   }
 
+  private ScanListener createScanListener() {
+    if (!logExcludedFiles) {
+      return null;
+    }
+    return new ScanListener() {
+      @Override
+      public void scanning(File dir) {
+      }
+
+      @Override
+      public void fileAccepted(Path rel) {
+      }
+
+      @Override
+      public void fileRejected(Path rel) {
+        getLog().warn(rel.toString() + " has been excluded. If it is a resource, this resource may nto be processed as a resource, and will be probably miss in final delivery.");
+      }
+    };
+  }
+
+  /**
+   * The filesets to compile
+   * @return The filesets, may be {@code null}
+   */
+  protected List<FileSet> getFilesets() {
+    return filesets;
+  }
+
+  /**
+   * The project base directory, filesets dirs are relative to
+   * @return The project base directory
+   */
+  protected File getProjectBaseDir() {
+    return projectBaseDir;
+  }
+
+  /**
+   * Scans filesets in a separate thread, and compiles units as soon as they are found.
+   */
+  private boolean compileWhileScanning(final Path targetDir, final ScanListener listener) {
+    final CompilationUnitQueue queue = new CompilationUnitQueue();
+    final AtomicBoolean scanFailed = new AtomicBoolean(false);
+    Thread scanner = new Thread(() -> {
+      try {
+        List<ForkJoinTask<?>> scans = new ArrayList<>();
+        for (FileSet fs : filesets) {
+          if (fs.getUri() != null) {
+            queue.add(createUnit(fs, targetDir));
+          } else {
+            scans.add(ForkJoinTask.adapt(() -> fs.scan(projectBaseDir, getLog(), listener,
+                p -> queue.add(createUnit(new File(fs.getDir()).toPath(), p, targetDir)))));
+          }
+        }
+        ForkJoinTask.invokeAll(scans);
+      } catch (RuntimeException ex) {
+        getLog().error(LOG_PREFIX + "while scanning filesets", ex);
+        scanFailed.set(true);
+      } finally {
+        queue.close();
+      }
+    }, "xslCompiler-scan");
+    scanner.start();
+    boolean hasError = compileUnits(queue, threads);
+    return hasError || scanFailed.get();
+  }
+
+  private CompilationUnit createUnit(final FileSet fs, final Path targetDir) {
+    String sPath = fs.getUriPath();
+    Path targetPath = targetDir.resolve(sPath);
+    String sourceFileName = sPath.substring(sPath.lastIndexOf("/") + 1);
+    if (sourceFileName.contains("?")) {
+      sourceFileName = sourceFileName.substring(0, sourceFileName.indexOf("?") - 1);
+    }
+    getLog().debug(LOG_PREFIX + " sourceFileName=" + sourceFileName);
+    String targetFileName = FilenameUtils.getBaseName(sourceFileName).concat(getTargetExtension());
+    getLog().debug(LOG_PREFIX + " targetFileName=" + targetFileName);
+    File targetFile = targetPath.getParent().resolve(targetFileName).toFile();
+    return CompilationUnit.fromUri(fs.getUri(), targetFile);
+  }
+
+  private CompilationUnit createUnit(final Path basedir, final Path p, final Path targetDir) {
+    File sourceFile = basedir.resolve(p).toFile();
+    Path targetPath = p.getParent() == null ? targetDir : targetDir.resolve(p.getParent());
+    String sourceFileName = sourceFile.getName();
+    getLog().debug(LOG_PREFIX + " sourceFileName=" + sourceFileName);
+    String targetFileName = FilenameUtils.getBaseName(sourceFileName).concat(getTargetExtension());
+    getLog().debug(LOG_PREFIX + " targetFileName=" + targetFileName);
+    File targetFile = targetPath.resolve(targetFileName).toFile();
+    return CompilationUnit.fromFile(sourceFile, targetFile, p.toString());
+  }
+
+  private String getTargetExtension() {
+    return isSefCompressed() ? ".sef.gz" : ".sef";
+  }
+
   private static final transient String LOG_PREFIX = "[xslCompiler] ";
   private static final transient String URI_REGEX =
       "((([A-Za-z])[A-Za-z0-9+\\-\\.]*):((//(((([A-Za-z0-9\\-\\._~!$&'()*+,;=:]|(%[0-9A-Fa-f][0-9A-Fa-f]))*@))?" +
@@ -236,6 +722,73 @@ public class XslCompilerMojo extends AbstractCompiler {
     return catalog;
   }
 
+  @Override
+  public boolean isCatalogIndexed() {
+    return catalogIndex;
+  }
+
+  @Override
+  public Map<String, SaxonContext> getSharedContexts() {
+    return shareSaxon && session != null ? SaxonContext.getSharedContexts(session) : null;
+  }
+
+  @Override
+  public File getManifestFile() {
+    return incremental ? manifestFile : null;
+  }
+
+  @Override
+  public File getExtensionDiscoveryFile() {
+    return extensionDiscoveryFile;
+  }
+
+  @Override
+  public File getReportFile() {
+    return report ? reportFile : null;
+  }
+
+  @Override
+  public int getReportSlowest() {
+    return reportSlowest;
+  }
+
+  @Override
+  public boolean isSefCompressed() {
+    return "gzip".equals(sefCompression);
+  }
+
+  @Override
+  public boolean isDependencyPackagesImported() {
+    return importPackages;
+  }
+
+  @Override
+  public int getModuleCacheSize() {
+    return moduleCacheSize;
+  }
+
+  @Override
+  public ArtifactCache getArtifactCache() {
+    if (!useCache) {
+      return null;
+    }
+    ArtifactCache local = new LocalArtifactCache(cacheDirectory, cacheMaxSize * 1024 * 1024, cacheHardLinks, getLog());
+    if (cacheUrl == null || cacheUrl.trim().isEmpty()) {
+      return local;
+    }
+    // cacheUrl has been checked by checkCacheUrl()
+    ArtifactCache remote;
+    if (cacheUrl.trim().startsWith("http:") || cacheUrl.trim().startsWith("https:")) {
+      remote = new HttpArtifactCache(cacheUrl.trim(), cacheConnectTimeout, cacheReadTimeout, cacheReadOnly, getLog());
+    } else {
+      remote = new LocalArtifactCache(new File(URI.create(cacheUrl.trim())), 0, false, getLog());
+      if (cacheReadOnly) {
+        remote = new ReadOnlyArtifactCache(remote);
+      }
+    }
+    return new TieredArtifactCache(local, remote);
+  }
+
   @Override
   public SaxonOptions getSaxonOptions() {
     return saxonOptions;
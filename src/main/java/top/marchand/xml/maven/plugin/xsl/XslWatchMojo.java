@@ -0,0 +1,221 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.saxon.trans.XPathException;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.*;
+import top.marchand.xml.maven.plugin.xsl.scandir.DirectoryScanner;
+
+/**
+ * Compiles filesets, and then watches filesets directories : each time a
+ * file changes, changed stylesheets and the ones that depend on them are
+ * compiled again.
+ * <p>Saxon is initialized only once ; the Processor, extension functions and
+ * parsed modules are kept from one build to the other. Compilation is always
+ * incremental. Only the directories a fileset scan walks into are watched :
+ * a change in a module that is outside of them is seen at next change in a
+ * fileset. A fileset is scanned again only if a file it may accept, or a
+ * directory, has been created or deleted.</p>
+ * <p>Run it with {@code mvn xslcompiler:watch}, and stop it with Ctrl-C.</p>
+ * @author cmarchand
+ */
+@Mojo(name = "watch",
+    requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME)
+public class XslWatchMojo extends XslCompilerMojo {
+
+  /**
+   * How long, in milliseconds, to wait for other changes after a change,
+   * before compiling. Editors often write a file in several steps.
+   */
+  @Parameter(defaultValue = "100")
+  private long watchDelay;
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    // only changed stylesheets, and their dependents, are compiled again
+    incremental = true;
+    checkCacheUrl();
+    try {
+      initSaxon();
+    } catch (XPathException ex) {
+      // every build of the watch would fail the same way
+      throw new MojoExecutionException("while configuring Saxon", ex);
+    }
+    if (compileFilesets()) {
+      getLog().warn(LOG_PREFIX + "some stylesheets failed to compile. See previous log.");
+    }
+    try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+      Map<WatchKey, Path> keys = new HashMap<>();
+      Map<FileSet, DirectoryScanner> scanners = new LinkedHashMap<>();
+      for (FileSet fs : getFilesets()) {
+        if (fs.getUri() == null) {
+          DirectoryScanner scanner = new DirectoryScanner(fs, getProjectBaseDir(), getLog());
+          scanners.put(fs, scanner);
+          register(watcher, keys, scanner, scanner.getBaseDir().toPath());
+        }
+      }
+      getLog().info(LOG_PREFIX + "watching " + keys.size() + " directories. Press Ctrl-C to stop.");
+      while (!keys.isEmpty()) {
+        Set<Path> changes = new LinkedHashSet<>();
+        boolean overflow = false;
+        WatchKey key = watcher.take();
+        // group all events of a save
+        while (key != null) {
+          overflow |= collectChanges(watcher, keys, scanners.values(), key, changes);
+          key = watcher.poll(watchDelay, TimeUnit.MILLISECONDS);
+        }
+        getLog().debug(LOG_PREFIX + "changes: " + changes);
+        long start = System.currentTimeMillis();
+        resetBuildState();
+        if (overflow) {
+          // lost events may have created directories, or created and deleted files
+          getLog().debug(LOG_PREFIX + "some changes have been lost, all filesets are scanned again");
+          for (Map.Entry<FileSet, DirectoryScanner> me : scanners.entrySet()) {
+            me.getKey().forgetFiles();
+            register(watcher, keys, me.getValue(), me.getValue().getBaseDir().toPath());
+          }
+        } else {
+          for (Map.Entry<FileSet, DirectoryScanner> me : scanners.entrySet()) {
+            if (mayChangeFiles(me.getKey(), me.getValue(), changes)) {
+              me.getKey().forgetFiles();
+            }
+          }
+        }
+        boolean hasError = compileFilesets();
+        getLog().info(LOG_PREFIX + (hasError ? "compiled with errors" : "compiled") + " in " + (System.currentTimeMillis() - start) + " ms");
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } catch (IOException ex) {
+      throw new MojoExecutionException("unable to watch filesets directories", ex);
+    }
+  }
+
+  /**
+   * Adds the changes of {@code key} to {@code changes}, and watches the
+   * directories that have been created.
+   * @return {@code true} if events have been lost
+   */
+  private boolean collectChanges(WatchService watcher, Map<WatchKey, Path> keys, Collection<DirectoryScanner> scanners, WatchKey key, Set<Path> changes) throws IOException {
+    Path dir = keys.get(key);
+    boolean overflow = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        overflow = true;
+        continue;
+      }
+      if (dir == null) {
+        continue;
+      }
+      Path child = dir.resolve((Path) event.context());
+      changes.add(child);
+      if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)) {
+        for (DirectoryScanner scanner : scanners) {
+          register(watcher, keys, scanner, child);
+        }
+      }
+    }
+    if (!key.reset()) {
+      keys.remove(key);
+    }
+    return overflow;
+  }
+
+  /**
+   * Watches the directories {@code scanner} walks into, from {@code root}.
+   * Excluded directories, and the ones where no include may match, are not
+   * watched.
+   */
+  private void register(final WatchService watcher, final Map<WatchKey, Path> keys, DirectoryScanner scanner, Path root) throws IOException {
+    for (Path dir : scanner.getScannedDirectories(root)) {
+      WatchKey key = dir.register(watcher,
+          StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY,
+          StandardWatchEventKinds.ENTRY_DELETE);
+      keys.put(key, dir);
+    }
+  }
+
+  /**
+   * Returns {@code true} if {@code changes} may change the files found in
+   * {@code fs} : a directory, or a file it accepts, has been created, or one
+   * of its files, or a directory, has been deleted. A modified file is
+   * compiled again, but the files of {@code fs} are the same.
+   */
+  private static boolean mayChangeFiles(FileSet fs, DirectoryScanner scanner, Set<Path> changes) {
+    List<Path> found = fs.getFoundFiles();
+    if (found == null) {
+      return true;
+    }
+    Path base = scanner.getBaseDir().toPath().toAbsolutePath().normalize();
+    Set<Path> known = new HashSet<>(found);
+    for (Path change : changes) {
+      Path abs = change.toAbsolutePath().normalize();
+      if (!abs.startsWith(base)) {
+        continue;
+      }
+      Path rel = base.relativize(abs);
+      if (Files.isDirectory(change)) {
+        return true;
+      }
+      if (Files.exists(change)) {
+        if (!known.contains(rel) && scanner.isAccepted(rel)) {
+          return true;
+        }
+      } else {
+        for (Path f : known) {
+          if (f.startsWith(rel)) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  private static final transient String LOG_PREFIX = "[xslCompiler:watch] ";
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * An {@link ArtifactCache} on a HTTP server. An artifact is read with a
+ * {@code GET <url>/<key>}, and written with a {@code PUT <url>/<key>}.
+ * Any server that supports these two requests can be used.
+ * <p>A remote cache must never make a build fail : if a request fails, the
+ * artifact is considered as not in cache, and if server can not be reached,
+ * the cache is disabled for the rest of the build.</p>
+ * @author cmarchand
+ */
+public class HttpArtifactCache implements ArtifactCache {
+    private static final String LOG_PREFIX = "[HttpArtifactCache] ";
+    private final String baseUrl;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final boolean readOnly;
+    private final Log log;
+    private final AtomicBoolean disabled = new AtomicBoolean(false);
+
+    /**
+     * Creates a remote cache
+     * @param baseUrl The cache URL. Keys are appended to it
+     * @param connectTimeout The connection timeout, in milliseconds
+     * @param readTimeout The read timeout, in milliseconds
+     * @param readOnly If {@code true}, artifacts are never written to the server
+     * @param log The maven logger to use
+     */
+    public HttpArtifactCache(final String baseUrl, final int connectTimeout, final int readTimeout, final boolean readOnly, final Log log) {
+        super();
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl+"/";
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.readOnly = readOnly;
+        this.log = log;
+    }
+
+    private HttpURLConnection open(final String key, final String method) throws IOException {
+        HttpURLConnection cnx = (HttpURLConnection)new URL(baseUrl+key).openConnection();
+        cnx.setConnectTimeout(connectTimeout);
+        cnx.setReadTimeout(readTimeout);
+        cnx.setRequestMethod(method);
+        cnx.setUseCaches(false);
+        return cnx;
+    }
+
+    @Override
+    public boolean fetch(final String key, final File target) throws IOException {
+        if(disabled.get()) return false;
+        HttpURLConnection cnx = null;
+        try {
+            cnx = open(key, "GET");
+            int status = cnx.getResponseCode();
+            if(status!=HttpURLConnection.HTTP_OK) {
+                if(status!=HttpURLConnection.HTTP_NOT_FOUND) {
+                    log.debug(LOG_PREFIX+"GET "+key+" returned "+status);
+                }
+                drain(cnx);
+                return false;
+            }
+            Path targetPath = target.toPath();
+            Files.createDirectories(targetPath.getParent());
+            Path tmp = Files.createTempFile(targetPath.getParent(), target.getName(), ".tmp");
+            try {
+                try(InputStream is = cnx.getInputStream()) {
+                    Files.copy(is, tmp, StandardCopyOption.REPLACE_EXISTING);
+                }
+                Files.move(tmp, targetPath, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            log.debug(LOG_PREFIX+target.getAbsolutePath()+" fetched from "+baseUrl);
+            return true;
+        } catch(IOException ex) {
+            if(cnx!=null) cnx.disconnect();
+            failed("GET", key, ex);
+            return false;
+        }
+    }
+
+    @Override
+    public void store(final String key, final File source) throws IOException {
+        if(readOnly || disabled.get()) return;
+        HttpURLConnection cnx = null;
+        try {
+            cnx = open(key, "PUT");
+            cnx.setDoOutput(true);
+            cnx.setFixedLengthStreamingMode(source.length());
+            cnx.setRequestProperty("Content-Type", "application/octet-stream");
+            try(OutputStream os = cnx.getOutputStream()) {
+                Files.copy(source.toPath(), os);
+            }
+            int status = cnx.getResponseCode();
+            if(status/100!=2) {
+                log.debug(LOG_PREFIX+"PUT "+key+" returned "+status);
+            }
+            drain(cnx);
+        } catch(IOException ex) {
+            if(cnx!=null) cnx.disconnect();
+            failed("PUT", key, ex);
+        }
+    }
+
+    /**
+     * Reads the response body, so that connection can be reused.
+     */
+    private static void drain(final HttpURLConnection cnx) throws IOException {
+        InputStream is = cnx.getResponseCode()<400 ? cnx.getInputStream() : cnx.getErrorStream();
+        if(is==null) return;
+        try(InputStream toClose = is) {
+            byte[] buffer = new byte[1024];
+            while(toClose.read(buffer)>=0) {
+                // nothing to do
+            }
+        }
+    }
+
+    private void failed(final String method, final String key, final IOException ex) {
+        if(disabled.compareAndSet(false, true)) {
+            log.warn(LOG_PREFIX+method+" "+baseUrl+key+" failed ("+ex.getMessage()+"), remote cache disabled for this build");
+        }
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * An {@link ArtifactCache} stored in a local directory, usually shared by all
+ * builds of a user ({@code ~/.xslcompiler/cache}).
+ * Each artifact is a file named after its key. The last modification date of
+ * a file is updated each time it is used, and when cache is closed, least
+ * recently used files are deleted until the cache size is under its limit.
+ * Files are written to a temporary file, and then moved, so that several
+ * builds can use the same cache at the same time.
+ * @author cmarchand
+ */
+public class LocalArtifactCache implements ArtifactCache {
+    private static final String LOG_PREFIX = "[LocalArtifactCache] ";
+    private final Path directory;
+    private final long maxSize;
+    private final boolean hardLinks;
+    private final Log log;
+
+    /**
+     * Creates a cache
+     * @param directory The cache directory. It is created if required
+     * @param maxSize The maximum size of cache, in bytes. If 0 or less, cache is not bounded
+     * @param hardLinks If {@code true}, fetched artifacts are hard links to cache files, when possible
+     * @param log The maven logger to use
+     */
+    public LocalArtifactCache(final File directory, final long maxSize, final boolean hardLinks, final Log log) {
+        super();
+        this.directory = directory.toPath();
+        this.maxSize = maxSize;
+        this.hardLinks = hardLinks;
+        this.log = log;
+    }
+
+    private Path getPath(final String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    @Override
+    public boolean fetch(final String key, final File target) throws IOException {
+        Path cached = getPath(key);
+        if(!Files.isRegularFile(cached)) return false;
+        Path targetPath = target.toPath();
+        Files.createDirectories(targetPath.getParent());
+        try {
+            if(hardLinks) {
+                Files.deleteIfExists(targetPath);
+                try {
+                    Files.createLink(targetPath, cached);
+                } catch(UnsupportedOperationException | IOException ex) {
+                    Files.copy(cached, targetPath, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } else {
+                Files.copy(cached, targetPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            // a hard link shares its modification date with the cache file, which is now the fetch date
+            Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch(NoSuchFileException ex) {
+            // evicted by another build meanwhile
+            return false;
+        }
+        log.debug(LOG_PREFIX+target.getAbsolutePath()+" fetched from cache");
+        return true;
+    }
+
+    @Override
+    public void store(final String key, final File source) throws IOException {
+        Path cached = getPath(key);
+        if(Files.isRegularFile(cached)) return;
+        Files.createDirectories(cached.getParent());
+        Path tmp = Files.createTempFile(cached.getParent(), key, ".tmp");
+        try {
+            Files.copy(source.toPath(), tmp, StandardCopyOption.REPLACE_EXISTING);
+            try {
+                Files.move(tmp, cached, StandardCopyOption.ATOMIC_MOVE);
+            } catch(AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, cached);
+            }
+        } catch(FileAlreadyExistsException ex) {
+            // stored by another build meanwhile
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Deletes least recently used artifacts, until the cache size is under its limit.
+     */
+    @Override
+    public void close() {
+        if(maxSize<=0 || !Files.isDirectory(directory)) return;
+        List<Path> files = new ArrayList<>();
+        List<BasicFileAttributes> attributes = new ArrayList<>();
+        long size = 0;
+        try(DirectoryStream<Path> subDirs = Files.newDirectoryStream(directory)) {
+            for(Path subDir: subDirs) {
+                if(!Files.isDirectory(subDir)) continue;
+                try(DirectoryStream<Path> entries = Files.newDirectoryStream(subDir)) {
+                    for(Path entry: entries) {
+                        // files being written by a build
+                        if(entry.getFileName().toString().endsWith(".tmp")) continue;
+                        BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+                        if(!attrs.isRegularFile()) continue;
+                        files.add(entry);
+                        attributes.add(attrs);
+                        size += attrs.size();
+                    }
+                }
+            }
+        } catch(IOException ex) {
+            log.warn(LOG_PREFIX+"unable to list "+directory, ex);
+            return;
+        }
+        if(size<=maxSize) return;
+        List<Integer> order = new ArrayList<>(files.size());
+        for(int i=0; i<files.size(); i++) order.add(i);
+        order.sort(Comparator.comparing(i -> attributes.get(i).lastModifiedTime()));
+        for(int i: order) {
+            if(size<=maxSize) break;
+            try {
+                Files.deleteIfExists(files.get(i));
+                size -= attributes.get(i).size();
+            } catch(IOException ex) {
+                log.debug(LOG_PREFIX+"unable to delete "+files.get(i));
+            }
+        }
+        log.debug(LOG_PREFIX+"cache size after eviction : "+size);
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.cache;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A local cache, in front of a remote one. Artifacts are looked for in the
+ * local cache first ; artifacts found in the remote cache are stored in the
+ * local one. Stored artifacts are written to both caches.
+ * @author cmarchand
+ */
+public class TieredArtifactCache implements ArtifactCache {
+    private final ArtifactCache local;
+    private final ArtifactCache remote;
+
+    /**
+     * Creates a tiered cache
+     * @param local The local cache. May be {@code null}
+     * @param remote The remote cache
+     */
+    public TieredArtifactCache(final ArtifactCache local, final ArtifactCache remote) {
+        super();
+        this.local = local;
+        this.remote = remote;
+    }
+
+    @Override
+    public boolean fetch(final String key, final File target) throws IOException {
+        if(local!=null && local.fetch(key, target)) return true;
+        if(remote.fetch(key, target)) {
+            if(local!=null) local.store(key, target);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void store(final String key, final File source) throws IOException {
+        if(local!=null) local.store(key, source);
+        remote.store(key, source);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            remote.close();
+        } finally {
+            if(local!=null) local.close();
+        }
+    }
+}
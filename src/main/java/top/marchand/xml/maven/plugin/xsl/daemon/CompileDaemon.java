@@ -0,0 +1,200 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.daemon;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import top.marchand.maven.saxon.utils.SaxonOptions;
+
+/**
+ * A compile server, that keeps Saxon configuration, extension functions and
+ * parsed modules between builds. It listens on a loopback port, and writes
+ * its port and a secret token to a state file that only the plugin reads.
+ * It compiles one request at a time, and stops when it has not been used
+ * for its idle timeout, when it is asked to, or when its state file has been
+ * taken by another daemon.
+ * <p>Started by {@link DaemonClient}, with
+ * {@code CompileDaemon <state file> <startup file>}.</p>
+ * @author cmarchand
+ */
+public class CompileDaemon {
+    // a client sends its whole request as soon as it is connected
+    private static final int REQUEST_TIMEOUT = 10000;
+    private final File stateFile;
+    private final Properties startup;
+    private final Log log = new SystemStreamLog();
+    private String token;
+
+    CompileDaemon(final File stateFile, final Properties startup) {
+        super();
+        this.stateFile = stateFile;
+        this.startup = startup;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties startup = new Properties();
+        try(InputStream is = new FileInputStream(args[1])) {
+            startup.load(is);
+        }
+        new CompileDaemon(new File(args[0]), startup).run();
+    }
+
+    void run() throws Exception {
+        String catalog = startup.getProperty(DaemonProtocol.CATALOG);
+        List<URL> jars = new ArrayList<>();
+        for(String jar: startup.getProperty(DaemonProtocol.EXTENSION_JARS, "").split("\n")) {
+            if(!jar.isEmpty()) jars.add(new URL(jar));
+        }
+        DaemonCompiler compiler = new DaemonCompiler(
+                catalog==null ? null : new File(catalog),
+                Boolean.parseBoolean(startup.getProperty(DaemonProtocol.CATALOG_INDEXED)),
+                DaemonProtocol.readOptions(startup, SaxonOptions.class),
+                jars,
+                Integer.parseInt(startup.getProperty(DaemonProtocol.MODULE_CACHE_SIZE, "0")));
+        compiler.setLog(log);
+        compiler.initSaxon();
+        try(ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout((int)Math.min(Integer.MAX_VALUE, Long.parseLong(startup.getProperty(DaemonProtocol.IDLE_TIMEOUT, "180"))*60000L));
+            byte[] secret = new byte[16];
+            new SecureRandom().nextBytes(secret);
+            StringBuilder sb = new StringBuilder();
+            for(byte b: secret) sb.append(String.format("%02x", b));
+            token = sb.toString();
+            writeState(server.getLocalPort());
+            log.info("compile daemon listening on port "+server.getLocalPort());
+            boolean running = true;
+            while(running && isCurrent()) {
+                Socket accepted;
+                try {
+                    accepted = server.accept();
+                } catch(SocketTimeoutException ex) {
+                    log.info("compile daemon has been idle for too long");
+                    break;
+                }
+                try(Socket socket = accepted) {
+                    socket.setSoTimeout(REQUEST_TIMEOUT);
+                    running = handle(socket, compiler);
+                } catch(IOException | RuntimeException ex) {
+                    log.warn("while handling a request", ex);
+                }
+            }
+        } finally {
+            if(isCurrent()) stateFile.delete();
+        }
+        log.info("compile daemon stopped");
+    }
+
+    /**
+     * Handles a request.
+     * @return {@code false} if daemon has to stop
+     */
+    private boolean handle(final Socket socket, final DaemonCompiler compiler) throws IOException {
+        InputStream is = socket.getInputStream();
+        OutputStream os = socket.getOutputStream();
+        Properties request = DaemonProtocol.read(is);
+        String requestToken = request.getProperty(DaemonProtocol.TOKEN, "");
+        // in constant time, not to tell how much of the token is right
+        if(!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), requestToken.getBytes(StandardCharsets.UTF_8))) {
+            log.warn("request with a wrong token has been rejected");
+            return true;
+        }
+        Properties response = new Properties();
+        if(DaemonProtocol.COMMAND_SHUTDOWN.equals(request.getProperty(DaemonProtocol.COMMAND))) {
+            response.setProperty(DaemonProtocol.RESULT, "stopped");
+            DaemonProtocol.write(os, response);
+            return false;
+        }
+        String manifest = request.getProperty(DaemonProtocol.MANIFEST);
+        String reportFile = request.getProperty(DaemonProtocol.REPORT_FILE);
+        boolean hasError = compiler.compile(
+                DaemonProtocol.readUnits(request),
+                Integer.parseInt(request.getProperty(DaemonProtocol.THREADS, "1")),
+                manifest==null ? null : new File(manifest),
+                Boolean.parseBoolean(request.getProperty(DaemonProtocol.SEF_COMPRESSED)),
+                reportFile==null ? null : new File(reportFile),
+                Integer.parseInt(request.getProperty(DaemonProtocol.REPORT_SLOWEST, "0")),
+                new SocketLog(os, Boolean.parseBoolean(request.getProperty(DaemonProtocol.DEBUG))));
+        compiler.setLog(log);
+        response.setProperty(DaemonProtocol.RESULT, hasError ? "error" : "ok");
+        DaemonProtocol.write(os, response);
+        return true;
+    }
+
+    private void writeState(final int port) throws IOException {
+        Properties state = new Properties();
+        state.setProperty(DaemonProtocol.PORT, Integer.toString(port));
+        state.setProperty(DaemonProtocol.TOKEN, token);
+        state.setProperty(DaemonProtocol.KEY, startup.getProperty(DaemonProtocol.KEY));
+        Path tmp = new File(stateFile.getParentFile(), stateFile.getName()+".tmp").toPath();
+        Files.deleteIfExists(tmp);
+        // only the user may read the token, from the moment the file exists
+        if(tmp.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(tmp, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(tmp);
+            tmp.toFile().setReadable(false, false);
+            tmp.toFile().setReadable(true, true);
+        }
+        try(OutputStream os = Files.newOutputStream(tmp)) {
+            state.store(os, "xslCompiler-maven-plugin compile daemon");
+        }
+        Files.move(tmp, stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns {@code true} if state file is still the one of this daemon
+     */
+    private boolean isCurrent() {
+        Properties state = new Properties();
+        try(InputStream is = new FileInputStream(stateFile)) {
+            state.load(is);
+        } catch(IOException ex) {
+            return false;
+        }
+        return token.equals(state.getProperty(DaemonProtocol.TOKEN));
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.daemon;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import org.apache.maven.plugin.logging.Log;
+import top.marchand.xml.maven.plugin.xsl.CompilationUnit;
+import top.marchand.xml.maven.plugin.xsl.incremental.BuildManifest;
+
+/**
+ * Sends compile requests to the compile daemon of a project, and starts it
+ * when needed.
+ * <p>A daemon is identified by a key, computed from everything it has been
+ * started with : extension jars, Saxon options, catalog. If the running
+ * daemon has another key, it is stopped, and a new one is started. A build
+ * never waits for a daemon to start : it compiles in its own JVM, and next
+ * builds use the daemon.</p>
+ * @author cmarchand
+ */
+public class DaemonClient {
+    private static final String LOG_PREFIX = "[DaemonClient] ";
+    private static final int CONNECT_TIMEOUT = 1000;
+    private final File stateFile;
+    private final Properties startup;
+    private final List<String> classpath;
+    private final int readTimeout;
+    private final Log log;
+
+    /**
+     * Creates a client
+     * @param stateFile The file where the daemon writes its port and token
+     * @param startup What the daemon has to be started with
+     * @param classpath The daemon classpath
+     * @param readTimeout The time, in milliseconds, to wait for a message of the daemon
+     * @param log The log to send daemon messages to
+     */
+    public DaemonClient(final File stateFile, final Properties startup, final List<String> classpath, final int readTimeout, final Log log) {
+        super();
+        this.stateFile = stateFile;
+        this.startup = new Properties();
+        this.startup.putAll(startup);
+        this.startup.setProperty(DaemonProtocol.CLASSPATH, String.join("\n", classpath));
+        this.startup.setProperty(DaemonProtocol.KEY, computeKey(this.startup));
+        this.classpath = classpath;
+        this.readTimeout = readTimeout;
+        this.log = log;
+    }
+
+    /**
+     * Creates the startup properties of a daemon
+     * @param classpathKey The key of project classpath, extension jars have been found in
+     * @param catalog The catalog file. May be {@code null}
+     * @param catalogIndexed If {@code true}, the catalog is indexed by the daemon
+     * @param saxonOptions The Saxon options. May be {@code null}
+     * @param extensionJars The URLs of jars that contain extension functions
+     * @param moduleCacheSize The size of parsed modules cache
+     * @param idleTimeout The number of minutes after which an unused daemon stops
+     * @return The startup properties
+     */
+    public static Properties createStartup(final String classpathKey, final File catalog, final boolean catalogIndexed, final Object saxonOptions, final List<String> extensionJars, final int moduleCacheSize, final int idleTimeout) {
+        Properties ret = new Properties();
+        ret.setProperty(DaemonProtocol.CLASSPATH_KEY, classpathKey);
+        if(catalog!=null) {
+            ret.setProperty(DaemonProtocol.CATALOG, catalog.getAbsolutePath());
+            ret.setProperty(DaemonProtocol.CATALOG_INDEXED, Boolean.toString(catalogIndexed));
+            // catalog is read once by the daemon
+            try {
+                ret.setProperty(DaemonProtocol.CATALOG_HASH, BuildManifest.hash(catalog.toURI().toURL()));
+            } catch(IOException ex) {
+                ret.setProperty(DaemonProtocol.CATALOG_HASH, Long.toString(catalog.lastModified()));
+            }
+        }
+        DaemonProtocol.writeOptions(ret, saxonOptions);
+        ret.setProperty(DaemonProtocol.EXTENSION_JARS, String.join("\n", extensionJars));
+        ret.setProperty(DaemonProtocol.MODULE_CACHE_SIZE, Integer.toString(moduleCacheSize));
+        ret.setProperty(DaemonProtocol.IDLE_TIMEOUT, Integer.toString(idleTimeout));
+        return ret;
+    }
+
+    /**
+     * Compiles {@code units} with the daemon.
+     * @param units The units to compile
+     * @param threads The number of workers
+     * @param manifestFile The build manifest. May be {@code null}
+     * @param sefCompressed If compiled files are gzip-compressed
+     * @param reportFile The compilation report file, without extension. May be {@code null}
+     * @param reportSlowest The number of slowest stylesheets to log
+     * @return {@code true} or {@code false} if units have been compiled, with or without errors ; {@code null} if there is no daemon to compile them,
+     * or if it has not answered in time
+     */
+    public Boolean compile(final List<CompilationUnit> units, final int threads, final File manifestFile, final boolean sefCompressed, final File reportFile, final int reportSlowest) {
+        Properties state = readState();
+        if(state==null) return null;
+        if(!startup.getProperty(DaemonProtocol.KEY).equals(state.getProperty(DaemonProtocol.KEY))) {
+            log.info(LOG_PREFIX+"configuration has changed, compile daemon is restarted");
+            shutdown(state);
+            return null;
+        }
+        Properties request = new Properties();
+        request.setProperty(DaemonProtocol.TOKEN, state.getProperty(DaemonProtocol.TOKEN, ""));
+        request.setProperty(DaemonProtocol.COMMAND, DaemonProtocol.COMMAND_COMPILE);
+        request.setProperty(DaemonProtocol.THREADS, Integer.toString(threads));
+        request.setProperty(DaemonProtocol.DEBUG, Boolean.toString(log.isDebugEnabled()));
+        if(manifestFile!=null) request.setProperty(DaemonProtocol.MANIFEST, manifestFile.getAbsolutePath());
+        request.setProperty(DaemonProtocol.SEF_COMPRESSED, Boolean.toString(sefCompressed));
+        if(reportFile!=null) request.setProperty(DaemonProtocol.REPORT_FILE, reportFile.getAbsolutePath());
+        request.setProperty(DaemonProtocol.REPORT_SLOWEST, Integer.toString(reportSlowest));
+        DaemonProtocol.writeUnits(request, units);
+        try(Socket socket = connect(state)) {
+            socket.setSoTimeout(readTimeout);
+            DaemonProtocol.write(socket.getOutputStream(), request);
+            InputStream is = socket.getInputStream();
+            while(true) {
+                Properties message = DaemonProtocol.read(is);
+                String result = message.getProperty(DaemonProtocol.RESULT);
+                if(result!=null) return "error".equals(result);
+                relay(message);
+            }
+        } catch(SocketTimeoutException ex) {
+            log.warn(LOG_PREFIX+"compile daemon has not answered for "+readTimeout+" ms, stylesheets are compiled in this JVM");
+            // the daemon stops once its request is over, next build starts another one
+            stateFile.delete();
+            return null;
+        } catch(IOException ex) {
+            log.debug(LOG_PREFIX+"compile daemon is not available: "+ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Starts a daemon, if there is none with the same key. Does not wait for
+     * it to be started.
+     */
+    public void start() {
+        Properties state = readState();
+        if(state!=null && startup.getProperty(DaemonProtocol.KEY).equals(state.getProperty(DaemonProtocol.KEY))) return;
+        File dir = stateFile.getParentFile();
+        dir.mkdirs();
+        File startupFile = new File(dir, stateFile.getName()+".startup");
+        try {
+            try(OutputStream os = new FileOutputStream(startupFile)) {
+                startup.store(os, "xslCompiler-maven-plugin compile daemon startup");
+            }
+            String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath();
+            ProcessBuilder pb = new ProcessBuilder(java, "-cp", String.join(File.pathSeparator, classpath),
+                    CompileDaemon.class.getName(), stateFile.getAbsolutePath(), startupFile.getAbsolutePath());
+            File logFile = new File(dir, stateFile.getName()+".log");
+            pb.redirectErrorStream(true);
+            pb.redirectOutput(logFile);
+            pb.start();
+            log.info(LOG_PREFIX+"compile daemon is starting, it will be used by next builds. Its log is "+logFile.getAbsolutePath());
+        } catch(IOException ex) {
+            log.warn(LOG_PREFIX+"unable to start compile daemon: "+ex.getMessage());
+        }
+    }
+
+    private void relay(final Properties message) {
+        String content = message.getProperty(DaemonProtocol.MESSAGE, "");
+        String error = message.getProperty(DaemonProtocol.ERROR);
+        if(error!=null) content = content.isEmpty() ? error : content+"\n"+error;
+        switch(message.getProperty(DaemonProtocol.LEVEL, "info")) {
+            case "debug": log.debug(content); break;
+            case "warn": log.warn(content); break;
+            case "error": log.error(content); break;
+            default: log.info(content);
+        }
+    }
+
+    private void shutdown(final Properties state) {
+        Properties request = new Properties();
+        request.setProperty(DaemonProtocol.TOKEN, state.getProperty(DaemonProtocol.TOKEN, ""));
+        request.setProperty(DaemonProtocol.COMMAND, DaemonProtocol.COMMAND_SHUTDOWN);
+        try(Socket socket = connect(state)) {
+            DaemonProtocol.write(socket.getOutputStream(), request);
+            DaemonProtocol.read(socket.getInputStream());
+        } catch(IOException ex) {
+            log.debug(LOG_PREFIX+"unable to stop compile daemon: "+ex.getMessage());
+        }
+        stateFile.delete();
+    }
+
+    private Socket connect(final Properties state) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(state.getProperty(DaemonProtocol.PORT, "0"))), CONNECT_TIMEOUT);
+        } catch(IOException | RuntimeException ex) {
+            socket.close();
+            throw ex instanceof IOException ? (IOException)ex : new IOException(ex);
+        }
+        return socket;
+    }
+
+    private Properties readState() {
+        if(!stateFile.isFile()) return null;
+        Properties state = new Properties();
+        try(InputStream is = new FileInputStream(stateFile)) {
+            state.load(is);
+            return state;
+        } catch(IOException ex) {
+            return null;
+        }
+    }
+
+    private static String computeKey(final Properties startup) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for(String name: new TreeSet<>(startup.stringPropertyNames())) {
+            // the daemon stops by itself, it is not a reason to restart it
+            if(DaemonProtocol.IDLE_TIMEOUT.equals(name) || DaemonProtocol.KEY.equals(name)) continue;
+            hasher.putString(name, StandardCharsets.UTF_8).putString("=", StandardCharsets.UTF_8);
+            hasher.putString(startup.getProperty(name), StandardCharsets.UTF_8).putString("\n", StandardCharsets.UTF_8);
+        }
+        return hasher.hash().toString();
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.daemon;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import org.apache.maven.plugin.logging.Log;
+import top.marchand.maven.saxon.utils.SaxonOptions;
+import top.marchand.xml.maven.plugin.xsl.CompilationUnit;
+import top.marchand.xml.maven.plugin.xsl.CompilerEngine;
+import top.marchand.xml.maven.plugin.xsl.extensions.ExtensionFunctions;
+
+/**
+ * The compiler the daemon keeps between builds. Saxon configuration,
+ * extension functions and parsed modules are kept ; manifest and units
+ * come with each request.
+ * Extension functions jars are on the daemon classpath, so they are found
+ * without looking at project dependencies.
+ * @author cmarchand
+ */
+class DaemonCompiler extends CompilerEngine {
+    private static final String LOG_PREFIX = "[DaemonCompiler] ";
+    private final List<URL> extensionJars;
+
+    DaemonCompiler(final File catalog, final boolean catalogIndexed, final SaxonOptions saxonOptions, final List<URL> extensionJars, final int moduleCacheSize) {
+        super();
+        setCatalogFile(catalog);
+        setCatalogIndexed(catalogIndexed);
+        setSaxonOptions(saxonOptions);
+        setModuleCacheSize(moduleCacheSize);
+        this.extensionJars = extensionJars;
+    }
+
+    /**
+     * Compiles {@code units}, writes the report to {@code reportFile}, and sends log to {@code log}
+     * @return {@code true} if at least one unit failed to compile
+     */
+    boolean compile(final List<CompilationUnit> units, final int threads, final File manifestFile, final boolean sefCompressed, final File reportFile, final int reportSlowest, final Log log) {
+        setLog(log);
+        setManifestFile(manifestFile);
+        setSefCompressed(sefCompressed);
+        setReportFile(reportFile);
+        setReportSlowest(reportSlowest);
+        resetBuildState();
+        return compileUnits(units, threads);
+    }
+
+    @Override
+    protected ExtensionFunctions loadExtensionFunctions(final Processor proc) {
+        ClassLoader classLoader = getClass().getClassLoader();
+        try {
+            List<String> classes = ExtensionFunctions.readServiceDescriptors(proc, classLoader, getLog());
+            ExtensionFunctions.register(proc.getUnderlyingConfiguration(), classLoader, classes, getLog());
+            return new ExtensionFunctions(extensionJars, null, classes);
+        } catch(IOException | SaxonApiException ex) {
+            getLog().error(LOG_PREFIX+"while loading extension functions", ex);
+            return ExtensionFunctions.NONE;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.daemon;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import top.marchand.xml.maven.plugin.xsl.CompilationUnit;
+
+/**
+ * What the plugin and the compile daemon exchange. Each message is a
+ * {@link Properties}, sent as its length followed by its stored form.
+ * <p>A compile request contains the units to compile and the build
+ * parameters ; the daemon answers with log messages, and then with the
+ * result.</p>
+ * @author cmarchand
+ */
+public final class DaemonProtocol {
+    static final String TOKEN = "token";
+    static final String COMMAND = "command";
+    static final String COMMAND_COMPILE = "compile";
+    static final String COMMAND_SHUTDOWN = "shutdown";
+    static final String THREADS = "threads";
+    static final String MANIFEST = "manifest";
+    static final String SEF_COMPRESSED = "sef-compressed";
+    static final String REPORT_FILE = "report-file";
+    static final String REPORT_SLOWEST = "report-slowest";
+    static final String MODULE_CACHE_SIZE = "module-cache-size";
+    static final String DEBUG = "debug";
+    static final String KEY = "key";
+    static final String PORT = "port";
+    static final String CATALOG = "catalog";
+    static final String CATALOG_HASH = "catalog-hash";
+    static final String CATALOG_INDEXED = "catalog-indexed";
+    static final String CLASSPATH = "classpath";
+    static final String CLASSPATH_KEY = "classpath-key";
+    static final String EXTENSION_JARS = "extension-jars";
+    static final String IDLE_TIMEOUT = "idle-timeout";
+    static final String LEVEL = "level";
+    static final String MESSAGE = "message";
+    static final String ERROR = "error";
+    static final String RESULT = "result";
+    private static final String OPTION = "option.";
+    private static final String NULL_OPTION = "option-null.";
+    private static final String UNITS = "units";
+    private static final int MAX_MESSAGE_SIZE = 64*1024*1024;
+
+    private DaemonProtocol() {
+        super();
+    }
+
+    static void write(final OutputStream os, final Properties message) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        message.store(baos, null);
+        DataOutputStream dos = new DataOutputStream(os);
+        dos.writeInt(baos.size());
+        baos.writeTo(dos);
+        dos.flush();
+    }
+
+    static Properties read(final InputStream is) throws IOException {
+        DataInputStream dis = new DataInputStream(is);
+        int size = dis.readInt();
+        if(size<0 || size>MAX_MESSAGE_SIZE) throw new IOException("Invalid message size: "+size);
+        byte[] buffer = new byte[size];
+        dis.readFully(buffer);
+        Properties ret = new Properties();
+        ret.load(new ByteArrayInputStream(buffer));
+        return ret;
+    }
+
+    static void writeUnits(final Properties message, final List<CompilationUnit> units) {
+        message.setProperty(UNITS, Integer.toString(units.size()));
+        for(int i=0; i<units.size(); i++) {
+            CompilationUnit unit = units.get(i);
+            String prefix = "unit."+i+".";
+            if(unit.getSourceFile()!=null) {
+                message.setProperty(prefix+"source", unit.getSourceFile().getAbsolutePath());
+                message.setProperty(prefix+"name", unit.getName());
+            } else {
+                message.setProperty(prefix+"uri", unit.getUri());
+            }
+            message.setProperty(prefix+"target", unit.getTargetFile().getAbsolutePath());
+        }
+    }
+
+    static List<CompilationUnit> readUnits(final Properties message) {
+        int count = Integer.parseInt(message.getProperty(UNITS, "0"));
+        List<CompilationUnit> ret = new ArrayList<>(count);
+        for(int i=0; i<count; i++) {
+            String prefix = "unit."+i+".";
+            File target = new File(message.getProperty(prefix+"target"));
+            String source = message.getProperty(prefix+"source");
+            if(source!=null) {
+                ret.add(CompilationUnit.fromFile(new File(source), target, message.getProperty(prefix+"name")));
+            } else {
+                ret.add(CompilationUnit.fromUri(message.getProperty(prefix+"uri"), target));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the names of the fields of {@code options} that can not be
+     * transmitted to the daemon : the ones that are not null, and whose type
+     * is not String, primitive, boxed primitive or enum. Options must not be
+     * sent if there is one : the daemon would compile with other options.
+     * @param options The options. May be {@code null}
+     * @return The fields names, empty if all options can be transmitted
+     */
+    public static List<String> getUntransmittableOptions(final Object options) {
+        List<String> ret = new ArrayList<>();
+        if(options==null) return ret;
+        for(Field field: getFields(options.getClass())) {
+            if(isTransmittable(field.getType())) continue;
+            try {
+                if(field.get(options)!=null) ret.add(field.getName());
+            } catch(IllegalAccessException | RuntimeException ex) {
+                ret.add(field.getName());
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Copies the fields of {@code options} to {@code message}. Null fields
+     * are sent as such, so that the daemon does not use default values.
+     * @throws IllegalArgumentException If a field can not be transmitted
+     * @see #getUntransmittableOptions(java.lang.Object)
+     */
+    static void writeOptions(final Properties message, final Object options) {
+        if(options==null) return;
+        List<String> untransmittable = getUntransmittableOptions(options);
+        if(!untransmittable.isEmpty()) throw new IllegalArgumentException("options can not be transmitted: "+untransmittable);
+        for(Field field: getFields(options.getClass())) {
+            try {
+                Object value = field.get(options);
+                if(value==null) {
+                    message.setProperty(NULL_OPTION+field.getName(), "true");
+                } else {
+                    message.setProperty(OPTION+field.getName(), value instanceof Enum ? ((Enum<?>)value).name() : value.toString());
+                }
+            } catch(IllegalAccessException ex) {
+                throw new IllegalArgumentException(field.getName()+" can not be read", ex);
+            }
+        }
+    }
+
+    /**
+     * Creates a {@code clazz} instance, with fields read from {@code message}.
+     * Returns {@code null} if no option has been sent.
+     */
+    static <T> T readOptions(final Properties message, final Class<T> clazz) throws ReflectiveOperationException {
+        if(message.stringPropertyNames().stream().noneMatch(name -> name.startsWith(OPTION) || name.startsWith(NULL_OPTION))) return null;
+        T ret = clazz.getConstructor().newInstance();
+        for(Field field: getFields(clazz)) {
+            if(message.getProperty(NULL_OPTION+field.getName())!=null) {
+                if(!field.getType().isPrimitive()) field.set(ret, null);
+                continue;
+            }
+            String value = message.getProperty(OPTION+field.getName());
+            if(value!=null && isTransmittable(field.getType())) field.set(ret, parse(field.getType(), value));
+        }
+        return ret;
+    }
+
+    private static boolean isTransmittable(final Class<?> type) {
+        return type==String.class || type.isPrimitive() || type.isEnum()
+                || type==Boolean.class || type==Character.class || type==Byte.class || type==Short.class
+                || type==Integer.class || type==Long.class || type==Float.class || type==Double.class;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object parse(final Class<?> type, final String value) {
+        if(type==String.class) return value;
+        if(type.isEnum()) return Enum.valueOf((Class<Enum>)type, value);
+        if(type==boolean.class || type==Boolean.class) return Boolean.valueOf(value);
+        if(type==char.class || type==Character.class) return value.charAt(0);
+        if(type==byte.class || type==Byte.class) return Byte.valueOf(value);
+        if(type==short.class || type==Short.class) return Short.valueOf(value);
+        if(type==int.class || type==Integer.class) return Integer.valueOf(value);
+        if(type==long.class || type==Long.class) return Long.valueOf(value);
+        if(type==float.class || type==Float.class) return Float.valueOf(value);
+        return Double.valueOf(value);
+    }
+
+    /**
+     * The instance fields of {@code clazz} and of its ancestors. Final fields
+     * are set by constructor, the daemon gets the same values.
+     */
+    private static List<Field> getFields(final Class<?> clazz) {
+        List<Field> ret = new ArrayList<>();
+        for(Class<?> c = clazz; c!=null && !c.equals(Object.class); c = c.getSuperclass()) {
+            for(Field field: c.getDeclaredFields()) {
+                if(Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers()) || field.isSynthetic()) continue;
+                field.setAccessible(true);
+                ret.add(field);
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.daemon;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Properties;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A {@link Log} that sends messages to the plugin, while the daemon compiles.
+ * Messages may be sent from several compilation threads.
+ * @author cmarchand
+ */
+class SocketLog implements Log {
+    private final OutputStream os;
+    private final boolean debug;
+    private boolean broken;
+
+    SocketLog(final OutputStream os, final boolean debug) {
+        super();
+        this.os = os;
+        this.debug = debug;
+    }
+
+    private synchronized void send(final String level, final CharSequence content, final Throwable error) {
+        if(broken) return;
+        Properties message = new Properties();
+        message.setProperty(DaemonProtocol.LEVEL, level);
+        if(content!=null) message.setProperty(DaemonProtocol.MESSAGE, content.toString());
+        if(error!=null) {
+            StringWriter sw = new StringWriter();
+            error.printStackTrace(new PrintWriter(sw));
+            message.setProperty(DaemonProtocol.ERROR, sw.toString());
+        }
+        try {
+            DaemonProtocol.write(os, message);
+        } catch(IOException ex) {
+            // plugin has gone, compilation goes on for the manifest
+            broken = true;
+        }
+    }
+
+    @Override
+    public boolean isDebugEnabled() { return debug; }
+    @Override
+    public void debug(CharSequence content) { if(debug) send("debug", content, null); }
+    @Override
+    public void debug(CharSequence content, Throwable error) { if(debug) send("debug", content, error); }
+    @Override
+    public void debug(Throwable error) { if(debug) send("debug", null, error); }
+    @Override
+    public boolean isInfoEnabled() { return true; }
+    @Override
+    public void info(CharSequence content) { send("info", content, null); }
+    @Override
+    public void info(CharSequence content, Throwable error) { send("info", content, error); }
+    @Override
+    public void info(Throwable error) { send("info", null, error); }
+    @Override
+    public boolean isWarnEnabled() { return true; }
+    @Override
+    public void warn(CharSequence content) { send("warn", content, null); }
+    @Override
+    public void warn(CharSequence content, Throwable error) { send("warn", content, error); }
+    @Override
+    public void warn(Throwable error) { send("warn", null, error); }
+    @Override
+    public boolean isErrorEnabled() { return true; }
+    @Override
+    public void error(CharSequence content) { send("error", content, null); }
+    @Override
+    public void error(CharSequence content, Throwable error) { send("error", content, error); }
+    @Override
+    public void error(Throwable error) { send("error", null, error); }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.deps;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the {@code xsl:import}, {@code xsl:include} and {@code xsl:use-package}
+ * declarations of a stylesheet module, with a StAX reader. No tree is built :
+ * only top-level elements are looked at, and their content is skipped.
+ * A simplified stylesheet (a literal result element as root) is not read
+ * further than its root element.
+ * @author cmarchand
+ */
+public class DeclarationScanner {
+    public static final String XSL_NS = "http://www.w3.org/1999/XSL/Transform";
+    private final XMLInputFactory factory;
+
+    public DeclarationScanner() {
+        super();
+        factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        // DTDs are not required to find declarations
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setXMLResolver((publicId, systemId, baseUri, namespace) -> new ByteArrayInputStream(new byte[0]));
+    }
+
+    /**
+     * Reads the declarations of a module
+     * @param is The module content. It is not closed.
+     * @param systemId The module system ID
+     * @return The declarations
+     * @throws XMLStreamException If module is not well-formed
+     */
+    public StylesheetDeclarations scan(final InputStream is, final String systemId) throws XMLStreamException {
+        XMLStreamReader reader = factory.createXMLStreamReader(systemId, is);
+        try {
+            String packageName = null;
+            String packageVersion = null;
+            List<String> imports = new ArrayList<>();
+            List<String> includes = new ArrayList<>();
+            List<String> usedPackages = new ArrayList<>();
+            int depth = 0;
+            while(reader.hasNext()) {
+                int event = reader.next();
+                if(event==XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    boolean isXsl = XSL_NS.equals(reader.getNamespaceURI());
+                    if(depth==1) {
+                        if(!isXsl) break;
+                        if("package".equals(reader.getLocalName())) {
+                            String name = reader.getAttributeValue(null, "name");
+                            packageName = name==null ? "" : name;
+                            String version = reader.getAttributeValue(null, "package-version");
+                            packageVersion = version==null ? "1" : version.trim();
+                        }
+                    } else if(depth==2 && isXsl) {
+                        switch(reader.getLocalName()) {
+                            case "import": addIfNotNull(imports, reader.getAttributeValue(null, "href")); break;
+                            case "include": addIfNotNull(includes, reader.getAttributeValue(null, "href")); break;
+                            case "use-package": addIfNotNull(usedPackages, reader.getAttributeValue(null, "name")); break;
+                            default:
+                        }
+                    }
+                } else if(event==XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                    if(depth==0) break;
+                }
+            }
+            return new StylesheetDeclarations(packageName, packageVersion, imports, includes, usedPackages);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the local name of the root element of a document. Nothing after
+     * the root element start tag is read.
+     * @param is The document content. It is not closed.
+     * @param systemId The document system ID
+     * @return The root element local name
+     * @throws XMLStreamException If document is not well-formed before its root element, or has no root element
+     */
+    public String readRootName(final InputStream is, final String systemId) throws XMLStreamException {
+        XMLStreamReader reader = factory.createXMLStreamReader(systemId, is);
+        try {
+            while(reader.hasNext()) {
+                if(reader.next()==XMLStreamConstants.START_ELEMENT) {
+                    return reader.getLocalName();
+                }
+            }
+            throw new XMLStreamException("no root element in "+systemId);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void addIfNotNull(final List<String> list, final String value) {
+        if(value!=null) list.add(value.trim());
+    }
+}
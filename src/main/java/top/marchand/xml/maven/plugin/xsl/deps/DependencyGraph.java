@@ -0,0 +1,434 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.deps;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.xml.stream.XMLStreamException;
+import top.marchand.xml.maven.plugin.xsl.incremental.PropertiesFiles;
+
+/**
+ * The graph of dependencies between stylesheet modules. A module depends on
+ * the modules it imports or includes, and on the packages it uses.
+ * Packages are found among the modules of the graph, by their name.
+ * <p>The graph is built from the root modules (the ones found in filesets),
+ * and can be stored to a file. When built again, declarations of modules that
+ * have not changed are read from the stored graph, without parsing them.</p>
+ * @author cmarchand
+ */
+public class DependencyGraph {
+    private static final String SEP = "\n";
+    // read while modules are added : a node is complete when it is put
+    private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+    private final Map<String, String> packages = new ConcurrentHashMap<>();
+    private DeclarationScanner scanner;
+
+    /**
+     * Builds the graph of all modules reachable from {@code roots}
+     * @param roots The system IDs of root modules
+     * @param resolver The resolver used for hrefs
+     * @param previous The graph of previous build. May be {@code null}
+     * @return The graph
+     */
+    public static DependencyGraph build(final Collection<String> roots, final HrefResolver resolver, final DependencyGraph previous) {
+        DependencyGraph graph = new DependencyGraph();
+        graph.add(roots, resolver, previous);
+        return graph;
+    }
+
+    /**
+     * Adds all modules reachable from {@code roots} that are not in this
+     * graph yet. Modules already in the graph are not read again, so that a
+     * graph can grow as roots are found. The graph may be read meanwhile :
+     * the modules reachable from a root are known once it has been added.
+     * @param roots The system IDs of root modules
+     * @param resolver The resolver used for hrefs
+     * @param previous The graph of previous build. May be {@code null}
+     */
+    public synchronized void add(final Collection<String> roots, final HrefResolver resolver, final DependencyGraph previous) {
+        if(scanner==null) scanner = new DeclarationScanner();
+        Deque<String> toVisit = new ArrayDeque<>(roots);
+        while(!toVisit.isEmpty()) {
+            String uri = toVisit.poll();
+            if(nodes.containsKey(uri)) continue;
+            Node node = readNode(uri, scanner, previous==null ? null : previous.nodes.get(uri));
+            if(node.declarations!=null) {
+                for(String href: node.declarations.getModuleHrefs()) {
+                    String resolved = resolver.resolve(href, uri);
+                    if(resolved!=null) {
+                        node.modules.add(resolved);
+                        toVisit.add(resolved);
+                    } else {
+                        node.unresolved = true;
+                    }
+                }
+            }
+            nodes.put(uri, node);
+            if(node.declarations!=null && node.declarations.isPackage()) {
+                packages.put(node.declarations.getPackageName(), node.uri);
+            }
+        }
+    }
+
+    private Node readNode(final String uri, final DeclarationScanner scanner, final Node previous) {
+        File f = toFile(uri);
+        long size = f==null ? -1 : f.length();
+        long lastModified = f==null ? -1 : f.lastModified();
+        if(previous!=null && f!=null && previous.declarations!=null && previous.size==size && previous.lastModified==lastModified) {
+            return new Node(uri, size, lastModified, previous.declarations);
+        }
+        StylesheetDeclarations declarations;
+        try(InputStream is = new URL(uri).openStream()) {
+            declarations = scanner.scan(is, uri);
+        } catch(IOException | XMLStreamException | IllegalArgumentException ex) {
+            declarations = null;
+        }
+        return new Node(uri, size, lastModified, declarations);
+    }
+
+    /**
+     * Returns {@code true} if {@code uri} is a module of this graph
+     * @param uri The module system ID
+     * @return {@code true} if module is known
+     */
+    public boolean contains(final String uri) {
+        return nodes.containsKey(uri);
+    }
+
+    /**
+     * Returns the number of modules in this graph
+     * @return The number of modules
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Returns {@code true} if {@code uri} is a {@code xsl:package}
+     * @param uri The module system ID
+     * @return {@code true} if module is a package
+     */
+    public boolean isPackage(final String uri) {
+        Node node = nodes.get(uri);
+        return node!=null && node.declarations!=null && node.declarations.isPackage();
+    }
+
+    /**
+     * Returns the name of the package {@code uri} declares
+     * @param uri The module system ID
+     * @return The package name, or {@code null} if module is not a package
+     */
+    public String getPackageName(final String uri) {
+        return isPackage(uri) ? nodes.get(uri).declarations.getPackageName() : null;
+    }
+
+    /**
+     * Returns the {@code package-version} of the package {@code uri} declares
+     * @param uri The module system ID
+     * @return The package version, or {@code null} if module is not a package
+     */
+    public String getPackageVersion(final String uri) {
+        return isPackage(uri) ? nodes.get(uri).declarations.getPackageVersion() : null;
+    }
+
+    /**
+     * Returns {@code true} if the dependencies of {@code uri} are fully known :
+     * the module, and all modules it depends on, have been read, and all hrefs
+     * and used packages have been resolved.
+     * @param uri The module system ID
+     * @return {@code true} if dependencies are known
+     */
+    public boolean isComplete(final String uri) {
+        for(String dep: getClosure(uri)) {
+            Node node = nodes.get(dep);
+            if(node==null || node.declarations==null || node.unresolved) return false;
+            for(String name: node.declarations.getUsedPackages()) {
+                if(!packages.containsKey(name)) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the modules that {@code uri} directly depends on : imported and
+     * included modules, and used packages that are in this graph.
+     * @param uri The module system ID
+     * @return The direct dependencies
+     */
+    public Set<String> getDependencies(final String uri) {
+        Node node = nodes.get(uri);
+        if(node==null) return Collections.emptySet();
+        Set<String> ret = new LinkedHashSet<>(node.modules);
+        if(node.declarations!=null) {
+            for(String name: node.declarations.getUsedPackages()) {
+                String packageUri = packages.get(name);
+                if(packageUri!=null) ret.add(packageUri);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns {@code uri} and all modules it depends on, directly or not.
+     * @param uri The module system ID
+     * @return The closure of {@code uri}
+     */
+    public Set<String> getClosure(final String uri) {
+        Set<String> ret = new LinkedHashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>();
+        toVisit.add(uri);
+        while(!toVisit.isEmpty()) {
+            String current = toVisit.poll();
+            if(ret.add(current)) {
+                toVisit.addAll(getDependencies(current));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the packages {@code uri} uses, directly or through the modules it
+     * imports or includes. Packages used by those packages are not returned.
+     * @param uri The module system ID
+     * @return The system IDs of used packages
+     */
+    public Set<String> getUsedPackages(final String uri) {
+        Set<String> ret = new LinkedHashSet<>();
+        Set<String> visited = new HashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>();
+        toVisit.add(uri);
+        while(!toVisit.isEmpty()) {
+            String current = toVisit.poll();
+            if(!visited.add(current)) continue;
+            Node node = nodes.get(current);
+            if(node==null) continue;
+            toVisit.addAll(node.modules);
+            if(node.declarations!=null) {
+                for(String name: node.declarations.getUsedPackages()) {
+                    String packageUri = packages.get(name);
+                    if(packageUri!=null && !packageUri.equals(uri)) ret.add(packageUri);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns {@code true} if {@code uri}, or a module it imports or includes,
+     * has a {@code xsl:use-package}, whether the package is in this graph or
+     * not. If one of these modules could not be read, {@code true} is returned.
+     * @param uri The module system ID
+     * @return {@code true} if a package may be used
+     */
+    public boolean mayUsePackages(final String uri) {
+        Set<String> visited = new HashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>();
+        toVisit.add(uri);
+        while(!toVisit.isEmpty()) {
+            String current = toVisit.poll();
+            if(!visited.add(current)) continue;
+            Node node = nodes.get(current);
+            if(node==null || node.declarations==null || node.unresolved) return true;
+            if(!node.declarations.getUsedPackages().isEmpty()) return true;
+            toVisit.addAll(node.modules);
+        }
+        return false;
+    }
+
+    /**
+     * Computes the compilation level of each of {@code uris}. A module that
+     * uses no package of {@code uris} is at level 0 ; a module that uses
+     * packages of {@code uris} is one level after the highest of them.
+     * All modules of a level may be compiled at the same time, once all
+     * packages of previous levels have been compiled.
+     * @param uris The system IDs of modules to compile. May contain {@code null}s, which are at level 0
+     * @return The level of each module, in the same order as {@code uris}
+     */
+    public int[] getPackageLevels(final List<String> uris) {
+        Map<String, Integer> levels = new HashMap<>();
+        Set<String> candidates = new HashSet<>(uris);
+        int[] ret = new int[uris.size()];
+        for(int i=0; i<ret.length; i++) {
+            String uri = uris.get(i);
+            ret[i] = uri==null ? 0 : computeLevel(uri, candidates, levels, new HashSet<>());
+        }
+        return ret;
+    }
+
+    private int computeLevel(final String uri, final Set<String> candidates, final Map<String, Integer> levels, final Set<String> visiting) {
+        Integer level = levels.get(uri);
+        if(level!=null) return level;
+        // a cycle between packages is an error Saxon will report
+        if(!visiting.add(uri)) return 0;
+        int ret = 0;
+        for(String packageUri: getUsedPackages(uri)) {
+            if(candidates.contains(packageUri)) {
+                ret = Math.max(ret, computeLevel(packageUri, candidates, levels, visiting)+1);
+            }
+        }
+        visiting.remove(uri);
+        levels.put(uri, ret);
+        return ret;
+    }
+
+    /**
+     * Returns all modules that depend, directly or not, on one of {@code uris}.
+     * {@code uris} are included.
+     * @param uris The modules system IDs
+     * @return The modules that depend on {@code uris}
+     */
+    public Set<String> getDependents(final Collection<String> uris) {
+        Map<String, List<String>> reverse = new HashMap<>();
+        for(String uri: nodes.keySet()) {
+            for(String dep: getDependencies(uri)) {
+                reverse.computeIfAbsent(dep, k -> new ArrayList<>()).add(uri);
+            }
+        }
+        Set<String> ret = new LinkedHashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>(uris);
+        while(!toVisit.isEmpty()) {
+            String current = toVisit.poll();
+            if(ret.add(current)) {
+                toVisit.addAll(reverse.getOrDefault(current, Collections.emptyList()));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Loads a graph previously saved. If file does not exists, or can not be
+     * read, an empty graph is returned.
+     * @param file The file where graph has been saved
+     * @return The loaded graph
+     */
+    public static DependencyGraph load(final File file) {
+        DependencyGraph graph = new DependencyGraph();
+        if(!file.isFile()) return graph;
+        Properties props = new Properties();
+        try(InputStream is = new FileInputStream(file)) {
+            props.load(is);
+            int count = Integer.parseInt(props.getProperty("nodes", "0"));
+            for(int i=0; i<count; i++) {
+                String prefix = "node."+i+".";
+                String uri = props.getProperty(prefix+"uri");
+                String packageName = props.getProperty(prefix+"package");
+                StylesheetDeclarations declarations = new StylesheetDeclarations(
+                        packageName,
+                        packageName==null ? null : props.getProperty(prefix+"package-version", "1"),
+                        split(props.getProperty(prefix+"imports")),
+                        split(props.getProperty(prefix+"includes")),
+                        split(props.getProperty(prefix+"use-packages")));
+                Node node = new Node(uri,
+                        Long.parseLong(props.getProperty(prefix+"size")),
+                        Long.parseLong(props.getProperty(prefix+"lastModified")),
+                        declarations);
+                node.modules.addAll(split(props.getProperty(prefix+"modules")));
+                graph.nodes.put(uri, node);
+                if(packageName!=null) graph.packages.put(packageName, uri);
+            }
+        } catch(IOException | RuntimeException ex) {
+            return new DependencyGraph();
+        }
+        return graph;
+    }
+
+    /**
+     * Saves this graph to {@code file}
+     * @param file The file to write to
+     * @throws IOException In case of failure
+     */
+    public void save(final File file) throws IOException {
+        Properties props = new Properties();
+        int i = 0;
+        for(Node node: nodes.values()) {
+            if(node.declarations==null) continue;
+            String prefix = "node."+i+".";
+            props.setProperty(prefix+"uri", node.uri);
+            props.setProperty(prefix+"size", Long.toString(node.size));
+            props.setProperty(prefix+"lastModified", Long.toString(node.lastModified));
+            if(node.declarations.isPackage()) {
+                props.setProperty(prefix+"package", node.declarations.getPackageName());
+                props.setProperty(prefix+"package-version", node.declarations.getPackageVersion());
+            }
+            props.setProperty(prefix+"imports", String.join(SEP, node.declarations.getImports()));
+            props.setProperty(prefix+"includes", String.join(SEP, node.declarations.getIncludes()));
+            props.setProperty(prefix+"use-packages", String.join(SEP, node.declarations.getUsedPackages()));
+            props.setProperty(prefix+"modules", String.join(SEP, node.modules));
+            i++;
+        }
+        props.setProperty("nodes", Integer.toString(i));
+        PropertiesFiles.store(props, file, "xslCompiler-maven-plugin dependency graph");
+    }
+
+    private static List<String> split(final String value) {
+        if(value==null || value.isEmpty()) return Collections.emptyList();
+        return Arrays.asList(value.split(SEP));
+    }
+
+    private static File toFile(final String uri) {
+        if(!uri.startsWith("file:")) return null;
+        try {
+            return new File(new URI(uri));
+        } catch(URISyntaxException | IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    private static class Node {
+        private final String uri;
+        private final long size;
+        private final long lastModified;
+        private final StylesheetDeclarations declarations;
+        private final Set<String> modules = new LinkedHashSet<>();
+        private boolean unresolved;
+        Node(final String uri, final long size, final long lastModified, final StylesheetDeclarations declarations) {
+            this.uri = uri;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.declarations = declarations;
+        }
+    }
+}
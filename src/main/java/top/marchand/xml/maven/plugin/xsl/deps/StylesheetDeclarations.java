@@ -0,0 +1,111 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.deps;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The declarations of a stylesheet module that link it to other modules :
+ * {@code xsl:import}, {@code xsl:include} and {@code xsl:use-package}.
+ * Hrefs are kept as written in the module, they are resolved when the
+ * {@link DependencyGraph} is built.
+ * @author cmarchand
+ */
+public class StylesheetDeclarations {
+    private final String packageName;
+    private final String packageVersion;
+    private final List<String> imports;
+    private final List<String> includes;
+    private final List<String> usedPackages;
+
+    /**
+     * Creates the declarations of a module
+     * @param packageName The name of the package, if the module is a {@code xsl:package}, {@code null} otherwise
+     * @param packageVersion The {@code package-version} of the package, {@code null} if the module is not a package
+     * @param imports The hrefs of {@code xsl:import}
+     * @param includes The hrefs of {@code xsl:include}
+     * @param usedPackages The names of packages used with {@code xsl:use-package}
+     */
+    public StylesheetDeclarations(final String packageName, final String packageVersion, final List<String> imports, final List<String> includes, final List<String> usedPackages) {
+        super();
+        this.packageName = packageName;
+        this.packageVersion = packageVersion;
+        this.imports = Collections.unmodifiableList(new ArrayList<>(imports));
+        this.includes = Collections.unmodifiableList(new ArrayList<>(includes));
+        this.usedPackages = Collections.unmodifiableList(new ArrayList<>(usedPackages));
+    }
+
+    /**
+     * Returns {@code true} if module is a {@code xsl:package}
+     * @return {@code true} if module is a package
+     */
+    public boolean isPackage() {
+        return packageName!=null;
+    }
+
+    /**
+     * The name of the package. An unnamed package has an empty name.
+     * @return The package name, or {@code null} if module is not a package
+     */
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /**
+     * The version of the package, as declared. It is {@code 1} if the
+     * package does not declare its version.
+     * @return The package version, or {@code null} if module is not a package
+     */
+    public String getPackageVersion() {
+        return packageVersion;
+    }
+
+    public List<String> getImports() {
+        return imports;
+    }
+
+    public List<String> getIncludes() {
+        return includes;
+    }
+
+    public List<String> getUsedPackages() {
+        return usedPackages;
+    }
+
+    /**
+     * Returns imports and includes hrefs
+     * @return All modules hrefs
+     */
+    public List<String> getModuleHrefs() {
+        List<String> ret = new ArrayList<>(imports.size()+includes.size());
+        ret.addAll(imports);
+        ret.addAll(includes);
+        return ret;
+    }
+}
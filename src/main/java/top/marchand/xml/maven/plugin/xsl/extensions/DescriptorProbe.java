@@ -0,0 +1,137 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.extensions;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipFile;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Looks for the extension functions descriptor in dependency jars.
+ * <p>Only the central directory of each jar is read, through
+ * {@link ZipFile} ; no class loader is created. Jars are probed in parallel,
+ * and jars whose result is known from a previous discovery are not opened.</p>
+ * @author cmarchand
+ */
+public class DescriptorProbe {
+    /**
+     * The entry that declares extension functions
+     */
+    public static final String DESCRIPTOR = "META-INF/services/top.marchand.xml.gaulois.xml";
+    private static final String LOG_PREFIX = "[DescriptorProbe] ";
+    private final ExtensionDiscovery previous;
+    private final ExtensionDiscovery discovery;
+    private final Log log;
+
+    /**
+     * Creates a probe
+     * @param previous The previous discovery, to reuse known results from
+     * @param discovery The discovery to record results into
+     * @param log The log to use
+     */
+    public DescriptorProbe(final ExtensionDiscovery previous, final ExtensionDiscovery discovery, final Log log) {
+        super();
+        this.previous = previous;
+        this.discovery = discovery;
+        this.log = log;
+    }
+
+    /**
+     * Returns {@code true} if {@code jar} contains a descriptor
+     * @param jar The jar file
+     * @return {@code true} if jar contains {@link #DESCRIPTOR}
+     * @throws IOException If jar can not be read
+     */
+    public static boolean hasDescriptor(final File jar) throws IOException {
+        try(ZipFile zip = new ZipFile(jar)) {
+            return zip.getEntry(DESCRIPTOR)!=null;
+        }
+    }
+
+    /**
+     * Probes all {@code jars}.
+     * @param jars The jars to probe
+     * @param threads The maximum number of jars probed at the same time
+     * @return The jars that contain a descriptor, in {@code jars} order
+     */
+    public Set<File> probe(final Collection<File> jars, final int threads) {
+        List<File> toProbe = new ArrayList<>();
+        Set<File> ret = new LinkedHashSet<>();
+        for(File jar: jars) {
+            Boolean known = previous.hasDescriptor(jar);
+            if(known==null) {
+                toProbe.add(jar);
+            } else {
+                discovery.recordProbe(jar, known);
+                if(known) ret.add(jar);
+            }
+        }
+        if(toProbe.isEmpty()) return filter(jars, ret);
+        log.debug(LOG_PREFIX+toProbe.size()+" jars to probe, "+(jars.size()-toProbe.size())+" known");
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, toProbe.size())));
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>(toProbe.size());
+            for(final File jar: toProbe) {
+                futures.add(executor.submit(() -> hasDescriptor(jar)));
+            }
+            for(int i=0; i<toProbe.size(); i++) {
+                File jar = toProbe.get(i);
+                try {
+                    boolean found = futures.get(i).get();
+                    discovery.recordProbe(jar, found);
+                    if(found) ret.add(jar);
+                } catch(ExecutionException ex) {
+                    log.warn(LOG_PREFIX+"unable to read "+jar.getAbsolutePath(), ex.getCause());
+                } catch(InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return filter(jars, ret);
+    }
+
+    private static Set<File> filter(final Collection<File> jars, final Set<File> found) {
+        Set<File> ret = new LinkedHashSet<>();
+        for(File jar: jars) {
+            if(found.contains(jar)) ret.add(jar);
+        }
+        return ret;
+    }
+}
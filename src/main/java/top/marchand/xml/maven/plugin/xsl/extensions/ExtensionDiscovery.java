@@ -0,0 +1,209 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.extensions;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import top.marchand.xml.maven.plugin.xsl.incremental.PropertiesFiles;
+
+/**
+ * The result of extension functions discovery : which jars contain a
+ * {@code META-INF/services/top.marchand.xml.gaulois.xml} descriptor, which
+ * jars have been added to Saxon classpath, and which extension function
+ * classes have been found.
+ * <p>It is stored in {@code target/}, so that next builds can register
+ * extension functions without looking into all dependencies. The whole result
+ * is reused if compile classpath has not changed ; otherwise, jars that have
+ * the same path, size and last modification date are not opened again.</p>
+ * @author cmarchand
+ */
+public class ExtensionDiscovery {
+    private static final String SEP = "\n";
+    private final String classpathKey;
+    private final Map<String, JarProbe> probes = new ConcurrentHashMap<>();
+    private List<String> addedJars = Collections.emptyList();
+    private List<String> functionClasses = Collections.emptyList();
+
+    /**
+     * Creates an empty discovery
+     * @param classpathKey The key of classpath discovery is made on
+     * @see #computeClasspathKey(java.util.List)
+     */
+    public ExtensionDiscovery(final String classpathKey) {
+        super();
+        this.classpathKey = classpathKey;
+    }
+
+    /**
+     * Computes the key of a classpath, from the path, size and last
+     * modification date of each of its elements.
+     * @param classpath The classpath elements
+     * @return The classpath key
+     */
+    public static String computeClasspathKey(final List<String> classpath) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for(String element: classpath) {
+            File f = new File(element);
+            hasher.putString(element, StandardCharsets.UTF_8).putLong(f.length()).putLong(f.lastModified());
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Returns {@code true} if this discovery has been made on a classpath
+     * with this key, and can be used as is.
+     * @param key The current classpath key
+     * @return {@code true} if discovery is up to date
+     */
+    public boolean isUpToDate(final String key) {
+        return classpathKey!=null && classpathKey.equals(key);
+    }
+
+    /**
+     * Returns the probe result of a previous discovery for {@code jar}, if
+     * the jar has not changed since.
+     * @param jar The jar file
+     * @return {@code true} or {@code false} if the jar contains a descriptor, {@code null} if it is unknown
+     */
+    public Boolean hasDescriptor(final File jar) {
+        JarProbe probe = probes.get(jar.getAbsolutePath());
+        if(probe==null || probe.size!=jar.length() || probe.lastModified!=jar.lastModified()) return null;
+        return probe.hasDescriptor;
+    }
+
+    /**
+     * Records if {@code jar} contains a descriptor
+     * @param jar The jar file
+     * @param hasDescriptor {@code true} if jar contains a descriptor
+     */
+    public void recordProbe(final File jar, final boolean hasDescriptor) {
+        probes.put(jar.getAbsolutePath(), new JarProbe(jar.length(), jar.lastModified(), hasDescriptor));
+    }
+
+    /**
+     * The URLs of jars that have been added to Saxon classpath
+     * @return The jars URLs
+     */
+    public List<String> getAddedJars() {
+        return addedJars;
+    }
+
+    public void setAddedJars(final List<String> addedJars) {
+        this.addedJars = new ArrayList<>(addedJars);
+    }
+
+    /**
+     * The names of extension functions classes declared in descriptors
+     * @return The classes names
+     */
+    public List<String> getFunctionClasses() {
+        return functionClasses;
+    }
+
+    public void setFunctionClasses(final List<String> functionClasses) {
+        this.functionClasses = new ArrayList<>(functionClasses);
+    }
+
+    /**
+     * Loads a discovery previously saved. If {@code file} does not exist, or
+     * can not be read, an empty discovery is returned.
+     * @param file The file where discovery has been saved. May be {@code null}
+     * @return The discovery
+     */
+    public static ExtensionDiscovery load(final File file) {
+        if(file==null || !file.isFile()) return new ExtensionDiscovery(null);
+        Properties props = new Properties();
+        try(InputStream is = new FileInputStream(file)) {
+            props.load(is);
+            ExtensionDiscovery ret = new ExtensionDiscovery(props.getProperty("classpath"));
+            ret.addedJars = split(props.getProperty("added-jars"));
+            ret.functionClasses = split(props.getProperty("function-classes"));
+            int count = Integer.parseInt(props.getProperty("jars", "0"));
+            for(int i=0; i<count; i++) {
+                String prefix = "jar."+i+".";
+                ret.probes.put(props.getProperty(prefix+"path"), new JarProbe(
+                        Long.parseLong(props.getProperty(prefix+"size")),
+                        Long.parseLong(props.getProperty(prefix+"lastModified")),
+                        Boolean.parseBoolean(props.getProperty(prefix+"descriptor"))));
+            }
+            return ret;
+        } catch(IOException | RuntimeException ex) {
+            return new ExtensionDiscovery(null);
+        }
+    }
+
+    /**
+     * Saves this discovery to {@code file}
+     * @param file The file to write to
+     * @throws IOException In case of failure
+     */
+    public void save(final File file) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("classpath", classpathKey);
+        props.setProperty("added-jars", String.join(SEP, addedJars));
+        props.setProperty("function-classes", String.join(SEP, functionClasses));
+        int i = 0;
+        for(Map.Entry<String, JarProbe> me: probes.entrySet()) {
+            String prefix = "jar."+i+".";
+            props.setProperty(prefix+"path", me.getKey());
+            props.setProperty(prefix+"size", Long.toString(me.getValue().size));
+            props.setProperty(prefix+"lastModified", Long.toString(me.getValue().lastModified));
+            props.setProperty(prefix+"descriptor", Boolean.toString(me.getValue().hasDescriptor));
+            i++;
+        }
+        props.setProperty("jars", Integer.toString(i));
+        PropertiesFiles.store(props, file, "xslCompiler-maven-plugin extension functions");
+    }
+
+    private static List<String> split(final String value) {
+        if(value==null || value.isEmpty()) return new ArrayList<>();
+        return new ArrayList<>(Arrays.asList(value.split(SEP)));
+    }
+
+    private static class JarProbe {
+        private final long size;
+        private final long lastModified;
+        private final boolean hasDescriptor;
+        JarProbe(final long size, final long lastModified, final boolean hasDescriptor) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hasDescriptor = hasDescriptor;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.extensions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import javax.xml.transform.stream.StreamSource;
+import net.sf.saxon.Configuration;
+import net.sf.saxon.lib.ExtensionFunctionDefinition;
+import net.sf.saxon.s9api.DocumentBuilder;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XPathExecutable;
+import net.sf.saxon.s9api.XPathSelector;
+import net.sf.saxon.s9api.XdmItem;
+import net.sf.saxon.s9api.XdmNode;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * The extension functions loaded in a Processor : the jars they come from,
+ * the class loader created for them, and their classes.
+ * @author cmarchand
+ */
+public class ExtensionFunctions {
+    /**
+     * No extension function
+     */
+    public static final ExtensionFunctions NONE = new ExtensionFunctions(Collections.<URL>emptyList(), null, Collections.<String>emptyList());
+    private static final String LOG_PREFIX = "[ExtensionFunctions] ";
+    private final List<URL> jars;
+    private final URLClassLoader classLoader;
+    private final List<String> functionClasses;
+
+    /**
+     * Creates the description of loaded functions
+     * @param jars The jars extension functions come from
+     * @param classLoader The class loader created for them. May be {@code null}
+     * @param functionClasses The extension functions classes
+     */
+    public ExtensionFunctions(final List<URL> jars, final URLClassLoader classLoader, final List<String> functionClasses) {
+        super();
+        this.jars = Collections.unmodifiableList(new ArrayList<>(jars));
+        this.classLoader = classLoader;
+        this.functionClasses = Collections.unmodifiableList(new ArrayList<>(functionClasses));
+    }
+
+    public List<URL> getJars() {
+        return jars;
+    }
+
+    /**
+     * The class loader created for extension jars
+     * @return The class loader, or {@code null}
+     */
+    public URLClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    public List<String> getFunctionClasses() {
+        return functionClasses;
+    }
+
+    /**
+     * Reads all extension functions descriptors visible from {@code classLoader},
+     * and from its parents.
+     * @param proc The processor to read descriptors with
+     * @param classLoader The class loader to look for descriptors in
+     * @param log The log to use
+     * @return The declared classes names
+     * @throws IOException If a descriptor can not be read
+     * @throws SaxonApiException If a descriptor can not be parsed
+     */
+    public static List<String> readServiceDescriptors(final Processor proc, final ClassLoader classLoader, final Log log) throws IOException, SaxonApiException {
+        XPathExecutable xpExec = proc.newXPathCompiler().compile("/gaulois-services/saxon/extensions/function");
+        DocumentBuilder builder = proc.newDocumentBuilder();
+        List<String> ret = new ArrayList<>();
+        for(Enumeration<URL> enumer = classLoader.getResources(DescriptorProbe.DESCRIPTOR); enumer.hasMoreElements();) {
+            URL serviceUrl = enumer.nextElement();
+            log.debug(LOG_PREFIX+"loading service "+serviceUrl.toExternalForm());
+            XdmNode document;
+            try(InputStream is = serviceUrl.openStream()) {
+                document = builder.build(new StreamSource(is));
+            }
+            XPathSelector selector = xpExec.load();
+            selector.setContextItem(document);
+            for (XdmItem xdmItem : selector.evaluate()) {
+                ret.add(xdmItem.getStringValue());
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Registers extension functions in Saxon configuration
+     * @param config The configuration to register functions in
+     * @param classLoader The class loader to load functions from
+     * @param functionClasses The functions classes names
+     * @param log The log to use
+     */
+    public static void register(final Configuration config, final ClassLoader classLoader, final List<String> functionClasses, final Log log) {
+        for (String className : functionClasses) {
+            try {
+                Class<?> clazz = classLoader.loadClass(className);
+                if (ExtensionFunctionDefinition.class.isAssignableFrom(clazz)) {
+                    Constructor<? extends ExtensionFunctionDefinition> constructor = clazz.asSubclass(ExtensionFunctionDefinition.class).getConstructor();
+                    config.registerExtensionFunction(constructor.newInstance());
+                    log.debug(LOG_PREFIX + className + " registered as Saxon extension function");
+                } else {
+                    log.warn(LOG_PREFIX + className + " does not extends " + ExtensionFunctionDefinition.class.getName());
+                }
+            } catch (ClassNotFoundException | InstantiationException | IllegalAccessException |
+                     NoSuchMethodException | InvocationTargetException ex) {
+                log.warn(LOG_PREFIX + "unable to load extension function " + className);
+            }
+        }
+    }
+}
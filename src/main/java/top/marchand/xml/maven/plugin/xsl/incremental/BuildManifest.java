@@ -0,0 +1,349 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.incremental;
+
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The manifest of a previous build. It holds, for each generated file, the
+ * inputs it has been compiled from (the source and its import/include closure),
+ * with their hash, and a key for the configuration used (Saxon version and
+ * options, catalog, extension jars).
+ * A generated file is up to date if the configuration key is the same, if it
+ * still exists, and if none of its inputs has changed.
+ * The hashes of the files the configuration key is computed from are kept
+ * whatever the configuration, so that they are not computed again while
+ * these files do not change.
+ * @author cmarchand
+ */
+public class BuildManifest {
+    private static final String CONFIGURATION_KEY = "configuration";
+    private static final String PACKAGE_SUFFIX = ".package";
+    private static final String INPUTS_SUFFIX = ".inputs";
+    private static final String CONFIGURATION_INPUTS = "configuration.inputs";
+
+    private final File file;
+    private String configurationKey;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // hashes computed during this build, an input is usually shared by many units
+    private final Map<String, Input> currentInputs = new ConcurrentHashMap<>();
+    // configuration files, as recorded by previous build and as used by this one
+    private final Map<String, Input> previousConfigurationInputs = new ConcurrentHashMap<>();
+    private final Map<String, Input> configurationInputs = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an empty manifest
+     * @param file The file where this manifest is stored
+     * @param configurationKey The key of current configuration
+     */
+    public BuildManifest(final File file, final String configurationKey) {
+        super();
+        this.file = file;
+        this.configurationKey = configurationKey;
+    }
+
+    /**
+     * Loads the manifest stored in {@code file}. If the file does not exist,
+     * or if it has been written with another configuration, an empty manifest
+     * is returned.
+     * @param file The file where manifest is stored
+     * @param configurationKey The key of current configuration
+     * @return The manifest
+     * @throws IOException If file can not be read
+     */
+    public static BuildManifest load(final File file, final String configurationKey) throws IOException {
+        BuildManifest manifest = load(file);
+        manifest.setConfigurationKey(configurationKey);
+        return manifest;
+    }
+
+    /**
+     * Loads the manifest stored in {@code file}, before the current
+     * configuration key is known. {@link #getConfigurationHash(java.lang.String)}
+     * can be used to compute it, and {@link #setConfigurationKey(java.lang.String)}
+     * must then be called. If the file does not exist, an empty manifest is returned.
+     * @param file The file where manifest is stored
+     * @return The manifest
+     * @throws IOException If file can not be read
+     */
+    public static BuildManifest load(final File file) throws IOException {
+        BuildManifest manifest = new BuildManifest(file, null);
+        if(!file.isFile()) return manifest;
+        Properties props = new Properties();
+        try(InputStream is = new FileInputStream(file)) {
+            props.load(is);
+        }
+        manifest.configurationKey = props.getProperty(CONFIGURATION_KEY);
+        int configurationCount = Integer.parseInt(props.getProperty(CONFIGURATION_INPUTS, "0"));
+        for(int i=0; i<configurationCount; i++) {
+            Input input = Input.parse(props.getProperty(CONFIGURATION_KEY+"."+i));
+            manifest.previousConfigurationInputs.put(input.uri, input);
+        }
+        for(String key: props.stringPropertyNames()) {
+            if(!key.endsWith(INPUTS_SUFFIX) || key.equals(CONFIGURATION_INPUTS)) continue;
+            String target = key.substring(0, key.length()-INPUTS_SUFFIX.length());
+            int count = Integer.parseInt(props.getProperty(key));
+            List<Input> inputs = new ArrayList<>(count);
+            for(int i=0; i<count; i++) {
+                inputs.add(Input.parse(props.getProperty(target+"."+i)));
+            }
+            manifest.entries.put(target, new Entry(inputs, Boolean.parseBoolean(props.getProperty(target+PACKAGE_SUFFIX))));
+        }
+        return manifest;
+    }
+
+    /**
+     * Sets the key of current configuration. If it is not the one this
+     * manifest has been written with, all entries are forgotten.
+     * @param configurationKey The key of current configuration
+     */
+    public void setConfigurationKey(final String configurationKey) {
+        if(!configurationKey.equals(this.configurationKey)) entries.clear();
+        this.configurationKey = configurationKey;
+    }
+
+    /**
+     * Returns the hash of a file the configuration key is computed from. If it
+     * has the same size and last modification date as in previous build, its
+     * hash is not computed again.
+     * @param uri The file URI
+     * @return The hex representation of its hash
+     * @throws IOException If file can not be read
+     */
+    public String getConfigurationHash(final String uri) throws IOException {
+        Input input = configurationInputs.get(uri);
+        if(input==null) {
+            input = getCurrentInput(uri, previousConfigurationInputs.get(uri));
+            if(input==null) throw new IOException("Unable to read "+uri);
+            configurationInputs.put(uri, input);
+        }
+        return input.hash;
+    }
+
+    /**
+     * Writes this manifest to its file.
+     * @throws IOException In case of failure
+     */
+    public void save() throws IOException {
+        Properties props = new Properties();
+        props.setProperty(CONFIGURATION_KEY, configurationKey);
+        List<Input> configuration = new ArrayList<>(configurationInputs.values());
+        props.setProperty(CONFIGURATION_INPUTS, Integer.toString(configuration.size()));
+        for(int i=0; i<configuration.size(); i++) {
+            props.setProperty(CONFIGURATION_KEY+"."+i, configuration.get(i).toString());
+        }
+        for(Map.Entry<String,Entry> me: entries.entrySet()) {
+            String target = me.getKey();
+            List<Input> inputs = me.getValue().inputs;
+            props.setProperty(target+INPUTS_SUFFIX, Integer.toString(inputs.size()));
+            props.setProperty(target+PACKAGE_SUFFIX, Boolean.toString(me.getValue().isPackage));
+            for(int i=0; i<inputs.size(); i++) {
+                props.setProperty(target+"."+i, inputs.get(i).toString());
+            }
+        }
+        PropertiesFiles.store(props, file, "xslCompiler-maven-plugin build manifest");
+    }
+
+    /**
+     * Checks if {@code targetFile} is up to date : it exists, it has been
+     * recorded with the same configuration, and none of its inputs has changed.
+     * @param targetFile The generated file
+     * @return {@code true} if it is not required to compile it again
+     */
+    public boolean isUpToDate(final File targetFile) {
+        Entry entry = entries.get(key(targetFile));
+        if(entry==null || !targetFile.isFile()) return false;
+        for(Input input: entry.inputs) {
+            Input current = getCurrentInput(input.uri, input);
+            if(current==null || !current.hash.equals(input.hash)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if {@code targetFile} has been recorded as a compiled package.
+     * @param targetFile The generated file
+     * @return {@code true} if it is a package
+     */
+    public boolean isPackage(final File targetFile) {
+        Entry entry = entries.get(key(targetFile));
+        return entry!=null && entry.isPackage;
+    }
+
+    /**
+     * Records a successful compilation
+     * @param targetFile The generated file
+     * @param inputUris The URIs of all files read to generate {@code targetFile}
+     * @param isPackage {@code true} if {@code targetFile} is a package
+     * @throws IOException If an input can not be read
+     */
+    public void record(final File targetFile, final Collection<String> inputUris, final boolean isPackage) throws IOException {
+        List<Input> inputs = new ArrayList<>(inputUris.size());
+        for(String uri: new HashSet<>(inputUris)) {
+            Input input = getCurrentInput(uri, null);
+            if(input==null) throw new IOException("Unable to read "+uri);
+            inputs.add(input);
+        }
+        entries.put(key(targetFile), new Entry(inputs, isPackage));
+    }
+
+    /**
+     * Forgets {@code targetFile}. It will be compiled on next build.
+     * @param targetFile The generated file
+     */
+    public void remove(final File targetFile) {
+        entries.remove(key(targetFile));
+    }
+
+    /**
+     * Keeps only the entries of {@code targetFiles}
+     * @param targetFiles The files generated by current build
+     */
+    public void retain(final Collection<File> targetFiles) {
+        Set<String> keys = new HashSet<>();
+        for(File f: targetFiles) keys.add(key(f));
+        entries.keySet().retainAll(keys);
+    }
+
+    /**
+     * Returns all input URIs recorded for {@code targetFile}
+     * @param targetFile The generated file
+     * @return The recorded inputs, or an empty list
+     */
+    public List<String> getInputs(final File targetFile) {
+        Entry entry = entries.get(key(targetFile));
+        if(entry==null) return Collections.emptyList();
+        List<String> ret = new ArrayList<>(entry.inputs.size());
+        for(Input input: entry.inputs) ret.add(input.uri);
+        return ret;
+    }
+
+    private static String key(final File targetFile) {
+        return targetFile.getAbsolutePath();
+    }
+
+    /**
+     * Returns the input as it is now. If {@code previous} is given and the file
+     * has the same size and last modification date, its hash is not computed again.
+     */
+    private Input getCurrentInput(final String uri, final Input previous) {
+        Input current = currentInputs.get(uri);
+        if(current!=null) return current;
+        try {
+            File f = toFile(uri);
+            if(f!=null) {
+                if(!f.isFile()) return null;
+                long size = f.length();
+                long lastModified = f.lastModified();
+                if(previous!=null && previous.size==size && previous.lastModified==lastModified) {
+                    current = previous;
+                } else {
+                    current = new Input(uri, size, lastModified, hash(f.toURI().toURL()));
+                }
+            } else {
+                current = new Input(uri, -1, -1, hash(new URL(uri)));
+            }
+        } catch(IOException | IllegalArgumentException ex) {
+            return null;
+        }
+        currentInputs.put(uri, current);
+        return current;
+    }
+
+    private static File toFile(final String uri) {
+        if(!uri.startsWith("file:")) return null;
+        try {
+            return new File(new URI(uri));
+        } catch(URISyntaxException | IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Computes the hash of the content of {@code url}
+     * @param url The resource to hash
+     * @return The hex representation of the hash
+     * @throws IOException If resource can not be read
+     */
+    public static String hash(final URL url) throws IOException {
+        Hasher hasher = Hashing.sha256().newHasher();
+        try(InputStream is = url.openStream()) {
+            ByteStreams.copy(is, Funnels.asOutputStream(hasher));
+        }
+        return hasher.hash().toString();
+    }
+
+    private static class Entry {
+        private final List<Input> inputs;
+        private final boolean isPackage;
+        Entry(final List<Input> inputs, final boolean isPackage) {
+            this.inputs = inputs;
+            this.isPackage = isPackage;
+        }
+    }
+
+    private static class Input {
+        private final String uri;
+        private final long size;
+        private final long lastModified;
+        private final String hash;
+        Input(final String uri, final long size, final long lastModified, final String hash) {
+            this.uri = uri;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+        static Input parse(final String value) {
+            // hash and sizes can not contain a |, uri is the last one
+            String[] parts = value.split("\\|", 4);
+            return new Input(parts[3], Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]);
+        }
+        @Override
+        public String toString() {
+            return size+"|"+lastModified+"|"+hash+"|"+uri;
+        }
+    }
+}
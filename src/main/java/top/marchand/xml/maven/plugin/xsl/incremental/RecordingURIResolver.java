@@ -0,0 +1,90 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.incremental;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.URIResolver;
+
+/**
+ * A URIResolver that records the system IDs of all resources it resolves.
+ * Set on a compiler, it gives the import/include closure of a stylesheet.
+ * @author cmarchand
+ */
+public class RecordingURIResolver implements URIResolver {
+    private final URIResolver delegate;
+    private final Set<String> resolved = Collections.synchronizedSet(new LinkedHashSet<>());
+
+    /**
+     * Creates a new resolver
+     * @param delegate The resolver that really resolves
+     */
+    public RecordingURIResolver(final URIResolver delegate) {
+        super();
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Source resolve(final String href, final String base) throws TransformerException {
+        Source ret = delegate==null ? null : delegate.resolve(href, base);
+        if(ret!=null && ret.getSystemId()!=null) {
+            resolved.add(ret.getSystemId());
+        } else {
+            // caller will use the standard resolution
+            try {
+                URI uri = base==null ? new URI(href) : new URI(base).resolve(href);
+                if(uri.isAbsolute()) resolved.add(uri.toString());
+            } catch(URISyntaxException | IllegalArgumentException ex) {
+                // can not be recorded
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the system IDs of all resolved resources
+     * @return The recorded system IDs
+     */
+    public Set<String> getResolved() {
+        synchronized(resolved) {
+            return new LinkedHashSet<>(resolved);
+        }
+    }
+
+    /**
+     * Records a resource that has not been resolved by this resolver
+     * @param systemId The system ID to record
+     */
+    public void record(final String systemId) {
+        if(systemId!=null) resolved.add(systemId);
+    }
+}
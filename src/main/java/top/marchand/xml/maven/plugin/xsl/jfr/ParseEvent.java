@@ -0,0 +1,72 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.jfr;
+
+import java.io.File;
+import java.net.URI;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when the root element of a stylesheet is read, to know if it is a
+ * package. If it can not be read alone, this includes the parse of the
+ * whole stylesheet into a tree. Otherwise, the stylesheet is parsed by the
+ * compiler, and its parse is recorded by {@link CompileEvent}.
+ * @author cmarchand
+ */
+@Name("top.marchand.xslcompiler.Parse")
+@Label("Stylesheet Root Read")
+@Category("XSL Compiler")
+@Description("Read of the root element of a stylesheet to compile")
+public class ParseEvent extends Event {
+    @Label("Stylesheet")
+    public String stylesheet;
+
+    @Label("Bytes Read")
+    @Description("Bytes read to find the root element")
+    @DataAmount
+    public long bytesRead;
+
+    /**
+     * Returns the size of the file {@code systemId} points to, or -1 if it
+     * is not a local file.
+     * @param systemId The system ID of a source
+     * @return The file size
+     */
+    public static long sizeOf(final String systemId) {
+        if(systemId==null || !systemId.startsWith("file:")) return -1;
+        try {
+            return new File(new URI(systemId)).length();
+        } catch(Exception ex) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.packages;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A jar of compiled packages, as attached to a project by the plugin, so that
+ * projects that depend on it import them instead of compiling their sources.
+ * Packages are stored under {@link #DIRECTORY}, as they are saved, compressed
+ * or not. {@link #INDEX} gives the name, version and sources key of each of them.
+ * @author cmarchand
+ */
+public final class PackageArchive {
+    /**
+     * The directory of packages, in archive
+     */
+    public static final String DIRECTORY = "META-INF/xsl-packages/";
+    /**
+     * The index of packages, in archive
+     */
+    public static final String INDEX = "META-INF/xsl-packages.properties";
+
+    private PackageArchive() {
+        super();
+    }
+
+    /**
+     * Writes {@code packages} to {@code archive}, through a temporary file.
+     * Entries are named after the path of files relative to {@code baseDir},
+     * and sorted, so that the same packages give the same entries.
+     * @param archive The archive to write
+     * @param baseDir The directory packages have been saved to
+     * @param packages The saved packages, and what is known of them
+     * @throws IOException If archive can not be written
+     */
+    public static void write(final File archive, final Path baseDir, final Map<File,PackageInfo> packages) throws IOException {
+        TreeMap<String,File> entries = new TreeMap<>();
+        Properties index = new Properties();
+        Path base = baseDir.toAbsolutePath();
+        for(Map.Entry<File,PackageInfo> me: packages.entrySet()) {
+            Path path = me.getKey().toPath().toAbsolutePath();
+            String name = (path.startsWith(base) ? base.relativize(path).toString() : path.getFileName().toString()).replace(File.separatorChar, '/');
+            entries.put(name, me.getKey());
+            me.getValue().store(index, name);
+        }
+        Path target = archive.toPath().toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try(ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(tmp))) {
+                zos.putNextEntry(new ZipEntry(INDEX));
+                zos.write(toSortedText(index).getBytes(StandardCharsets.ISO_8859_1));
+                zos.closeEntry();
+                for(Map.Entry<String,File> me: entries.entrySet()) {
+                    ZipEntry entry = new ZipEntry(DIRECTORY+me.getKey());
+                    entry.setTime(me.getValue().lastModified());
+                    zos.putNextEntry(entry);
+                    Files.copy(me.getValue().toPath(), zos);
+                    zos.closeEntry();
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Writes {@code index} as {@link Properties#store(java.io.OutputStream, java.lang.String) }
+     * does, without the date, and sorted, so that it is the same for the same packages.
+     */
+    private static String toSortedText(final Properties index) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        index.store(baos, null);
+        TreeSet<String> lines = new TreeSet<>();
+        for(String line: new String(baos.toByteArray(), StandardCharsets.ISO_8859_1).split("\\R")) {
+            if(!line.isEmpty() && !line.startsWith("#")) lines.add(line);
+        }
+        return String.join("\n", lines)+"\n";
+    }
+
+    /**
+     * Returns {@code true} if {@code classpathElement}, a jar or a directory,
+     * contains compiled packages.
+     * @param classpathElement The classpath element
+     * @return {@code true} if it contains packages
+     */
+    public static boolean containsPackages(final File classpathElement) {
+        if(classpathElement.isDirectory()) {
+            return new File(classpathElement, DIRECTORY).isDirectory();
+        }
+        if(!classpathElement.isFile()) return false;
+        try(ZipFile zip = new ZipFile(classpathElement)) {
+            for(Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+                ZipEntry entry = entries.nextElement();
+                if(!entry.isDirectory() && entry.getName().startsWith(DIRECTORY)) return true;
+            }
+            return false;
+        } catch(IOException ex) {
+            // not a jar
+            return false;
+        }
+    }
+
+    /**
+     * Copies the packages of {@code classpathElement} to {@code toDir}
+     * @param classpathElement A jar or a directory
+     * @param toDir The directory to copy to. It must exist
+     * @return The copied files, in archive order, and what the index tells
+     *     of them. A package that is not indexed has a {@code null} info
+     * @throws IOException If packages can not be read
+     */
+    public static Map<Path,PackageInfo> extract(final File classpathElement, final Path toDir) throws IOException {
+        Map<Path,PackageInfo> ret = new LinkedHashMap<>();
+        Properties index = new Properties();
+        if(classpathElement.isDirectory()) {
+            File indexFile = new File(classpathElement, INDEX);
+            if(indexFile.isFile()) {
+                try(InputStream is = new FileInputStream(indexFile)) {
+                    index.load(is);
+                }
+            }
+            Path dir = classpathElement.toPath().resolve(DIRECTORY);
+            try(Stream<Path> files = Files.walk(dir)) {
+                for(Path file: files.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                    Path target = toDir.resolve(Integer.toString(ret.size()));
+                    Files.copy(file, target);
+                    ret.put(target, PackageInfo.load(index, dir.relativize(file).toString().replace(File.separatorChar, '/')));
+                }
+            }
+            return ret;
+        }
+        try(ZipFile zip = new ZipFile(classpathElement)) {
+            ZipEntry indexEntry = zip.getEntry(INDEX);
+            if(indexEntry!=null) {
+                try(InputStream is = zip.getInputStream(indexEntry)) {
+                    index.load(is);
+                }
+            }
+            for(Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+                ZipEntry entry = entries.nextElement();
+                if(entry.isDirectory() || !entry.getName().startsWith(DIRECTORY)) continue;
+                // entry names are not trusted as file names
+                Path target = toDir.resolve(Integer.toString(ret.size()));
+                try(InputStream is = zip.getInputStream(entry); OutputStream os = Files.newOutputStream(target)) {
+                    is.transferTo(os);
+                }
+                ret.put(target, PackageInfo.load(index, entry.getName().substring(DIRECTORY.length())));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * What is known of a package : its name and version, as declared, and the
+     * key of its sources, that is the same wherever these sources are.
+     */
+    public static final class PackageInfo {
+        private final String name;
+        private final String version;
+        private final String sourceKey;
+
+        /**
+         * Creates a package info
+         * @param name The package name. May be {@code null} if unknown
+         * @param version The package version. May be {@code null} if unknown
+         * @param sourceKey The key of package sources. May be {@code null} if unknown
+         */
+        public PackageInfo(final String name, final String version, final String sourceKey) {
+            super();
+            this.name = name;
+            this.version = version;
+            this.sourceKey = sourceKey;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public String getSourceKey() {
+            return sourceKey;
+        }
+
+        /**
+         * Returns {@code true} if everything is known
+         * @return {@code true} if name, version and sources key are known
+         */
+        public boolean isComplete() {
+            return name!=null && version!=null && sourceKey!=null;
+        }
+
+        private void store(final Properties index, final String entry) {
+            if(name!=null) index.setProperty(entry+".name", name);
+            if(version!=null) index.setProperty(entry+".version", version);
+            if(sourceKey!=null) index.setProperty(entry+".source", sourceKey);
+        }
+
+        private static PackageInfo load(final Properties index, final String entry) {
+            String name = index.getProperty(entry+".name");
+            if(name==null) return null;
+            return new PackageInfo(name, index.getProperty(entry+".version"), index.getProperty(entry+".source"));
+        }
+    }
+}
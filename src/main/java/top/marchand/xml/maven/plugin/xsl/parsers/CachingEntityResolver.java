@@ -0,0 +1,105 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.parsers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Map;
+import org.apache.commons.io.IOUtils;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.EntityResolver2;
+
+/**
+ * An EntityResolver that keeps the content of external entities in memory,
+ * so that DTDs and entity sets used by many documents are read once.
+ * Only {@code file:} and {@code jar:} entities are kept, up to
+ * {@link #MAX_SIZE} bytes each.
+ * @author cmarchand
+ */
+class CachingEntityResolver implements EntityResolver2 {
+    static final int MAX_SIZE = 1024*1024;
+    private final EntityResolver2 delegate;
+    private final Map<String,byte[]> contents;
+
+    /**
+     * @param delegate The resolver that resolves entities. May be {@code null}
+     * @param contents The contents of entities, by system ID
+     */
+    CachingEntityResolver(final EntityResolver2 delegate, final Map<String,byte[]> contents) {
+        super();
+        this.delegate = delegate;
+        this.contents = contents;
+    }
+
+    @Override
+    public InputSource resolveEntity(final String name, final String publicId, final String baseURI, final String systemId) throws SAXException, IOException {
+        InputSource resolved = delegate==null ? null : delegate.resolveEntity(name, publicId, baseURI, systemId);
+        if(resolved!=null && resolved.getCharacterStream()!=null) return resolved;
+        String uri = resolved!=null ? resolved.getSystemId() : absolute(baseURI, systemId);
+        if(uri==null || !(uri.startsWith("file:") || uri.startsWith("jar:"))) return resolved;
+        byte[] content = contents.get(uri);
+        if(content==null) {
+            try(InputStream is = resolved!=null && resolved.getByteStream()!=null ? resolved.getByteStream() : new URL(uri).openStream()) {
+                content = IOUtils.toByteArray(is);
+            }
+            if(content.length<=MAX_SIZE) contents.put(uri, content);
+        } else if(resolved!=null && resolved.getByteStream()!=null) {
+            resolved.getByteStream().close();
+        }
+        InputSource ret = new InputSource(uri);
+        ret.setPublicId(publicId);
+        ret.setByteStream(new ByteArrayInputStream(content));
+        if(resolved!=null) ret.setEncoding(resolved.getEncoding());
+        return ret;
+    }
+
+    @Override
+    public InputSource resolveEntity(final String publicId, final String systemId) throws SAXException, IOException {
+        return resolveEntity(null, publicId, null, systemId);
+    }
+
+    @Override
+    public InputSource getExternalSubset(final String name, final String baseURI) throws SAXException, IOException {
+        return delegate==null ? null : delegate.getExternalSubset(name, baseURI);
+    }
+
+    private static String absolute(final String baseURI, final String systemId) {
+        if(systemId==null) return null;
+        try {
+            URI uri = baseURI==null ? new URI(systemId) : new URI(baseURI).resolve(systemId);
+            return uri.isAbsolute() ? uri.toString() : null;
+        } catch(URISyntaxException | IllegalArgumentException ex) {
+            // let the parser tell
+            return null;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.parsers;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+
+/**
+ * The DTD grammars and the content of external entities that readers share.
+ * A cache is used with one catalog only : the same system ID may be resolved
+ * to other files by another catalog. Readers get the cache of the current
+ * thread from {@link XcSAXParserFactory#setParsingCache(ParsingCache) }.
+ * @author cmarchand
+ */
+public class ParsingCache {
+    private final XMLGrammarPool grammarPool = new DTDGrammarPool();
+    private final Map<String,byte[]> entityContents = new ConcurrentHashMap<>();
+
+    public ParsingCache() {
+        super();
+    }
+
+    XMLGrammarPool getGrammarPool() {
+        return grammarPool;
+    }
+
+    Map<String,byte[]> getEntityContents() {
+        return entityContents;
+    }
+}
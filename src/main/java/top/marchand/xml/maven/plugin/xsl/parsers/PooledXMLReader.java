@@ -0,0 +1,270 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.parsers;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.util.SymbolTable;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.EntityResolver2;
+
+/**
+ * An XMLReader that borrows a Xerces reader from a per-thread pool for each
+ * parse. Features, properties and handlers are kept here, and set on the
+ * borrowed reader ; Xerces resets its state at the start of each parse.
+ * Readers are pooled by features, so that a reader is always reused with the
+ * features it has been configured with. Readers that have been given other
+ * properties than handlers are not pooled.
+ * Readers share the grammar pool and the entities of their {@link ParsingCache} ;
+ * readers of another cache are pooled apart.
+ * @author cmarchand
+ */
+class PooledXMLReader implements XMLReader {
+    private static final int MAX_IDLE = 4;
+    private static final Set<String> HANDLER_PROPERTIES = new HashSet<>(Arrays.asList(
+            "http://xml.org/sax/properties/lexical-handler",
+            "http://xml.org/sax/properties/declaration-handler"));
+    private static final ThreadLocal<Pool> POOLS = new ThreadLocal<>();
+    private final Map<String,Boolean> features = new HashMap<>();
+    private final Map<String,Object> properties = new HashMap<>();
+    private final ParsingCache parsingCache;
+    private EntityResolver entityResolver;
+    private DTDHandler dtdHandler;
+    private ContentHandler contentHandler;
+    private ErrorHandler errorHandler;
+
+    /**
+     * Creates a reader
+     * @param entityResolver The default entity resolver. May be {@code null}
+     * @param parsingCache The grammars and entities to share
+     */
+    PooledXMLReader(final EntityResolver entityResolver, final ParsingCache parsingCache) {
+        super();
+        this.entityResolver = entityResolver;
+        this.parsingCache = parsingCache;
+    }
+
+    @Override
+    public void parse(final InputSource input) throws IOException, SAXException {
+        Pool pool = getPool();
+        SAXParser reader = pool.borrow(features);
+        boolean reusable = false;
+        try {
+            configure(reader);
+            reusable = HANDLER_PROPERTIES.containsAll(properties.keySet());
+            reader.parse(input);
+        } finally {
+            if(reusable) {
+                release(reader);
+                pool.release(features, reader);
+            }
+        }
+    }
+
+    @Override
+    public void parse(final String systemId) throws IOException, SAXException {
+        parse(new InputSource(systemId));
+    }
+
+    private void configure(final SAXParser reader) throws SAXException {
+        for(Map.Entry<String,Object> property: properties.entrySet()) {
+            reader.setProperty(property.getKey(), property.getValue());
+        }
+        if(entityResolver instanceof EntityResolver2 || entityResolver==null) {
+            reader.setEntityResolver(new CachingEntityResolver((EntityResolver2)entityResolver, parsingCache.getEntityContents()));
+        } else {
+            reader.setEntityResolver(entityResolver);
+        }
+        reader.setDTDHandler(dtdHandler);
+        reader.setContentHandler(contentHandler);
+        reader.setErrorHandler(errorHandler);
+    }
+
+    /**
+     * Forgets the handlers, that may hold the last parsed document
+     */
+    private static void release(final SAXParser reader) throws SAXException {
+        for(String property: HANDLER_PROPERTIES) {
+            reader.setProperty(property, null);
+        }
+        reader.setEntityResolver(null);
+        reader.setDTDHandler(null);
+        reader.setContentHandler(null);
+        reader.setErrorHandler(null);
+    }
+
+    /**
+     * Forgets the readers pooled for the current thread
+     */
+    static void releaseThread() {
+        POOLS.remove();
+    }
+
+    private Pool getPool() {
+        XMLGrammarPool grammars = parsingCache.getGrammarPool();
+        Pool ret = POOLS.get();
+        // readers of another cache would use its grammars
+        if(ret==null || ret.grammars!=grammars) {
+            ret = new Pool(grammars);
+            POOLS.set(ret);
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean getFeature(final String name) throws SAXNotRecognizedException, SAXNotSupportedException {
+        Boolean ret = features.get(name);
+        if(ret!=null) return ret;
+        Pool pool = getPool();
+        SAXParser reader = pool.borrow(features);
+        try {
+            return reader.getFeature(name);
+        } finally {
+            pool.release(features, reader);
+        }
+    }
+
+    @Override
+    public void setFeature(final String name, final boolean value) throws SAXNotRecognizedException, SAXNotSupportedException {
+        if(Boolean.valueOf(value).equals(features.get(name))) return;
+        // an unknown feature is reported now, not at parse
+        Pool pool = getPool();
+        SAXParser reader = pool.borrow(features);
+        try {
+            reader.setFeature(name, value);
+        } catch(SAXNotRecognizedException | SAXNotSupportedException ex) {
+            pool.release(features, reader);
+            throw ex;
+        }
+        features.put(name, value);
+        // reader now has the new features
+        pool.release(features, reader);
+    }
+
+    @Override
+    public Object getProperty(final String name) throws SAXNotRecognizedException, SAXNotSupportedException {
+        if(properties.containsKey(name)) return properties.get(name);
+        Pool pool = getPool();
+        SAXParser reader = pool.borrow(features);
+        try {
+            return reader.getProperty(name);
+        } finally {
+            pool.release(features, reader);
+        }
+    }
+
+    @Override
+    public void setProperty(final String name, final Object value) throws SAXNotRecognizedException, SAXNotSupportedException {
+        properties.put(name, value);
+    }
+
+    @Override
+    public void setEntityResolver(final EntityResolver resolver) {
+        this.entityResolver = resolver;
+    }
+
+    @Override
+    public EntityResolver getEntityResolver() {
+        return entityResolver;
+    }
+
+    @Override
+    public void setDTDHandler(final DTDHandler handler) {
+        this.dtdHandler = handler;
+    }
+
+    @Override
+    public DTDHandler getDTDHandler() {
+        return dtdHandler;
+    }
+
+    @Override
+    public void setContentHandler(final ContentHandler handler) {
+        this.contentHandler = handler;
+    }
+
+    @Override
+    public ContentHandler getContentHandler() {
+        return contentHandler;
+    }
+
+    @Override
+    public void setErrorHandler(final ErrorHandler handler) {
+        this.errorHandler = handler;
+    }
+
+    @Override
+    public ErrorHandler getErrorHandler() {
+        return errorHandler;
+    }
+
+    /**
+     * The idle readers of a thread, by features
+     */
+    private static class Pool {
+        private final XMLGrammarPool grammars;
+        private final Map<Map<String,Boolean>,Deque<SAXParser>> idle = new HashMap<>();
+
+        private Pool(final XMLGrammarPool grammars) {
+            super();
+            this.grammars = grammars;
+        }
+
+        private SAXParser borrow(final Map<String,Boolean> features) throws SAXNotRecognizedException, SAXNotSupportedException {
+            Deque<SAXParser> readers = idle.get(features);
+            SAXParser ret = readers==null ? null : readers.poll();
+            if(ret==null) {
+                ret = new SAXParser(new SymbolTable(), grammars);
+                for(Map.Entry<String,Boolean> feature: features.entrySet()) {
+                    ret.setFeature(feature.getKey(), feature.getValue());
+                }
+            }
+            return ret;
+        }
+
+        private void release(final Map<String,Boolean> features, final SAXParser reader) {
+            Deque<SAXParser> readers = idle.computeIfAbsent(new HashMap<>(features), k -> new ArrayDeque<>());
+            if(readers.size()<MAX_IDLE) readers.push(reader);
+        }
+    }
+}
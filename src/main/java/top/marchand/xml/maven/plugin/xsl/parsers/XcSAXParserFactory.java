@@ -17,30 +17,68 @@ import org.xml.sax.XMLReader;
 import org.xml.sax.ext.EntityResolver2;
 
 /**
- *
+ * The SAX parser factory Saxon is given. Saxon creates a new factory each
+ * time it needs a parser, so the state shared by parsers is static.
+ * Readers are Xerces readers, pooled per thread, configured with the
+ * EntityResolver of the current thread, and sharing the grammar pool and the
+ * content of external entities of the {@link ParsingCache} of the current thread.
  * @author cmarchand
  */
 public class XcSAXParserFactory extends SAXParserFactory {
+    private static final ThreadLocal<EntityResolver2> thEntityResolver = new ThreadLocal<>();
+    private static final ThreadLocal<ParsingCache> thParsingCache = new ThreadLocal<>();
     private final SAXParserFactory innerFactory;
-    ThreadLocal<EntityResolver2> thEntityResolver;
+    // a configured factory gives readers that are not pooled
+    private boolean configured;
     
     public XcSAXParserFactory() {
-        innerFactory = new SAXParserFactoryImpl() {
-            @Override
-            public SAXParser newSAXParser() throws ParserConfigurationException {
-                return new XcSAXParser(super.newSAXParser());
-            }
-        };
+        innerFactory = new SAXParserFactoryImpl();
+    }
+
+    /**
+     * Sets the EntityResolver readers created in the current thread are configured with.
+     * @param entityResolver The entity resolver. May be {@code null}
+     */
+    public static void setEntityResolver(EntityResolver2 entityResolver) {
+        if(entityResolver==null) {
+            thEntityResolver.remove();
+        } else {
+            thEntityResolver.set(entityResolver);
+        }
+    }
+
+    /**
+     * Sets the grammars and entities readers created in the current thread share.
+     * @param parsingCache The cache. If {@code null}, readers share nothing
+     */
+    public static void setParsingCache(ParsingCache parsingCache) {
+        if(parsingCache==null) {
+            thParsingCache.remove();
+        } else {
+            thParsingCache.set(parsingCache);
+        }
+    }
+
+    /**
+     * Forgets the entity resolver, the parsing cache and the readers of the current thread.
+     * Threads that outlive a build, as Maven builder threads in a persistent
+     * JVM, would otherwise keep them, and the plugin classes, after the build.
+     */
+    public static void releaseThread() {
+        thEntityResolver.remove();
+        thParsingCache.remove();
+        PooledXMLReader.releaseThread();
     }
 
     @Override
     public SAXParser newSAXParser() throws ParserConfigurationException, SAXException {
-        return innerFactory.newSAXParser();
+        return new XcSAXParser();
     }
 
     @Override
     public void setFeature(String name, boolean value) throws ParserConfigurationException, SAXNotRecognizedException, SAXNotSupportedException {
         innerFactory.setFeature(name, value);
+        configured = true;
     }
 
     @Override
@@ -49,23 +87,38 @@ public class XcSAXParserFactory extends SAXParserFactory {
     }
     
     class XcSAXParser extends SAXParser {
-        private ThreadLocal<EntityResolver2> thEntityResolver;
+        // created only when asked for, pooled readers do not need it
+        private SAXParser innerParser;
+        private boolean configured = XcSAXParserFactory.this.configured;
 
-        private final SAXParser innerParser;
-        public XcSAXParser(SAXParser innerParser) {
+        public XcSAXParser() {
             super();
-            this.innerParser=innerParser;
+        }
+
+        private SAXParser getInnerParser() throws SAXException {
+            if(innerParser==null) {
+                try {
+                    innerParser = innerFactory.newSAXParser();
+                } catch(ParserConfigurationException ex) {
+                    throw new SAXException(ex);
+                }
+            }
+            return innerParser;
         }
 
         @Override @SuppressWarnings("deprecation")
         public Parser getParser() throws SAXException {
-            return innerParser.getParser();
+            return getInnerParser().getParser();
         }
 
         @Override
         public XMLReader getXMLReader() throws SAXException {
-            XMLReader reader = innerParser.getXMLReader();
-            if(thEntityResolver!=null && thEntityResolver.get()!=null) {
+            if(!configured) {
+                ParsingCache parsingCache = thParsingCache.get();
+                return new PooledXMLReader(thEntityResolver.get(), parsingCache==null ? new ParsingCache() : parsingCache);
+            }
+            XMLReader reader = getInnerParser().getXMLReader();
+            if(thEntityResolver.get()!=null) {
                 reader.setEntityResolver(thEntityResolver.get());
             }
             return reader;
@@ -73,22 +126,35 @@ public class XcSAXParserFactory extends SAXParserFactory {
 
         @Override
         public boolean isNamespaceAware() {
-            return innerParser.isNamespaceAware();
+            return innerFactory.isNamespaceAware();
         }
 
         @Override
         public boolean isValidating() {
-            return innerParser.isValidating();
+            return innerFactory.isValidating();
         }
 
         @Override
         public void setProperty(String name, Object value) throws SAXNotRecognizedException, SAXNotSupportedException {
-            innerParser.setProperty(name, value);
+            try {
+                getInnerParser().setProperty(name, value);
+            } catch(SAXNotRecognizedException | SAXNotSupportedException ex) {
+                throw ex;
+            } catch(SAXException ex) {
+                throw new SAXNotSupportedException(ex.getMessage());
+            }
+            configured = true;
         }
 
         @Override
         public Object getProperty(String name) throws SAXNotRecognizedException, SAXNotSupportedException {
-            return innerParser.getProperty(name);
+            try {
+                return getInnerParser().getProperty(name);
+            } catch(SAXNotRecognizedException | SAXNotSupportedException ex) {
+                throw ex;
+            } catch(SAXException ex) {
+                throw new SAXNotSupportedException(ex.getMessage());
+            }
         }
     }
     
@@ -0,0 +1,227 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.report;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timings and sizes of each stylesheet compiled during a build. Entries are
+ * recorded by workers, and written as JSON and CSV at the end of the build.
+ * @author cmarchand
+ */
+public class CompilationReport {
+    /**
+     * The phases of a compilation. {@code SNIFF} is the read of the root
+     * element, to know if a stylesheet is a package ; the stylesheet is
+     * parsed by the compiler, so its parse is part of {@code COMPILE}.
+     */
+    public enum Phase { SNIFF, COMPILE, EXPORT }
+
+    /**
+     * The outcome of a compilation
+     */
+    public enum Status { COMPILED, CACHED, FAILED }
+
+    private final Map<File, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Starts the entry of a stylesheet
+     * @param targetFile The file to generate
+     * @param source The source system ID
+     * @return The entry
+     */
+    public Entry start(final File targetFile, final String source) {
+        Entry entry = new Entry(targetFile, source);
+        entries.put(targetFile, entry);
+        return entry;
+    }
+
+    /**
+     * Returns the entry of {@code targetFile}, or {@code null} if it has not been started
+     * @param targetFile The file to generate
+     * @return The entry
+     */
+    public Entry get(final File targetFile) {
+        return entries.get(targetFile);
+    }
+
+    /**
+     * Returns all entries, sorted by source
+     * @return The entries
+     */
+    public List<Entry> getEntries() {
+        List<Entry> ret = new ArrayList<>(entries.values());
+        ret.sort(Comparator.comparing(Entry::getSource));
+        return ret;
+    }
+
+    /**
+     * Returns the {@code count} entries that took the longest time
+     * @param count The number of entries to return
+     * @return The slowest entries, slowest first
+     */
+    public List<Entry> getSlowest(final int count) {
+        List<Entry> ret = getEntries();
+        ret.sort(Comparator.comparingLong(Entry::getTotalNanos).reversed());
+        return ret.subList(0, Math.min(count, ret.size()));
+    }
+
+    /**
+     * Writes this report to {@code baseFile}{@code .json} and {@code baseFile}{@code .csv}
+     * @param baseFile The report file, without extension
+     * @throws IOException If report can not be written
+     */
+    public void write(final File baseFile) throws IOException {
+        baseFile.getAbsoluteFile().getParentFile().mkdirs();
+        List<Entry> sorted = getEntries();
+        try(Writer writer = Files.newBufferedWriter(new File(baseFile.getPath()+".json").toPath(), StandardCharsets.UTF_8)) {
+            writeJson(sorted, writer);
+        }
+        try(Writer writer = Files.newBufferedWriter(new File(baseFile.getPath()+".csv").toPath(), StandardCharsets.UTF_8)) {
+            writeCsv(sorted, writer);
+        }
+    }
+
+    static void writeJson(final List<Entry> entries, final Writer writer) throws IOException {
+        writer.write("{\n  \"stylesheets\": [");
+        String sep = "\n";
+        for(Entry entry: entries) {
+            writer.write(sep);
+            sep = ",\n";
+            writer.write("    {\"source\": "+jsonString(entry.source)
+                    +", \"target\": "+jsonString(entry.targetFile.getPath())
+                    +", \"status\": "+jsonString(entry.status.name().toLowerCase())
+                    +", \"package\": "+entry.isPackage
+                    +", \"sniffMs\": "+millis(entry.sniffNanos)
+                    +", \"compileMs\": "+millis(entry.compileNanos)
+                    +", \"exportMs\": "+millis(entry.exportNanos)
+                    +", \"sourceSize\": "+entry.sourceSize
+                    +", \"closureSize\": "+entry.closureSize
+                    +", \"targetSize\": "+entry.targetSize+"}");
+        }
+        writer.write("\n  ]\n}\n");
+    }
+
+    static void writeCsv(final List<Entry> entries, final Writer writer) throws IOException {
+        writer.write("source,target,status,package,sniffMs,compileMs,exportMs,sourceSize,closureSize,targetSize\n");
+        for(Entry entry: entries) {
+            writer.write(csvString(entry.source)+","+csvString(entry.targetFile.getPath())+","
+                    +entry.status.name().toLowerCase()+","+entry.isPackage+","
+                    +millis(entry.sniffNanos)+","+millis(entry.compileNanos)+","+millis(entry.exportNanos)+","
+                    +entry.sourceSize+","+entry.closureSize+","+entry.targetSize+"\n");
+        }
+    }
+
+    private static long millis(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static String jsonString(final String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for(char c: s.toCharArray()) {
+            switch(c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if(c<0x20) sb.append(String.format("\\u%04x", (int)c));
+                    else sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String csvString(final String s) {
+        if(s.indexOf(',')<0 && s.indexOf('"')<0 && s.indexOf('\n')<0) return s;
+        return "\""+s.replace("\"", "\"\"")+"\"";
+    }
+
+    /**
+     * The timings and sizes of a stylesheet. Times are in nanoseconds, sizes
+     * in bytes ; -1 means unknown.
+     */
+    public static class Entry {
+        private final File targetFile;
+        private final String source;
+        private volatile Status status = Status.COMPILED;
+        private volatile boolean isPackage;
+        private volatile long sniffNanos;
+        private volatile long compileNanos;
+        private volatile long exportNanos;
+        private volatile long sourceSize = -1;
+        private volatile long closureSize = -1;
+        private volatile long targetSize = -1;
+
+        Entry(final File targetFile, final String source) {
+            super();
+            this.targetFile = targetFile;
+            this.source = source==null ? targetFile.getPath() : source;
+        }
+
+        /**
+         * Adds {@code nanos} to the time spent in {@code phase}
+         * @param phase The phase
+         * @param nanos The time spent
+         */
+        public void addTime(final Phase phase, final long nanos) {
+            switch(phase) {
+                case SNIFF: sniffNanos += nanos; break;
+                case COMPILE: compileNanos += nanos; break;
+                default: exportNanos += nanos;
+            }
+        }
+
+        public long getTotalNanos() { return sniffNanos+compileNanos+exportNanos; }
+        public long getSniffNanos() { return sniffNanos; }
+        public long getCompileNanos() { return compileNanos; }
+        public long getExportNanos() { return exportNanos; }
+        public String getSource() { return source; }
+        public File getTargetFile() { return targetFile; }
+        public Status getStatus() { return status; }
+        public void setStatus(final Status status) { this.status = status; }
+        public boolean isPackage() { return isPackage; }
+        public void setPackage(final boolean isPackage) { this.isPackage = isPackage; }
+        public long getSourceSize() { return sourceSize; }
+        public void setSourceSize(final long sourceSize) { this.sourceSize = sourceSize; }
+        public long getClosureSize() { return closureSize; }
+        public void setClosureSize(final long closureSize) { this.closureSize = closureSize; }
+        public long getTargetSize() { return targetSize; }
+        public void setTargetSize(final long targetSize) { this.targetSize = targetSize; }
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.resolver;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * The {@code uri} entries of a catalog, and of the catalogs it chains to
+ * with {@code nextCatalog}, read once and indexed by name.
+ * Catalogs are read in the order they are looked up in. Once a catalog
+ * declares {@code rewriteURI}, {@code uriSuffix} or {@code delegateURI}
+ * entries, next catalogs are not indexed : such entries may match any URI,
+ * and only the catalog resolver can tell which one wins. URIs that are not
+ * in the index are to be resolved by the catalog resolver.
+ * @author cmarchand
+ */
+public class CatalogIndex {
+    static final String CATALOG_NS = "urn:oasis:names:tc:entity:xmlns:xml:catalog";
+    private final Map<String,String> uris;
+    private final int catalogs;
+
+    private CatalogIndex(final Map<String,String> uris, final int catalogs) {
+        super();
+        this.uris = Collections.unmodifiableMap(uris);
+        this.catalogs = catalogs;
+    }
+
+    /**
+     * Reads {@code catalogUri}, and the catalogs it chains to.
+     * @param catalogUri The URI of the root catalog
+     * @return The index
+     * @throws IOException If the root catalog can not be read
+     */
+    public static CatalogIndex build(final String catalogUri) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setXMLResolver((publicId, systemId, baseUri, namespace) -> new ByteArrayInputStream(new byte[0]));
+        Map<String,String> uris = new HashMap<>();
+        Set<String> read = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(catalogUri);
+        int count = 0;
+        while(!pending.isEmpty()) {
+            String catalog = pending.pop();
+            if(!read.add(catalog)) continue;
+            List<String> next = new ArrayList<>();
+            boolean complete;
+            try(InputStream is = new URL(catalog).openStream()) {
+                complete = read(factory, is, catalog, uris, next);
+            } catch(IOException | XMLStreamException | URISyntaxException ex) {
+                // the catalog resolver ignores catalogs it can not read, but the root one
+                if(count==0) throw new IOException("Unable to read catalog "+catalog, ex);
+                continue;
+            }
+            count++;
+            if(!complete) break;
+            // next catalogs are looked up depth-first, in document order
+            for(int i=next.size()-1; i>=0; i--) pending.push(next.get(i));
+        }
+        return new CatalogIndex(uris, count);
+    }
+
+    /**
+     * Reads a catalog, and adds its {@code uri} entries to {@code uris}, if
+     * not already there.
+     * @return {@code false} if the catalog declares entries that are not indexed
+     */
+    private static boolean read(final XMLInputFactory factory, final InputStream is, final String systemId, final Map<String,String> uris, final List<String> next) throws XMLStreamException, URISyntaxException {
+        XMLStreamReader reader = factory.createXMLStreamReader(systemId, is);
+        boolean complete = true;
+        Deque<URI> bases = new ArrayDeque<>();
+        bases.push(new URI(systemId));
+        try {
+            while(reader.hasNext()) {
+                int event = reader.next();
+                if(event==XMLStreamConstants.END_ELEMENT) {
+                    bases.pop();
+                } else if(event==XMLStreamConstants.START_ELEMENT) {
+                    String xmlBase = reader.getAttributeValue(XMLConstants.XML_NS_URI, "base");
+                    URI base = xmlBase==null ? bases.peek() : bases.peek().resolve(xmlBase);
+                    bases.push(base);
+                    if(!CATALOG_NS.equals(reader.getNamespaceURI())) continue;
+                    switch(reader.getLocalName()) {
+                        case "uri":
+                            String name = reader.getAttributeValue(null, "name");
+                            String uri = reader.getAttributeValue(null, "uri");
+                            if(name!=null && uri!=null) uris.putIfAbsent(name, toSystemId(base.resolve(uri)));
+                            break;
+                        case "nextCatalog":
+                            String catalog = reader.getAttributeValue(null, "catalog");
+                            if(catalog!=null) next.add(base.resolve(catalog).toString());
+                            break;
+                        case "rewriteURI":
+                        case "uriSuffix":
+                        case "delegateURI":
+                            complete = false;
+                            break;
+                        default:
+                            // catalog, group, and entries that do not apply to URIs
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return complete;
+    }
+
+    /**
+     * The catalog resolver gives file URIs with an empty authority, and
+     * system IDs must be the same, whatever resolves them.
+     */
+    private static String toSystemId(final URI uri) {
+        String ret = uri.toString();
+        return ret.startsWith("file:/") && !ret.startsWith("file://") ? "file://"+ret.substring("file:".length()) : ret;
+    }
+
+    /**
+     * Looks for {@code href} in the index, as is, and then resolved against
+     * {@code base}, as the catalog resolver does.
+     * @param href The href to look for
+     * @param base The base URI. May be {@code null}
+     * @return The URI {@code href} is mapped to, or {@code null} if not in the index
+     */
+    public String lookup(final String href, final String base) {
+        String ret = uris.get(href);
+        if(ret==null && base!=null) {
+            try {
+                ret = uris.get(new URI(base).resolve(href).toString());
+            } catch(URISyntaxException | IllegalArgumentException ex) {
+                // not a URI, the catalog resolver will tell
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * The number of indexed entries
+     * @return The number of entries
+     */
+    public int size() {
+        return uris.size();
+    }
+
+    /**
+     * The number of catalogs that have been read
+     * @return The number of catalogs
+     */
+    public int getCatalogCount() {
+        return catalogs;
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.resolver;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.sax.SAXSource;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.EntityResolver2;
+import org.xmlresolver.Resolver;
+
+/**
+ * A catalog resolver that remembers what it has resolved. All compilers of
+ * a build share it, so that a library URI is looked up in the catalogs once,
+ * whatever the number of stylesheets that import it.
+ * Resolutions are keyed by href and base URI. Only {@code file:} and
+ * {@code jar:} results are remembered, as they can be read again from their
+ * URI ; each call returns a new source, that is opened when it is parsed.
+ * Other results, that the catalog resolver may have cached, are resolved
+ * each time.
+ * @author cmarchand
+ */
+public class MemoizingResolver implements URIResolver, EntityResolver2 {
+    // ConcurrentHashMap does not accept null values
+    private static final String NOT_FOUND = "";
+    private final Resolver delegate;
+    private final CatalogIndex index;
+    private final Map<String,String> uris = new ConcurrentHashMap<>();
+    private final Map<String,String> entities = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new resolver
+     * @param delegate The catalog resolver
+     * @param index The index of catalog entries, looked up before the catalog resolver. May be {@code null}
+     */
+    public MemoizingResolver(final Resolver delegate, final CatalogIndex index) {
+        super();
+        this.delegate = delegate;
+        this.index = index;
+    }
+
+    @Override
+    public Source resolve(final String href, final String base) throws TransformerException {
+        String key = key(href, base);
+        String uri = uris.get(key);
+        if(uri==null) {
+            uri = index==null ? null : index.lookup(href, base);
+            if(uri==null) {
+                Source ret = delegate.resolve(href, base);
+                if(ret==null) {
+                    uris.put(key, NOT_FOUND);
+                } else if(isReadAgain(ret.getSystemId())) {
+                    uris.put(key, ret.getSystemId());
+                }
+                return ret;
+            }
+            uris.put(key, uri);
+        }
+        return NOT_FOUND.equals(uri) ? null : new SAXSource(new InputSource(uri));
+    }
+
+    @Override
+    public InputSource resolveEntity(final String name, final String publicId, final String baseURI, final String systemId) throws SAXException, IOException {
+        String key = key(name, publicId, baseURI, systemId);
+        String uri = entities.get(key);
+        if(uri==null) {
+            InputSource ret = delegate.resolveEntity(name, publicId, baseURI, systemId);
+            if(ret==null) {
+                entities.put(key, NOT_FOUND);
+            } else if(isReadAgain(ret.getSystemId())) {
+                entities.put(key, ret.getSystemId());
+            }
+            return ret;
+        }
+        if(NOT_FOUND.equals(uri)) return null;
+        InputSource ret = new InputSource(uri);
+        ret.setPublicId(publicId);
+        return ret;
+    }
+
+    @Override
+    public InputSource resolveEntity(final String publicId, final String systemId) throws SAXException, IOException {
+        return resolveEntity(null, publicId, null, systemId);
+    }
+
+    @Override
+    public InputSource getExternalSubset(final String name, final String baseURI) throws SAXException, IOException {
+        return delegate.getExternalSubset(name, baseURI);
+    }
+
+    /**
+     * Forgets all resolutions. Catalogs are not read again.
+     */
+    public void clear() {
+        uris.clear();
+        entities.clear();
+    }
+
+    private static boolean isReadAgain(final String systemId) {
+        return systemId!=null && (systemId.startsWith("file:") || systemId.startsWith("jar:"));
+    }
+
+    private static String key(final String... parts) {
+        StringBuilder sb = new StringBuilder();
+        for(String part: parts) {
+            // null and empty are not the same
+            sb.append(part==null ? "\u0001" : part).append('\u0000');
+        }
+        return sb.toString();
+    }
+}
@@ -27,15 +27,26 @@
 package top.marchand.xml.maven.plugin.xsl.scandir;
 
 import java.io.File;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 import org.apache.maven.plugin.logging.Log;
 import top.marchand.xml.maven.plugin.xsl.FileSet;
+import top.marchand.xml.maven.plugin.xsl.jfr.ScanEvent;
 
 /**
  * A class to scan a directory and find files that match a {@link FileSet}
@@ -49,12 +60,16 @@ public class DirectoryScanner {
     private final Log log;
     
     // working attributes, not for state...
-    private transient List<PathMatcher> includeMatchers;
-    private transient List<PathMatcher> excludeMatchers;
+    private transient GlobMatcher includeMatcher;
+    private transient GlobMatcher excludeMatcher;
+    private transient GlobMatcher excludedDirMatcher;
+    // compiled segments of each include, a null segment contains **
+    private transient List<Pattern[]> includeSegments;
     private transient boolean isToRecurse;
     private transient Path basePath;
     
     private ScanListener listener;
+    private transient Consumer<Path> consumer;
     
     /**
      * Constructs a DirectoryScanner on {@code baseDir}, with default includes
@@ -111,75 +126,296 @@ public class DirectoryScanner {
      * @return Found pathes
      */
     public List<Path> scan() {
+        ScanEvent event = new ScanEvent();
+        event.begin();
         prepareFilters();
-        return scan(baseDir);
+        List<Path> ret = scan(baseDir);
+        event.end();
+        if(event.shouldCommit()) {
+            event.directory = baseDir.getAbsolutePath();
+            event.acceptedFiles = ret.size();
+            event.commit();
+        }
+        return ret;
+    }
+
+    /**
+     * Scans fileset's basedir, and gives each accepted path, relative to
+     * basedir, to {@code consumer} as soon as it is found. Pathes are not
+     * kept ; they are given in no particular order, and {@code consumer} may
+     * be called from several threads at the same time.
+     * @param consumer The consumer of accepted pathes
+     */
+    public void scan(final Consumer<Path> consumer) {
+        ScanEvent event = new ScanEvent();
+        event.begin();
+        prepareFilters();
+        AtomicInteger accepted = new AtomicInteger();
+        this.consumer = event.isEnabled() ? path -> { accepted.incrementAndGet(); consumer.accept(path); } : consumer;
+        try {
+            scan(baseDir);
+        } finally {
+            this.consumer = null;
+        }
+        event.end();
+        if(event.shouldCommit()) {
+            event.directory = baseDir.getAbsolutePath();
+            event.acceptedFiles = accepted.get();
+            event.commit();
+        }
     }
 
     /**
      * Initialize working attributes.
      */
     protected void prepareFilters() {
-        FileSystem fs = FileSystems.getDefault();
-        includeMatchers = new ArrayList<>(includes.size());
-        for(String include: includes) {
-            includeMatchers.add(buildPathMatcher(fs, include));
+        // matchers normalize patterns too ; /dir is dir in base directory
+        List<String> normalizedIncludes = new ArrayList<>(includes.size());
+        for(String include: includes) normalizedIncludes.add(GlobMatcher.normalize(include));
+        for(String include: normalizedIncludes) {
             if(include.contains("**")) isToRecurse = true;
             else if(include.matches(".*/.+/.*")) isToRecurse = true;
         }
-        excludeMatchers = new ArrayList<>(excludes.size());
+        includeMatcher = new GlobMatcher(includes);
+        excludeMatcher = new GlobMatcher(excludes);
+        List<String> excludedDirs = new ArrayList<>();
         for(String exclude: excludes) {
-            excludeMatchers.add(buildPathMatcher(fs, exclude));
+            String normalized = GlobMatcher.normalize(exclude);
+            // dir/** excludes everything under dir
+            if(!normalized.startsWith("regex:") && normalized.endsWith("/**") && normalized.length()>3) {
+                excludedDirs.add(normalized.substring(0, normalized.length()-3));
+            }
+        }
+        excludedDirMatcher = new GlobMatcher(excludedDirs);
+        includeSegments = new ArrayList<>(includes.size());
+        for(String include: normalizedIncludes) {
+            includeSegments.add(compileSegments(splitInclude(include)));
         }
         basePath = baseDir.toPath().normalize();
     }
-    private PathMatcher buildPathMatcher(final FileSystem fs, final String pattern) {
-        String _pattern = (pattern.startsWith("glob:") || pattern.startsWith("regex:")) ? pattern : "glob:"+pattern;
-        return fs.getPathMatcher(_pattern);
-    }
     
+    /**
+     * Scans {@code dir}. Directories that are excluded, or where no include
+     * may match, are not walked into. Sub-directories are scanned in
+     * parallel, in a fork/join pool ; returned pathes are sorted in
+     * directory order, whatever the order directories have been scanned in.
+     * @param dir The directory to scan
+     * @return The accepted pathes, relative to base directory
+     */
     protected List<Path> scan(File dir) {
+        Object fileKey = null;
+        try {
+            fileKey = Files.readAttributes(dir.toPath(), BasicFileAttributes.class).fileKey();
+        } catch(IOException ex) {
+            // will be reported while listing dir
+        }
+        return new ScanTask(null, dir.toPath(), fileKey).invoke();
+    }
+
+    private void notifyScanning(Path dir) {
+        log.debug("scanning "+dir);
+        if(listener!=null) {
+            synchronized(listener) {
+                listener.scanning(dir.toFile());
+            }
+        }
+    }
+
+    private void notifyFile(Path rel, boolean accepted) {
         if(listener!=null) {
-            listener.scanning(dir);
-        }
-        log.debug("scanning "+dir.getAbsolutePath()+". it is "+(dir.isDirectory()?"":"not ")+"a directory");
-        ArrayList<Path> ret = new ArrayList<>();
-        File[] childs=dir.listFiles();
-        log.debug("\tchilds="+Arrays.toString(childs));
-        for(File child:childs) {
-            if(child.isDirectory()) {
-                if(isToRecurse) {
-                    ret.addAll(scan(child));
+            synchronized(listener) {
+                if(accepted) listener.fileAccepted(rel);
+                else listener.fileRejected(rel);
+            }
+        }
+    }
+
+    /**
+     * Scans a directory, and forks a task for each sub-directory
+     */
+    private class ScanTask extends RecursiveTask<List<Path>> {
+        private static final long serialVersionUID = 1L;
+        private final ScanTask parent;
+        private final Path dir;
+        private final Object fileKey;
+
+        ScanTask(final ScanTask parent, final Path dir, final Object fileKey) {
+            super();
+            this.parent = parent;
+            this.dir = dir;
+            this.fileKey = fileKey;
+        }
+
+        @Override
+        protected List<Path> compute() {
+            notifyScanning(dir);
+            List<Path> children = new ArrayList<>();
+            try(DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+                for(Path child: ds) children.add(child);
+            } catch(IOException ex) {
+                log.warn("unable to scan "+dir+": "+ex.getMessage());
+                return Collections.emptyList();
+            }
+            Collections.sort(children);
+            // accepted files and sub-directories tasks, in directory order
+            List<Object> parts = new ArrayList<>(children.size());
+            for(Path child: children) {
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(child, BasicFileAttributes.class);
+                } catch(IOException ex) {
+                    log.warn("unable to scan "+child+": "+ex.getMessage());
+                    continue;
                 }
-            } else {
-                Path rel = basePath.relativize(child.toPath());
-                boolean acceptable = false;
-                for(PathMatcher pm:includeMatchers) {
-                    if(pm.matches(rel)) {
-                        acceptable = true;
-                        break;
+                Path rel = basePath.relativize(child.normalize());
+                if(attrs.isDirectory()) {
+                    if(!isScanned(rel)) {
+                        log.debug("skipping "+rel);
+                    } else if(isLoop(attrs.fileKey())) {
+                        log.warn(child+" is a link to one of its parents, it is not scanned");
+                    } else {
+                        ScanTask task = new ScanTask(this, child, attrs.fileKey());
+                        task.fork();
+                        parts.add(task);
                     }
-                }
-                if(acceptable) {
-                    for(PathMatcher pm:excludeMatchers) {
-                        if(pm.matches(rel)) {
-                            acceptable = false;
-                            break;
-                        }
+                } else {
+                    boolean accepted = isAccepted(rel);
+                    notifyFile(rel, accepted);
+                    if(accepted) {
+                        if(consumer!=null) consumer.accept(rel);
+                        else parts.add(rel);
                     }
                 }
-                if(acceptable) {
-                    ret.add(rel);
-                    if(listener!=null)
-                        listener.fileAccepted(rel);
+            }
+            List<Path> ret = new ArrayList<>();
+            for(Object part: parts) {
+                if(part instanceof ScanTask) {
+                    ret.addAll(((ScanTask)part).join());
                 } else {
-                    if(listener!=null) listener.fileRejected(rel);
+                    ret.add((Path)part);
+                }
+            }
+            return ret;
+        }
+
+        private boolean isLoop(Object key) {
+            if(key==null) return false;
+            for(ScanTask task=this; task!=null; task=task.parent) {
+                if(key.equals(task.fileKey)) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Returns the directories a scan walks into, from {@code dir} : {@code dir}
+     * itself, and its sub-directories that are not excluded and where an
+     * include may match. Links to a parent directory are not followed.
+     * @param dir The base directory, or one of its sub-directories
+     * @return The directories, {@code dir} first, or an empty list if a scan does not walk into {@code dir}
+     */
+    public List<Path> getScannedDirectories(final Path dir) {
+        if(includeMatcher==null) prepareFilters();
+        final Path base = basePath.toAbsolutePath();
+        final Path start = dir.toAbsolutePath().normalize();
+        final List<Path> ret = new ArrayList<>();
+        if(!start.startsWith(base)) return ret;
+        Path rel = base.relativize(start);
+        for(int i=1; i<=rel.getNameCount() && !start.equals(base); i++) {
+            if(!isScanned(rel.subpath(0, i))) return ret;
+        }
+        try {
+            Files.walkFileTree(start, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path child, BasicFileAttributes attrs) {
+                    if(!child.equals(start) && !isScanned(base.relativize(child.normalize()))) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    ret.add(child);
+                    return FileVisitResult.CONTINUE;
+                }
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                    if(ex instanceof FileSystemLoopException) {
+                        log.warn(file+" is a link to one of its parents, it is not scanned");
+                    } else {
+                        log.warn("unable to scan "+file+": "+ex.getMessage());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch(IOException ex) {
+            log.warn("unable to scan "+dir+": "+ex.getMessage());
+        }
+        return ret;
+    }
+
+    /**
+     * Returns {@code true} if a file is accepted by includes and excludes
+     * @param rel The file path, relative to base directory
+     * @return {@code true} if a scan would return {@code rel}
+     */
+    public boolean isAccepted(Path rel) {
+        if(includeMatcher==null) prepareFilters();
+        return includeMatcher.matches(rel) && !excludeMatcher.matches(rel);
+    }
+
+    /**
+     * Returns {@code true} if a scan walks into directory {@code rel}
+     */
+    private boolean isScanned(Path rel) {
+        return isToRecurse && !isExcludedDir(rel) && mayContainIncludes(rel);
+    }
+
+    private boolean isExcludedDir(Path rel) {
+        return excludedDirMatcher.matches(rel);
+    }
+
+    /**
+     * Returns {@code false} only if no include may match a file under {@code rel}.
+     */
+    private boolean mayContainIncludes(Path rel) {
+        for(Pattern[] segments: includeSegments) {
+            if(segments==null) return true;
+            boolean mayMatch = true;
+            for(int i=0; i<rel.getNameCount(); i++) {
+                if(i>=segments.length-1) {
+                    // pattern has no more directory segment
+                    mayMatch = false;
+                    break;
+                }
+                if(segments[i]==null) break;
+                if(!segments[i].matcher(rel.getName(i).toString()).matches()) {
+                    mayMatch = false;
+                    break;
                 }
             }
+            if(mayMatch) return true;
+        }
+        return false;
+    }
+
+    private static Pattern[] compileSegments(String[] segments) {
+        if(segments==null) return null;
+        Pattern[] ret = new Pattern[segments.length];
+        for(int i=0; i<segments.length; i++) {
+            ret[i] = segments[i].contains("**") ? null : Pattern.compile(GlobMatcher.toRegex(segments[i]));
         }
-        
         return ret;
     }
-    
+
+    /**
+     * Splits a glob include into path segments.
+     * @return The segments, or {@code null} if include can not be split
+     */
+    private static String[] splitInclude(String include) {
+        if(include.startsWith("regex:")) return null;
+        String glob = include.startsWith("glob:") ? include.substring(5) : include;
+        // a group may contain separators
+        if(glob.contains("{") || glob.contains("[") || glob.contains("\\")) return null;
+        return glob.split("/", -1);
+    }
+
     /**
      * Return the directory where scan happens in
      * @return The base directory of scan
@@ -187,7 +423,8 @@ public class DirectoryScanner {
     public File getBaseDir() { return baseDir; }
 
     /**
-     * Sets the {@link ScanListener} to use
+     * Sets the {@link ScanListener} to use. Listener is notified from scan
+     * threads, calls are synchronized on listener.
      * @param listener The listener to be notified
      */
     public void setScanListener(ScanListener listener) {
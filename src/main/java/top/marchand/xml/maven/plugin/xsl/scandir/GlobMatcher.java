@@ -0,0 +1,294 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.scandir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A set of glob (or {@code regex:}) patterns, compiled into a single matcher.
+ * <p>Patterns with a usual form are matched through hash lookups, whatever
+ * the number of patterns :</p>
+ * <ul>
+ * <li>{@code a/b.xsl} : the relative path</li>
+ * <li>{@code *.xsl}, {@code **}{@code /*.xsl}, {@code **}{@code /.#*}, {@code **}{@code /CVS} : the file name, its suffixes or its prefixes</li>
+ * <li>{@code **}{@code /CVS/**}, {@code a/b/**} : the parent directories</li>
+ * </ul>
+ * <p>All other patterns are joined into one regular expression. Matching
+ * is the same than {@link java.nio.file.FileSystem#getPathMatcher(java.lang.String)}
+ * with {@code /} as separator.</p>
+ * <p>Matched paths are relative to the base directory of a scan, so a leading
+ * {@code /} of a glob only anchors it there : {@code /.git/**} is the same as
+ * {@code .git/**}. See {@link #normalize(java.lang.String) }.</p>
+ * @author cmarchand
+ */
+public class GlobMatcher {
+    private final Set<String> paths = new HashSet<>();
+    // file name patterns, for top-level files (*.xsl) and for files in a sub-directory (**/*.xsl)
+    private final NamePatterns topLevel = new NamePatterns();
+    private final NamePatterns nested = new NamePatterns();
+    // **/dir/** and dir/path/**
+    private final Set<String> dirNames = new HashSet<>();
+    private final Set<String> dirPaths = new HashSet<>();
+    private final Pattern others;
+    private final boolean empty;
+
+    /**
+     * Compiles {@code patterns}
+     * @param patterns The patterns, globs by default, or prefixed by {@code glob:} or {@code regex:}
+     */
+    public GlobMatcher(final List<String> patterns) {
+        super();
+        List<String> regexes = new ArrayList<>();
+        for(String raw: patterns) {
+            String pattern = normalize(raw);
+            if(pattern.startsWith("regex:")) {
+                regexes.add(pattern.substring(6));
+            } else {
+                String glob = pattern.startsWith("glob:") ? pattern.substring(5) : pattern;
+                if(!addFastPath(glob)) regexes.add(toRegex(glob));
+            }
+        }
+        if(regexes.isEmpty()) {
+            others = null;
+        } else {
+            StringBuilder sb = new StringBuilder();
+            for(String regex: regexes) {
+                if(sb.length()>0) sb.append('|');
+                sb.append("(?:").append(regex).append(')');
+            }
+            others = Pattern.compile(sb.toString());
+        }
+        empty = patterns.isEmpty();
+    }
+
+    /**
+     * Returns {@code true} if one of the patterns matches {@code rel}
+     * @param rel The relative path to test
+     * @return {@code true} if {@code rel} matches
+     */
+    public boolean matches(final Path rel) {
+        if(empty) return false;
+        int count = rel.getNameCount();
+        StringBuilder sb = new StringBuilder();
+        for(int i=0; i<count; i++) {
+            if(i>0) sb.append('/');
+            sb.append(rel.getName(i).toString());
+            // sb is a parent directory
+            if(i<count-1) {
+                if(dirPaths.contains(sb.toString())) return true;
+                if(i>0 && dirNames.contains(rel.getName(i).toString())) return true;
+            }
+        }
+        String path = sb.toString();
+        if(paths.contains(path)) return true;
+        String name = rel.getFileName()==null ? "" : rel.getFileName().toString();
+        if((count==1 ? topLevel : nested).matches(name)) return true;
+        return others!=null && others.matcher(path).matches();
+    }
+
+    /**
+     * Returns {@code true} if there is no pattern
+     * @return {@code true} if no pattern has been given
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Removes the leading {@code /} of a glob pattern : relative paths never
+     * start with one. Regular expressions are kept as they are.
+     * @param pattern The pattern, a glob by default, or prefixed by {@code glob:} or {@code regex:}
+     * @return The pattern, with the same prefix, and without leading {@code /}
+     */
+    static String normalize(final String pattern) {
+        if(pattern.startsWith("regex:")) return pattern;
+        String prefix = pattern.startsWith("glob:") ? "glob:" : "";
+        int start = prefix.length();
+        while(start<pattern.length() && pattern.charAt(start)=='/') start++;
+        return start==prefix.length() ? pattern : prefix+pattern.substring(start);
+    }
+
+    private boolean addFastPath(final String glob) {
+        if(isLiteral(glob)) {
+            paths.add(glob);
+            return true;
+        }
+        if(glob.startsWith("**/") && glob.endsWith("/**") && glob.length()>6) {
+            String name = glob.substring(3, glob.length()-3);
+            if(isLiteral(name) && !name.contains("/")) {
+                dirNames.add(name);
+                return true;
+            }
+        }
+        if(glob.endsWith("/**") && isLiteral(glob.substring(0, glob.length()-3))) {
+            dirPaths.add(glob.substring(0, glob.length()-3));
+            return true;
+        }
+        if(glob.startsWith("**/")) {
+            return nested.add(glob.substring(3));
+        }
+        return topLevel.add(glob);
+    }
+
+    private static boolean isLiteral(final String s) {
+        for(int i=0; i<s.length(); i++) {
+            switch(s.charAt(i)) {
+                case '*': case '?': case '[': case '{': case '\\': return false;
+                default:
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts a glob to a regular expression, with the same rules than
+     * {@link java.nio.file.FileSystem#getPathMatcher(java.lang.String)}.
+     * @param glob The glob
+     * @return The regular expression
+     */
+    static String toRegex(final String glob) {
+        StringBuilder regex = new StringBuilder();
+        boolean inGroup = false;
+        int i = 0;
+        while(i<glob.length()) {
+            char c = glob.charAt(i++);
+            switch(c) {
+                case '\\':
+                    if(i==glob.length()) throw new IllegalArgumentException("No character to escape in "+glob);
+                    appendQuoted(regex, glob.charAt(i++));
+                    break;
+                case '*':
+                    if(i<glob.length() && glob.charAt(i)=='*') {
+                        regex.append(".*");
+                        i++;
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                    break;
+                case '?':
+                    regex.append("[^/]");
+                    break;
+                case '[':
+                    regex.append("[[^/]&&[");
+                    if(i<glob.length() && glob.charAt(i)=='^') {
+                        regex.append("\\^");
+                        i++;
+                    } else if(i<glob.length() && glob.charAt(i)=='!') {
+                        regex.append('^');
+                        i++;
+                    }
+                    boolean closed = false;
+                    while(i<glob.length()) {
+                        char b = glob.charAt(i++);
+                        if(b==']') {
+                            closed = true;
+                            break;
+                        }
+                        if(b=='/') throw new IllegalArgumentException("Explicit 'name separator' in class in "+glob);
+                        if(b=='\\' || b=='[' || b=='&' && i<glob.length() && glob.charAt(i)=='&') regex.append('\\');
+                        regex.append(b);
+                    }
+                    if(!closed) throw new IllegalArgumentException("Missing ']' in "+glob);
+                    regex.append("]]");
+                    break;
+                case '{':
+                    if(inGroup) throw new IllegalArgumentException("Cannot nest groups in "+glob);
+                    regex.append("(?:(?:");
+                    inGroup = true;
+                    break;
+                case '}':
+                    if(inGroup) {
+                        regex.append("))");
+                        inGroup = false;
+                    } else {
+                        regex.append('}');
+                    }
+                    break;
+                case ',':
+                    if(inGroup) regex.append(")|(?:");
+                    else regex.append(',');
+                    break;
+                default:
+                    appendQuoted(regex, c);
+            }
+        }
+        if(inGroup) throw new IllegalArgumentException("Missing '}' in "+glob);
+        return regex.toString();
+    }
+
+    private static void appendQuoted(final StringBuilder regex, final char c) {
+        if(".^$+{[]|()\\".indexOf(c)>=0) regex.append('\\');
+        regex.append(c);
+    }
+
+    /**
+     * File name patterns : literal names, {@code *suffix} and {@code prefix*}
+     */
+    private static class NamePatterns {
+        private final Set<String> names = new HashSet<>();
+        private final Set<String> suffixes = new HashSet<>();
+        private final Set<String> prefixes = new HashSet<>();
+        private int maxSuffix = 0;
+        private int maxPrefix = 0;
+
+        boolean add(final String glob) {
+            if(glob.contains("/")) return false;
+            if(isLiteral(glob)) {
+                names.add(glob);
+                return true;
+            }
+            if(glob.startsWith("*") && isLiteral(glob.substring(1))) {
+                suffixes.add(glob.substring(1));
+                maxSuffix = Math.max(maxSuffix, glob.length()-1);
+                return true;
+            }
+            if(glob.endsWith("*") && isLiteral(glob.substring(0, glob.length()-1))) {
+                prefixes.add(glob.substring(0, glob.length()-1));
+                maxPrefix = Math.max(maxPrefix, glob.length()-1);
+                return true;
+            }
+            return false;
+        }
+
+        boolean matches(final String name) {
+            if(names.contains(name)) return true;
+            int len = name.length();
+            for(int l=Math.min(len, maxSuffix); l>=0 && !suffixes.isEmpty(); l--) {
+                if(suffixes.contains(name.substring(len-l))) return true;
+            }
+            for(int l=Math.min(len, maxPrefix); l>=0 && !prefixes.isEmpty(); l--) {
+                if(prefixes.contains(name.substring(0, l))) return true;
+            }
+            return false;
+        }
+    }
+}
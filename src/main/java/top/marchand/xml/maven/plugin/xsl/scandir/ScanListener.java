@@ -30,7 +30,9 @@ import java.io.File;
 import java.nio.file.Path;
 
 /**
- * This is notified of various scan events
+ * This is notified of various scan events.
+ * Events may come from several threads, but {@link DirectoryScanner} never
+ * calls a listener concurrently : calls are synchronized on the listener.
  * @author <a href="christophe@marchand.top">Christophe Marchand</a>
  */
 public interface ScanListener {
@@ -0,0 +1,123 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.transform.Source;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XsltCompiler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link CompilerEngine}
+ * @author cmarchand
+ */
+public class CompilerEngineTest {
+    private static final String XSL = "http://www.w3.org/1999/XSL/Transform";
+    @Rule
+    public TemporaryFolder workDir = new TemporaryFolder();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final List<CompilationUnit> units = new ArrayList<>();
+    private CompilerEngine engine;
+
+    @Before
+    public void before() throws Exception {
+        File src = workDir.newFolder("src");
+        File target = workDir.newFolder("target");
+        for(int i=0; i<4; i++) {
+            units.add(unit(src, target, "module"+i, "<xsl:stylesheet xmlns:xsl='"+XSL+"' version='3.0'><xsl:template match='/'/></xsl:stylesheet>"));
+        }
+        units.add(unit(src, target, "pack", "<xsl:package xmlns:xsl='"+XSL+"' name='http://example.org/pack' package-version='1.0' version='3.0'/>"));
+        // Saxon-HE can not export : compiled files are written by the test
+        engine = new CompilerEngine() {
+            @Override
+            protected void compileModule(final Source source, final File targetFile, final XsltCompiler compiler) throws SaxonApiException {
+                compiled(targetFile);
+            }
+            @Override
+            protected void compilePackage(final Source source, final File targetFile, final XsltCompiler compiler) throws SaxonApiException {
+                compiled(targetFile);
+            }
+        };
+        engine.initSaxon();
+    }
+
+    @After
+    public void after() {
+        engine.closeSaxon();
+    }
+
+    private CompilationUnit unit(File src, File target, String name, String content) throws IOException {
+        File sourceFile = new File(src, name+".xsl");
+        Files.write(sourceFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return CompilationUnit.fromFile(sourceFile, new File(target, name+".sef"), name+".xsl");
+    }
+
+    private void compiled(File targetFile) throws SaxonApiException {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+            // long enough for compilations to overlap
+            Thread.sleep(100);
+            Files.write(targetFile.toPath(), new byte[] { 1 });
+        } catch(InterruptedException | IOException ex) {
+            throw new SaxonApiException(ex);
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    @Test
+    public void testStreamingRespectsThreads() {
+        assertFalse(engine.compileUnits(units.iterator(), 1));
+        assertEquals("units compiled at the same time", 1, maxRunning.get());
+        for(CompilationUnit unit: units) {
+            assertTrue(unit.getTargetFile().getName(), unit.getTargetFile().isFile());
+        }
+    }
+
+    @Test
+    public void testStreamingWithWorkers() {
+        assertFalse(engine.compileUnits(units.iterator(), 2));
+        assertTrue("units compiled at the same time", maxRunning.get()<=2);
+        for(CompilationUnit unit: units) {
+            assertTrue(unit.getTargetFile().getName(), unit.getTargetFile().isFile());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.cache;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A HTTP cache server, that stores artifacts in a local directory.
+ * It stands for a real remote cache in tests : it supports {@code GET} and
+ * {@code PUT} of {@code /cache/<key>}, on a random port of loopback interface.
+ * @author cmarchand
+ */
+public class FileArtifactCacheServer implements AutoCloseable {
+    private final HttpServer server;
+    private final Path directory;
+
+    /**
+     * Starts a server
+     * @param directory The directory where artifacts are stored
+     * @throws IOException If server can not be started
+     */
+    public FileArtifactCacheServer(final File directory) throws IOException {
+        super();
+        this.directory = directory.toPath();
+        Files.createDirectories(this.directory);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/cache/", this::handle);
+        server.start();
+    }
+
+    /**
+     * The URL to use as cache URL
+     * @return The cache URL
+     */
+    public String getUrl() {
+        return "http://"+server.getAddress().getHostString()+":"+server.getAddress().getPort()+"/cache/";
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            String key = exchange.getRequestURI().getPath().substring("/cache/".length());
+            if(key.isEmpty() || key.contains("/") || key.contains("..")) {
+                send(exchange, 400, "Bad request");
+                return;
+            }
+            Path file = directory.resolve(key);
+            switch(exchange.getRequestMethod()) {
+                case "GET":
+                    if(!Files.isRegularFile(file)) {
+                        send(exchange, 404, "Not found");
+                    } else {
+                        exchange.sendResponseHeaders(200, Files.size(file));
+                        try(OutputStream os = exchange.getResponseBody()) {
+                            Files.copy(file, os);
+                        }
+                    }
+                    break;
+                case "PUT":
+                    Path tmp = Files.createTempFile(directory, key, ".tmp");
+                    try(InputStream is = exchange.getRequestBody()) {
+                        Files.copy(is, tmp, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+                    send(exchange, 201, "Created");
+                    break;
+                default:
+                    send(exchange, 405, "Method not allowed");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void send(final HttpExchange exchange, final int status, final String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, body.length);
+        try(OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+import org.junit.Before;
+
+/**
+ * Tests {@link HttpArtifactCache}, against a {@link FileArtifactCacheServer}
+ * @author cmarchand
+ */
+public class HttpArtifactCacheTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private static final String KEY = "cc0000000000000000000000000000000000000000000000000000000000000003";
+    private Log log;
+    private File workDir;
+    private File source;
+
+    @Before
+    public void before() throws IOException {
+        log = new DefaultLog(new ConsoleLogger(ConsoleLogger.LEVEL_WARN, "TEST"));
+        workDir = temporaryFolder.newFolder("httpCache");
+        source = new File(workDir, "source.sef");
+        Files.write(source.toPath(), "compiled".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testPutAndGet() throws IOException {
+        try(FileArtifactCacheServer server = new FileArtifactCacheServer(new File(workDir, "server"))) {
+            HttpArtifactCache cache = new HttpArtifactCache(server.getUrl(), 1000, 1000, false, log);
+            File target = new File(workDir, "out/target.sef");
+            assertFalse("cache should be empty", cache.fetch(KEY, target));
+            cache.store(KEY, source);
+            assertTrue(cache.fetch(KEY, target));
+            assertEquals("compiled", new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testReadOnly() throws IOException {
+        try(FileArtifactCacheServer server = new FileArtifactCacheServer(new File(workDir, "server"))) {
+            HttpArtifactCache cache = new HttpArtifactCache(server.getUrl(), 1000, 1000, true, log);
+            cache.store(KEY, source);
+            assertFalse("nothing should have been stored", cache.fetch(KEY, new File(workDir, "target.sef")));
+        }
+    }
+
+    @Test
+    public void testTiered() throws IOException {
+        try(FileArtifactCacheServer server = new FileArtifactCacheServer(new File(workDir, "server"))) {
+            new HttpArtifactCache(server.getUrl(), 1000, 1000, false, log).store(KEY, source);
+            LocalArtifactCache local = new LocalArtifactCache(new File(workDir, "local"), 0, false, log);
+            TieredArtifactCache cache = new TieredArtifactCache(local, new HttpArtifactCache(server.getUrl(), 1000, 1000, false, log));
+            assertTrue(cache.fetch(KEY, new File(workDir, "1.sef")));
+            assertTrue("remote artifact should have been stored locally", local.fetch(KEY, new File(workDir, "2.sef")));
+        }
+    }
+
+    @Test
+    public void testServerDown() throws IOException {
+        String url;
+        try(FileArtifactCacheServer server = new FileArtifactCacheServer(new File(workDir, "server"))) {
+            url = server.getUrl();
+        }
+        HttpArtifactCache cache = new HttpArtifactCache(url, 500, 500, false, log);
+        assertFalse("an unreachable cache is a cache miss", cache.fetch(KEY, new File(workDir, "target.sef")));
+        cache.store(KEY, source);
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+import org.junit.Before;
+
+/**
+ * Tests {@link LocalArtifactCache}
+ * @author cmarchand
+ */
+public class LocalArtifactCacheTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private static final String KEY1 = "aa0000000000000000000000000000000000000000000000000000000000000001";
+    private static final String KEY2 = "bb0000000000000000000000000000000000000000000000000000000000000002";
+    private Log log;
+    private File workDir;
+
+    @Before
+    public void before() throws IOException {
+        log = new DefaultLog(new ConsoleLogger(ConsoleLogger.LEVEL_WARN, "TEST"));
+        workDir = temporaryFolder.newFolder("artifactCache");
+    }
+
+    private File createFile(String name, int size) throws IOException {
+        File f = new File(workDir, name);
+        Files.write(f.toPath(), new String(new char[size]).replace('\0', 'x').getBytes(StandardCharsets.UTF_8));
+        return f;
+    }
+
+    @Test
+    public void testStoreAndFetch() throws IOException {
+        LocalArtifactCache cache = new LocalArtifactCache(new File(workDir, "cache"), 0, false, log);
+        File target = new File(workDir, "out/target.sef");
+        assertFalse("cache should be empty", cache.fetch(KEY1, target));
+        cache.store(KEY1, createFile("source.sef", 10));
+        assertTrue(cache.fetch(KEY1, target));
+        assertEquals(10, target.length());
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        File cacheDir = new File(workDir, "cache");
+        LocalArtifactCache cache = new LocalArtifactCache(cacheDir, 150, false, log);
+        cache.store(KEY1, createFile("first.sef", 100));
+        cache.store(KEY2, createFile("second.sef", 100));
+        // KEY1 is the least recently used
+        Files.setLastModifiedTime(new File(cacheDir, "aa/"+KEY1).toPath(), FileTime.fromMillis(1000));
+        cache.close();
+        assertFalse("least recently used should have been evicted", cache.fetch(KEY1, new File(workDir, "1.sef")));
+        assertTrue(cache.fetch(KEY2, new File(workDir, "2.sef")));
+    }
+
+    @Test
+    public void testFetchRefreshesDate() throws IOException {
+        File cacheDir = new File(workDir, "cache");
+        for(boolean hardLinks: new boolean[] { false, true }) {
+            LocalArtifactCache cache = new LocalArtifactCache(cacheDir, 0, hardLinks, log);
+            cache.store(KEY1, createFile("source.sef", 10));
+            File cached = new File(cacheDir, "aa/"+KEY1);
+            Files.setLastModifiedTime(cached.toPath(), FileTime.fromMillis(1000));
+            assertTrue(cache.fetch(KEY1, new File(workDir, "out/"+hardLinks+".sef")));
+            assertTrue("fetch should refresh date with hardLinks="+hardLinks, cached.lastModified()>1000);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.daemon;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link DaemonProtocol}
+ * @author cmarchand
+ */
+public class DaemonProtocolTest {
+
+    public enum Mode { FAST, SAFE }
+
+    public static class Options {
+        private String name = "default";
+        private boolean flag;
+        private Integer count;
+        private double ratio;
+        private Mode mode = Mode.FAST;
+        private List<String> list;
+    }
+
+    @Test
+    public void testOptionsRoundTrip() throws ReflectiveOperationException {
+        Options options = new Options();
+        options.name = null;
+        options.flag = true;
+        options.count = 3;
+        options.ratio = 0.5;
+        options.mode = Mode.SAFE;
+        assertTrue(DaemonProtocol.getUntransmittableOptions(options).isEmpty());
+        Properties message = new Properties();
+        DaemonProtocol.writeOptions(message, options);
+        Options read = DaemonProtocol.readOptions(message, Options.class);
+        assertNull("a null option is not replaced by its default value", read.name);
+        assertTrue(read.flag);
+        assertEquals(Integer.valueOf(3), read.count);
+        assertEquals(0.5, read.ratio, 0);
+        assertEquals(Mode.SAFE, read.mode);
+    }
+
+    @Test
+    public void testUntransmittableOptions() {
+        Options options = new Options();
+        options.list = Collections.singletonList("x");
+        assertEquals(Collections.singletonList("list"), DaemonProtocol.getUntransmittableOptions(options));
+        try {
+            DaemonProtocol.writeOptions(new Properties(), options);
+            fail("options must not be sent without list");
+        } catch(IllegalArgumentException ex) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.deps;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+
+/**
+ * Tests {@link DependencyGraph}
+ * @author cmarchand
+ */
+public class DependencyGraphTest {
+    private static File baseDir;
+    private static final HrefResolver RESOLVER = (href, base) -> URI.create(base).resolve(href).toString();
+
+    @BeforeClass
+    public static void beforeClass() {
+        baseDir = new File("src/test/resources/DependencyGraph").getAbsoluteFile();
+    }
+
+    private static String uri(String path) {
+        return new File(baseDir, path).toURI().toString();
+    }
+
+    private static DependencyGraph build() {
+        return build(RESOLVER);
+    }
+
+    private static DependencyGraph build(HrefResolver resolver) {
+        List<String> roots = Arrays.asList(uri("a.xsl"), uri("b.xsl"), uri("p.xsl"), uri("simplified.xsl"));
+        return DependencyGraph.build(roots, resolver, null);
+    }
+
+    @Test
+    public void testDeclarations() {
+        DependencyGraph graph = build();
+        Set<String> deps = graph.getDependencies(uri("a.xsl"));
+        assertEquals("a.xsl imports util.xsl and includes inc.xsl", 2, deps.size());
+        assertTrue(deps.contains(uri("lib/util.xsl")));
+        assertTrue(deps.contains(uri("inc.xsl")));
+        assertTrue("a simplified stylesheet has no dependency", graph.getDependencies(uri("simplified.xsl")).isEmpty());
+    }
+
+    @Test
+    public void testAdd() {
+        final AtomicInteger built = new AtomicInteger();
+        build((href, base) -> { built.incrementAndGet(); return RESOLVER.resolve(href, base); });
+        final AtomicInteger added = new AtomicInteger();
+        HrefResolver counting = (href, base) -> { added.incrementAndGet(); return RESOLVER.resolve(href, base); };
+        DependencyGraph graph = new DependencyGraph();
+        for(String root: Arrays.asList(uri("a.xsl"), uri("b.xsl"), uri("p.xsl"), uri("simplified.xsl"))) {
+            graph.add(Collections.singletonList(root), counting, null);
+            assertTrue(graph.contains(root));
+        }
+        assertTrue("b.xsl uses p.xsl, that has been added after", graph.isComplete(uri("b.xsl")));
+        assertEquals("shared modules are read once", built.get(), added.get());
+        assertEquals(build().size(), graph.size());
+        assertEquals(build().getClosure(uri("b.xsl")), graph.getClosure(uri("b.xsl")));
+    }
+
+    @Test
+    public void testPackages() {
+        DependencyGraph graph = build();
+        assertTrue(graph.isPackage(uri("p.xsl")));
+        assertFalse(graph.isPackage(uri("b.xsl")));
+        assertEquals("http://example.org/p", graph.getPackageName(uri("p.xsl")));
+        assertNull(graph.getPackageName(uri("b.xsl")));
+        assertEquals("1.0", graph.getPackageVersion(uri("p.xsl")));
+        assertEquals(1, graph.getUsedPackages(uri("b.xsl")).size());
+        assertTrue("b.xsl reaches util.xsl through package", graph.getClosure(uri("b.xsl")).contains(uri("lib/util.xsl")));
+        assertTrue(graph.isComplete(uri("b.xsl")));
+    }
+
+    @Test
+    public void testDependents() {
+        DependencyGraph graph = build();
+        Set<String> dependents = graph.getDependents(Arrays.asList(uri("lib/util.xsl")));
+        assertTrue(dependents.containsAll(Arrays.asList(uri("a.xsl"), uri("b.xsl"), uri("p.xsl"))));
+        assertFalse(dependents.contains(uri("simplified.xsl")));
+        assertFalse(graph.getDependents(Arrays.asList(uri("inc.xsl"))).contains(uri("b.xsl")));
+    }
+
+    @Test
+    public void testPackageLevels() {
+        DependencyGraph graph = build();
+        int[] levels = graph.getPackageLevels(Arrays.asList(uri("b.xsl"), uri("a.xsl"), null, uri("p.xsl")));
+        assertArrayEquals("b.xsl must be compiled after p.xsl", new int[] {1, 0, 0, 0}, levels);
+        levels = graph.getPackageLevels(Arrays.asList(uri("b.xsl"), uri("a.xsl")));
+        assertArrayEquals("p.xsl is not compiled, b.xsl does not wait for it", new int[] {0, 0}, levels);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File file = File.createTempFile("dependencies", ".properties");
+        file.deleteOnExit();
+        DependencyGraph graph = build();
+        graph.save(file);
+        DependencyGraph loaded = DependencyGraph.load(file);
+        assertTrue(loaded.isPackage(uri("p.xsl")));
+        assertEquals("1.0", loaded.getPackageVersion(uri("p.xsl")));
+        assertEquals(graph.getClosure(uri("b.xsl")), loaded.getClosure(uri("b.xsl")));
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.extensions;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link DescriptorProbe}
+ * @author cmarchand
+ */
+public class DescriptorProbeTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private Log log;
+    private File workDir;
+
+    @Before
+    public void before() throws IOException {
+        log = new DefaultLog(new ConsoleLogger(ConsoleLogger.LEVEL_WARN, "TEST"));
+        workDir = temporaryFolder.newFolder("descriptorProbe");
+    }
+
+    private File createJar(String name, String... entries) throws IOException {
+        File jar = new File(workDir, name);
+        try(ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(jar))) {
+            for(String entry: entries) {
+                zos.putNextEntry(new ZipEntry(entry));
+                zos.write(entry.getBytes("UTF-8"));
+                zos.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    @Test
+    public void testProbe() throws IOException {
+        File ext = createJar("ext.jar", "META-INF/MANIFEST.MF", DescriptorProbe.DESCRIPTOR);
+        File other = createJar("other.jar", "META-INF/MANIFEST.MF", "a/B.class");
+        File ext2 = createJar("ext2.jar", DescriptorProbe.DESCRIPTOR);
+        ExtensionDiscovery discovery = new ExtensionDiscovery("key");
+        Set<File> found = new DescriptorProbe(new ExtensionDiscovery(null), discovery, log).probe(Arrays.asList(ext2, other, ext), 2);
+        assertEquals(Arrays.asList(ext2, ext), Arrays.asList(found.toArray()));
+        assertEquals(Boolean.TRUE, discovery.hasDescriptor(ext));
+        assertEquals(Boolean.FALSE, discovery.hasDescriptor(other));
+    }
+
+    @Test
+    public void testKnownJarsAreNotOpened() throws IOException {
+        File ext = createJar("ext.jar", DescriptorProbe.DESCRIPTOR);
+        ExtensionDiscovery previous = new ExtensionDiscovery("key");
+        // previous result is trusted while size and date are unchanged
+        previous.recordProbe(ext, false);
+        Set<File> found = new DescriptorProbe(previous, new ExtensionDiscovery("key"), log).probe(Arrays.asList(ext), 1);
+        assertTrue(found.isEmpty());
+    }
+
+    @Test
+    public void testUnreadableJar() throws IOException {
+        File broken = new File(workDir, "broken.jar");
+        Files.write(broken.toPath(), "not a zip".getBytes("UTF-8"));
+        ExtensionDiscovery discovery = new ExtensionDiscovery("key");
+        Set<File> found = new DescriptorProbe(new ExtensionDiscovery(null), discovery, new DefaultLog(new ConsoleLogger(ConsoleLogger.LEVEL_DISABLED, "TEST"))).probe(Arrays.asList(broken), 1);
+        assertTrue(found.isEmpty());
+        assertNull("unreadable jar should be probed again", discovery.hasDescriptor(broken));
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.extensions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link ExtensionDiscovery}
+ * @author cmarchand
+ */
+public class ExtensionDiscoveryTest {
+    @Rule
+    public TemporaryFolder workDir = new TemporaryFolder();
+
+    private File write(String name, String content) throws IOException {
+        File f = new File(workDir.getRoot(), name);
+        Files.write(f.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return f;
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        File ext = write("ext.jar", "ext");
+        File other = write("other.jar", "other");
+        List<String> classpath = Arrays.asList(ext.getAbsolutePath(), other.getAbsolutePath());
+        String key = ExtensionDiscovery.computeClasspathKey(classpath);
+        ExtensionDiscovery discovery = new ExtensionDiscovery(key);
+        discovery.recordProbe(ext, true);
+        discovery.recordProbe(other, false);
+        discovery.setAddedJars(Arrays.asList(ext.toURI().toString()));
+        discovery.setFunctionClasses(Arrays.asList("a.B", "a.C"));
+        File file = new File(workDir.getRoot(), "target/extensions.properties");
+        discovery.save(file);
+        ExtensionDiscovery loaded = ExtensionDiscovery.load(file);
+        assertTrue(loaded.isUpToDate(key));
+        assertEquals(Arrays.asList(ext.toURI().toString()), loaded.getAddedJars());
+        assertEquals(Arrays.asList("a.B", "a.C"), loaded.getFunctionClasses());
+        assertEquals(Boolean.TRUE, loaded.hasDescriptor(ext));
+        assertEquals(Boolean.FALSE, loaded.hasDescriptor(other));
+        assertNull("never probed", loaded.hasDescriptor(new File(workDir.getRoot(), "unknown.jar")));
+    }
+
+    @Test
+    public void testClasspathChange() throws IOException {
+        File ext = write("ext.jar", "ext");
+        File other = write("other.jar", "other");
+        List<String> classpath = Arrays.asList(ext.getAbsolutePath(), other.getAbsolutePath());
+        String key = ExtensionDiscovery.computeClasspathKey(classpath);
+        ExtensionDiscovery discovery = new ExtensionDiscovery(key);
+        discovery.recordProbe(ext, true);
+        discovery.recordProbe(other, false);
+        File file = new File(workDir.getRoot(), "extensions.properties");
+        discovery.save(file);
+        assertEquals(key, ExtensionDiscovery.computeClasspathKey(classpath));
+        assertNotEquals("another element", key, ExtensionDiscovery.computeClasspathKey(Arrays.asList(ext.getAbsolutePath())));
+        write("other.jar", "other, changed");
+        String newKey = ExtensionDiscovery.computeClasspathKey(classpath);
+        assertNotEquals("a jar has changed", key, newKey);
+        ExtensionDiscovery loaded = ExtensionDiscovery.load(file);
+        assertFalse(loaded.isUpToDate(newKey));
+        // unchanged jars are not probed again
+        assertEquals(Boolean.TRUE, loaded.hasDescriptor(ext));
+        assertNull(loaded.hasDescriptor(other));
+    }
+
+    @Test
+    public void testMissingFile() throws IOException {
+        String key = ExtensionDiscovery.computeClasspathKey(Arrays.asList(write("ext.jar", "ext").getAbsolutePath()));
+        ExtensionDiscovery loaded = ExtensionDiscovery.load(new File(workDir.getRoot(), "missing.properties"));
+        assertFalse(loaded.isUpToDate(key));
+        assertTrue(loaded.getAddedJars().isEmpty());
+        assertTrue(loaded.getFunctionClasses().isEmpty());
+        assertFalse(ExtensionDiscovery.load(null).isUpToDate(key));
+        File broken = write("broken.properties", "classpath="+key+"\njars=x\n");
+        assertFalse("an unreadable file is an empty discovery", ExtensionDiscovery.load(broken).isUpToDate(key));
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.incremental;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link BuildManifest}
+ * @author cmarchand
+ */
+public class BuildManifestTest {
+    @Rule
+    public TemporaryFolder workDir = new TemporaryFolder();
+
+    private File write(String name, String content) throws IOException {
+        File f = new File(workDir.getRoot(), name);
+        Files.write(f.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return f;
+    }
+
+    @Test
+    public void testRecordAndIsUpToDate() throws IOException {
+        File manifestFile = new File(workDir.getRoot(), "manifest.properties");
+        File source = write("a.xsl", "<a/>");
+        File module = write("b.xsl", "<b/>");
+        File target = write("a.sef", "sef");
+        BuildManifest manifest = new BuildManifest(manifestFile, "key");
+        assertFalse("not recorded", manifest.isUpToDate(target));
+        manifest.record(target, Arrays.asList(source.toURI().toString(), module.toURI().toString()), true);
+        assertTrue(manifest.isUpToDate(target));
+        assertTrue(manifest.isPackage(target));
+        manifest.save();
+        manifest = BuildManifest.load(manifestFile, "key");
+        assertTrue("should be up to date after reload", manifest.isUpToDate(target));
+        assertEquals(2, manifest.getInputs(target).size());
+        assertFalse("another configuration", BuildManifest.load(manifestFile, "other").isUpToDate(target));
+        write("b.xsl", "<b>changed</b>");
+        assertFalse("an input has changed", BuildManifest.load(manifestFile, "key").isUpToDate(target));
+        target.delete();
+        assertFalse("target does not exist", manifest.isUpToDate(target));
+    }
+
+    @Test
+    public void testRecordMissingInput() {
+        BuildManifest manifest = new BuildManifest(new File(workDir.getRoot(), "manifest.properties"), "key");
+        try {
+            manifest.record(new File(workDir.getRoot(), "a.sef"), Arrays.asList(new File(workDir.getRoot(), "missing.xsl").toURI().toString()), false);
+            fail("missing input should not be recorded");
+        } catch(IOException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRetain() throws IOException {
+        File source = write("a.xsl", "<a/>");
+        File target1 = write("1.sef", "sef");
+        File target2 = write("2.sef", "sef");
+        BuildManifest manifest = new BuildManifest(new File(workDir.getRoot(), "manifest.properties"), "key");
+        manifest.record(target1, Arrays.asList(source.toURI().toString()), false);
+        manifest.record(target2, Arrays.asList(source.toURI().toString()), false);
+        manifest.retain(Arrays.asList(target2));
+        assertFalse("removed from manifest", manifest.isUpToDate(target1));
+        assertTrue(manifest.getInputs(target1).isEmpty());
+        assertTrue(manifest.isUpToDate(target2));
+    }
+
+    @Test
+    public void testSizeAndDateShortcut() throws IOException {
+        File manifestFile = new File(workDir.getRoot(), "manifest.properties");
+        File source = write("a.xsl", "<a/>");
+        File target = write("a.sef", "sef");
+        BuildManifest manifest = new BuildManifest(manifestFile, "key");
+        manifest.record(target, Arrays.asList(source.toURI().toString()), false);
+        manifest.save();
+        // same size and date : content is not read again
+        long lastModified = source.lastModified();
+        write("a.xsl", "<b/>");
+        source.setLastModified(lastModified);
+        assertTrue(BuildManifest.load(manifestFile, "key").isUpToDate(target));
+        // another date : content is hashed
+        source.setLastModified(lastModified+10_000);
+        assertFalse(BuildManifest.load(manifestFile, "key").isUpToDate(target));
+    }
+
+    @Test
+    public void testConfigurationHash() throws IOException {
+        File manifestFile = new File(workDir.getRoot(), "manifest.properties");
+        File jar = write("ext.jar", "aaaa");
+        String uri = jar.toURI().toString();
+        BuildManifest manifest = BuildManifest.load(manifestFile);
+        String hash = manifest.getConfigurationHash(uri);
+        assertEquals(BuildManifest.hash(jar.toURI().toURL()), hash);
+        manifest.setConfigurationKey("key1");
+        manifest.save();
+        // same size and date : the hash is not computed again
+        long lastModified = jar.lastModified();
+        write("ext.jar", "bbbb");
+        jar.setLastModified(lastModified);
+        assertEquals(hash, BuildManifest.load(manifestFile).getConfigurationHash(uri));
+        // configuration hashes are kept whatever the configuration
+        manifest = BuildManifest.load(manifestFile, "key2");
+        assertEquals(hash, manifest.getConfigurationHash(uri));
+        jar.setLastModified(lastModified+10_000);
+        assertNotEquals(hash, BuildManifest.load(manifestFile).getConfigurationHash(uri));
+    }
+
+    @Test
+    public void testSaveReplacesFile() throws IOException {
+        File dir = workDir.newFolder("manifest");
+        File manifestFile = new File(dir, "manifest.properties");
+        File target = write("a.sef", "sef");
+        BuildManifest manifest = new BuildManifest(manifestFile, "key");
+        manifest.save();
+        manifest.record(target, Arrays.asList(write("a.xsl", "<a/>").toURI().toString()), false);
+        manifest.save();
+        assertTrue(BuildManifest.load(manifestFile, "key").isUpToDate(target));
+        // no temporary file is left
+        assertArrayEquals(new String[] { "manifest.properties" }, dir.list());
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.packages;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import top.marchand.xml.maven.plugin.xsl.packages.PackageArchive.PackageInfo;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link PackageArchive}
+ * @author cmarchand
+ */
+public class PackageArchiveTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private Path workDir;
+
+    @Before
+    public void before() throws IOException {
+        workDir = temporaryFolder.newFolder("packageArchive").toPath();
+    }
+
+    private File createFile(String name, String content) throws IOException {
+        Path p = workDir.resolve(name);
+        Files.createDirectories(p.getParent());
+        Files.write(p, content.getBytes(StandardCharsets.UTF_8));
+        return p.toFile();
+    }
+
+    @Test
+    public void testWriteAndExtract() throws IOException {
+        File second = createFile("classes/lib/b.sef", "b");
+        File first = createFile("classes/a.sef", "a");
+        File archive = workDir.resolve("target/packages.jar").toFile();
+        Map<File,PackageInfo> packages = new LinkedHashMap<>();
+        packages.put(second, new PackageInfo("http://example.org/b", "2.0", "key-b"));
+        packages.put(first, new PackageInfo("http://example.org/a", "1", null));
+        PackageArchive.write(archive, workDir.resolve("classes"), packages);
+        assertTrue(PackageArchive.containsPackages(archive));
+        Path extracted = Files.createDirectory(workDir.resolve("extracted"));
+        Map<Path,PackageInfo> files = PackageArchive.extract(archive, extracted);
+        assertEquals(2, files.size());
+        List<Path> paths = new ArrayList<>(files.keySet());
+        // entries are sorted by name
+        assertEquals("a", new String(Files.readAllBytes(paths.get(0)), StandardCharsets.UTF_8));
+        assertEquals("b", new String(Files.readAllBytes(paths.get(1)), StandardCharsets.UTF_8));
+        assertFalse("a has no sources key", files.get(paths.get(0)).isComplete());
+        PackageInfo b = files.get(paths.get(1));
+        assertEquals("http://example.org/b", b.getName());
+        assertEquals("2.0", b.getVersion());
+        assertEquals("key-b", b.getSourceKey());
+    }
+
+    @Test
+    public void testNoPackages() throws IOException {
+        File notAJar = createFile("classes/a.sef", "a");
+        assertFalse(PackageArchive.containsPackages(notAJar));
+        assertFalse(PackageArchive.containsPackages(workDir.resolve("classes").toFile()));
+        assertFalse(PackageArchive.containsPackages(workDir.resolve("missing.jar").toFile()));
+        createFile("classes/" + PackageArchive.DIRECTORY + "a.sef", "a");
+        assertTrue(PackageArchive.containsPackages(workDir.resolve("classes").toFile()));
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.parsers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DefaultHandler2;
+import org.xml.sax.helpers.DefaultHandler;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link XcSAXParserFactory}
+ * @author cmarchand
+ */
+public class XcSAXParserFactoryTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private File workDir;
+    private final List<String> resolved = new ArrayList<>();
+
+    @Before
+    public void before() throws IOException {
+        workDir = temporaryFolder.newFolder("saxParsers");
+        write("entities.dtd", "<!ENTITY nbsp '&#160;'>\n<!ENTITY % more SYSTEM 'more.ent'>\n%more;\n<!ATTLIST root a CDATA 'default'>");
+        write("more.ent", "<!ENTITY copy '&#169;'>");
+        write("attributes.dtd", "<!ATTLIST root a CDATA 'default'>");
+        write("entities.xml", "<!DOCTYPE root SYSTEM 'entities.dtd'><root>&nbsp;&copy;</root>");
+        write("attributes.xml", "<!DOCTYPE root SYSTEM 'attributes.dtd'><root>x</root>");
+        XcSAXParserFactory.setParsingCache(new ParsingCache());
+        XcSAXParserFactory.setEntityResolver(new DefaultHandler2() {
+            @Override
+            public InputSource resolveEntity(String name, String publicId, String baseURI, String systemId) {
+                resolved.add(systemId);
+                return null;
+            }
+        });
+    }
+
+    @After
+    public void after() {
+        XcSAXParserFactory.setEntityResolver(null);
+        XcSAXParserFactory.setParsingCache(null);
+    }
+
+    private void write(String name, String content) throws IOException {
+        Files.write(new File(workDir, name).toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String parse(String name) throws Exception {
+        XMLReader reader = new XcSAXParserFactory().newSAXParser().getXMLReader();
+        reader.setFeature("http://xml.org/sax/features/namespaces", true);
+        StringBuilder sb = new StringBuilder();
+        reader.setContentHandler(new DefaultHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                sb.append(attributes.getValue("a")).append(':');
+            }
+            @Override
+            public void characters(char[] ch, int start, int length) {
+                sb.append(ch, start, length);
+            }
+        });
+        reader.parse(new File(workDir, name).toURI().toString());
+        return sb.toString();
+    }
+
+    @Test
+    public void testEntitiesAreKept() throws Exception {
+        for(int i=0; i<3; i++) {
+            assertEquals("default:\u00a0\u00a9", parse("entities.xml"));
+        }
+        // DTDs that declare entities are read each time
+        assertEquals(6, resolved.size());
+    }
+
+    @Test
+    public void testGrammarIsShared() throws Exception {
+        for(int i=0; i<3; i++) {
+            assertEquals("default:x", parse("attributes.xml"));
+        }
+        assertEquals(1, resolved.size());
+        XcSAXParserFactory.setParsingCache(new ParsingCache());
+        parse("attributes.xml");
+        assertEquals(2, resolved.size());
+    }
+
+    @Test
+    public void testCachesAreNotShared() throws Exception {
+        ParsingCache first = new ParsingCache();
+        XcSAXParserFactory.setParsingCache(first);
+        parse("attributes.xml");
+        // as another module of the build, with another catalog
+        XcSAXParserFactory.setParsingCache(new ParsingCache());
+        parse("attributes.xml");
+        assertEquals(2, resolved.size());
+        XcSAXParserFactory.setParsingCache(first);
+        parse("attributes.xml");
+        assertEquals(2, resolved.size());
+    }
+
+    @Test
+    public void testNoCache() throws Exception {
+        XcSAXParserFactory.setParsingCache(null);
+        parse("attributes.xml");
+        parse("attributes.xml");
+        assertEquals(2, resolved.size());
+    }
+
+    @Test
+    public void testFeatures() throws Exception {
+        XMLReader reader = new XcSAXParserFactory().newSAXParser().getXMLReader();
+        reader.setFeature("http://xml.org/sax/features/namespace-prefixes", true);
+        assertTrue(reader.getFeature("http://xml.org/sax/features/namespace-prefixes"));
+        try {
+            reader.setFeature("http://example.org/unknown", true);
+            fail("an unknown feature should be rejected when it is set");
+        } catch(SAXNotRecognizedException ex) {
+            // expected
+        }
+        assertEquals("default:x", parse("attributes.xml"));
+    }
+
+    @Test
+    public void testReleaseThread() throws Exception {
+        parse("attributes.xml");
+        assertEquals(1, resolved.size());
+        XcSAXParserFactory.releaseThread();
+        // the entity resolver and the cache of this thread have been forgotten
+        parse("attributes.xml");
+        assertEquals(1, resolved.size());
+    }
+
+    @Test(expected = SAXException.class)
+    public void testReaderIsReusableAfterError() throws Exception {
+        write("broken.xml", "<root>");
+        try {
+            parse("broken.xml");
+        } catch(SAXException ex) {
+            assertEquals("default:x", parse("attributes.xml"));
+            throw ex;
+        }
+    }
+}
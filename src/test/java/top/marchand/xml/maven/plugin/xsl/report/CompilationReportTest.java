@@ -0,0 +1,77 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.report;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link CompilationReport}
+ * @author cmarchand
+ */
+public class CompilationReportTest {
+
+    @Test
+    public void testSlowest() {
+        CompilationReport report = new CompilationReport();
+        report.start(new File("a.sef"), "file:/a.xsl").addTime(CompilationReport.Phase.COMPILE, 10);
+        CompilationReport.Entry b = report.start(new File("b.sef"), "file:/b.xsl");
+        b.addTime(CompilationReport.Phase.SNIFF, 20);
+        b.addTime(CompilationReport.Phase.EXPORT, 20);
+        report.start(new File("c.sef"), "file:/c.xsl").addTime(CompilationReport.Phase.COMPILE, 30);
+        List<CompilationReport.Entry> slowest = report.getSlowest(2);
+        assertEquals(2, slowest.size());
+        assertEquals("file:/b.xsl", slowest.get(0).getSource());
+        assertEquals("file:/c.xsl", slowest.get(1).getSource());
+        assertEquals(3, report.getSlowest(10).size());
+    }
+
+    @Test
+    public void testCsvAndJson() throws IOException {
+        CompilationReport report = new CompilationReport();
+        CompilationReport.Entry entry = report.start(new File("a.sef"), "file:/dir,1/\"a\".xsl");
+        entry.setPackage(true);
+        entry.setSourceSize(12);
+        entry.addTime(CompilationReport.Phase.COMPILE, 3_000_000);
+        report.start(new File("b.sef"), "file:/b.xsl").setStatus(CompilationReport.Status.FAILED);
+        StringWriter csv = new StringWriter();
+        CompilationReport.writeCsv(report.getEntries(), csv);
+        String[] lines = csv.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("\"file:/dir,1/\"\"a\"\".xsl\",a.sef,compiled,true,0,3,0,12,-1,-1", lines[2]);
+        assertEquals("file:/b.xsl,b.sef,failed,false,0,0,0,-1,-1,-1", lines[1]);
+        StringWriter json = new StringWriter();
+        CompilationReport.writeJson(Arrays.asList(entry), json);
+        assertTrue(json.toString().contains("{\"source\": \"file:/dir,1/\\\"a\\\".xsl\", \"target\": \"a.sef\", \"status\": \"compiled\", \"package\": true, \"sniffMs\": 0, \"compileMs\": 3,"));
+    }
+}
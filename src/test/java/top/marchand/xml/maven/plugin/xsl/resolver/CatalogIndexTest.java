@@ -0,0 +1,126 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.resolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xmlresolver.Catalog;
+import org.xmlresolver.Resolver;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link CatalogIndex} and {@link MemoizingResolver}
+ * @author cmarchand
+ */
+public class CatalogIndexTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private File workDir;
+    private File catalog;
+
+    @Before
+    public void before() throws IOException {
+        workDir = temporaryFolder.newFolder("catalogIndex");
+        catalog = write("catalog.xml",
+                "",
+                "<uri name='http://lib/common.xsl' uri='lib/common.xsl'/>",
+                "<group xml:base='lib/'><uri name='http://lib/util.xsl' uri='util.xsl'/></group>",
+                "<system systemId='http://lib/doc.dtd' uri='lib/doc.dtd'/>",
+                "<nextCatalog catalog='next.xml'/>",
+                "<nextCatalog catalog='last.xml'/>");
+        write("next.xml",
+                "",
+                "<uri name='http://lib/common.xsl' uri='other/common.xsl'/>",
+                "<uri name='http://next/a.xsl' uri='a.xsl'/>",
+                "<rewriteURI uriStartString='http://rewritten/' rewritePrefix='rewritten/'/>",
+                "<nextCatalog catalog='deep.xml'/>");
+        write("deep.xml", "", "<uri name='http://deep/a.xsl' uri='a.xsl'/>");
+        write("last.xml", "", "<uri name='http://last/a.xsl' uri='a.xsl'/>");
+        for(String module: new String[] { "lib/common.xsl", "lib/util.xsl", "a.xsl" }) {
+            File f = new File(workDir, module);
+            f.getParentFile().mkdirs();
+            Files.write(f.toPath(), "<xsl:stylesheet/>".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private File write(String name, String doctype, String... entries) throws IOException {
+        StringBuilder sb = new StringBuilder("<?xml version='1.0'?>\n").append(doctype).append('\n');
+        sb.append("<catalog xmlns='urn:oasis:names:tc:entity:xmlns:xml:catalog'>\n");
+        for(String entry: entries) sb.append(entry).append('\n');
+        sb.append("</catalog>\n");
+        File ret = new File(workDir, name);
+        Files.write(ret.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+        return ret;
+    }
+
+    private String systemId(String path) {
+        return "file://"+new File(workDir, path).toURI().getPath();
+    }
+
+    @Test
+    public void testIndex() throws IOException {
+        CatalogIndex index = CatalogIndex.build(catalog.toURI().toString());
+        assertEquals(2, index.getCatalogCount());
+        assertEquals(systemId("lib/common.xsl"), index.lookup("http://lib/common.xsl", null));
+        assertEquals(systemId("lib/util.xsl"), index.lookup("http://lib/util.xsl", null));
+        assertEquals(systemId("a.xsl"), index.lookup("a.xsl", "http://next/b.xsl"));
+        // after a rewriteURI, only the catalog resolver knows
+        assertNull(index.lookup("http://deep/a.xsl", null));
+        assertNull(index.lookup("http://last/a.xsl", null));
+        assertNull(index.lookup("http://lib/doc.dtd", null));
+    }
+
+    @Test
+    public void testSameAsCatalogResolver() throws IOException, TransformerException {
+        Resolver catalogResolver = new Resolver(new Catalog(catalog.toURI().toString()));
+        CatalogIndex index = CatalogIndex.build(catalog.toURI().toString());
+        for(String href: new String[] { "http://lib/common.xsl", "http://lib/util.xsl", "http://next/a.xsl" }) {
+            Source source = catalogResolver.resolve(href, null);
+            assertEquals(href, source.getSystemId(), index.lookup(href, null));
+        }
+    }
+
+    @Test
+    public void testMemoize() throws IOException, TransformerException {
+        MemoizingResolver resolver = new MemoizingResolver(new Resolver(new Catalog(catalog.toURI().toString())), null);
+        Source first = resolver.resolve("http://lib/common.xsl", null);
+        Source second = resolver.resolve("http://lib/common.xsl", null);
+        assertNotSame(first, second);
+        assertEquals(first.getSystemId(), second.getSystemId());
+        resolver.clear();
+        assertEquals(first.getSystemId(), resolver.resolve("http://lib/common.xsl", null).getSystemId());
+    }
+}
@@ -27,13 +27,22 @@
 package top.marchand.xml.maven.plugin.xsl.scandir;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.maven.monitor.logging.DefaultLog;
 import org.apache.maven.plugin.logging.Log;
 import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import static org.junit.Assert.*;
 import org.junit.BeforeClass;
@@ -44,6 +53,8 @@ import top.marchand.xml.maven.plugin.xsl.FileSet;
  * @author cmarchand
  */
 public class DirectoryScannerTest {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
 	private static Log log;
 
     @BeforeClass
@@ -98,4 +109,114 @@ public class DirectoryScannerTest {
 		assertEquals("Only one file should be found", 1, ret.size());
 		assertEquals(Paths.get("pipes", "form", "prepare.xml").toString(), ret.get(0).toString());
 	}
+
+	@Test
+	public void testPrunedDirectories() throws IOException {
+		File root = temporaryFolder.newFolder("scanner");
+		for(String name: new String[] {"src/x/a.xsl", "src/CVS/b.xsl", "node_modules/lib/c.xsl", "other/d.xsl"}) {
+			File f = new File(root, name);
+			f.getParentFile().mkdirs();
+			Files.write(f.toPath(), new byte[0]);
+		}
+		FileSet fileset = new FileSet(root.getAbsolutePath());
+		fileset.getIncludes().clear();
+		fileset.getIncludes().add("src/**/*.xsl");
+		fileset.getIncludes().add("node_modules/**/*.xsl");
+		fileset.getExcludes().add("node_modules/**");
+		DirectoryScanner scanner = new DirectoryScanner(fileset, root, log);
+		final List<String> scanned = new ArrayList<>();
+		scanner.setScanListener(new ScanListener() {
+			@Override
+			public void scanning(File dir) { scanned.add(root.toPath().relativize(dir.toPath()).toString()); }
+			@Override
+			public void fileAccepted(Path rel) { }
+			@Override
+			public void fileRejected(Path rel) { }
+		});
+		List<Path> ret = scanner.scan();
+		assertEquals(1, ret.size());
+		assertEquals(Paths.get("src", "x", "a.xsl"), ret.get(0));
+		assertTrue("src should be scanned", scanned.contains("src"));
+		assertFalse("CVS is excluded by default", scanned.contains(Paths.get("src", "CVS").toString()));
+		assertFalse("node_modules is excluded", scanned.contains("node_modules"));
+		assertFalse("no include matches other/", scanned.contains("other"));
+	}
+
+	@Test
+	public void testScannedDirectories() throws IOException {
+		File root = temporaryFolder.newFolder("scanner");
+		for(String name: new String[] {"src/x/a.xsl", ".git/objects/b", "node_modules/lib/c.xsl"}) {
+			File f = new File(root, name);
+			f.getParentFile().mkdirs();
+			Files.write(f.toPath(), new byte[0]);
+		}
+		FileSet fileset = new FileSet(root.getAbsolutePath());
+		fileset.getExcludes().add("node_modules/**");
+		DirectoryScanner scanner = new DirectoryScanner(fileset, root, log);
+		Set<Path> dirs = new HashSet<>();
+		for(Path dir: scanner.getScannedDirectories(root.toPath())) dirs.add(root.toPath().relativize(dir));
+		assertEquals(new HashSet<>(Arrays.asList(Paths.get(""), Paths.get("src"), Paths.get("src", "x"))), dirs);
+		assertEquals(Arrays.asList(new File(root, "src").toPath()), scanner.getScannedDirectories(new File(root, "src").toPath()).subList(0, 1));
+		assertTrue("excluded directory", scanner.getScannedDirectories(new File(root, "node_modules/lib").toPath()).isEmpty());
+		assertTrue(scanner.isAccepted(Paths.get("src", "y.xsl")));
+		assertFalse(scanner.isAccepted(Paths.get("node_modules", "y.xsl")));
+	}
+
+	@Test
+	public void testLeadingSlash() throws IOException {
+		File root = temporaryFolder.newFolder("scanner");
+		for(String name: new String[] {"lib/a.xsl", "src/lib/b.xsl", "src/c.xsl", ".git/d.xsl"}) {
+			File f = new File(root, name);
+			f.getParentFile().mkdirs();
+			Files.write(f.toPath(), new byte[0]);
+		}
+		FileSet fileset = new FileSet(root.getAbsolutePath());
+		fileset.getIncludes().clear();
+		fileset.getIncludes().add("/**/*.xsl");
+		fileset.getExcludes().add("/lib/**");
+		DirectoryScanner scanner = new DirectoryScanner(fileset, root, log);
+		assertEquals(Arrays.asList(Paths.get("src", "c.xsl"), Paths.get("src", "lib", "b.xsl")), scanner.scan());
+		// files are filtered as directories are
+		assertFalse(scanner.isAccepted(Paths.get("lib", "a.xsl")));
+		assertFalse("excluded by default", scanner.isAccepted(Paths.get(".git", "d.xsl")));
+		assertTrue(scanner.isAccepted(Paths.get("src", "lib", "a.xsl")));
+	}
+
+	@Test
+	public void testOrderIsDeterministic() throws IOException {
+		File root = temporaryFolder.newFolder("scanner");
+		List<Path> expected = new ArrayList<>();
+		for(int d=0; d<10; d++) {
+			for(int f=0; f<5; f++) {
+				Path rel = Paths.get("d"+d, "f"+f+".xsl");
+				File file = root.toPath().resolve(rel).toFile();
+				file.getParentFile().mkdirs();
+				Files.write(file.toPath(), new byte[0]);
+				expected.add(rel);
+			}
+		}
+		final List<Path> accepted = new ArrayList<>();
+		DirectoryScanner scanner = new DirectoryScanner(root, log);
+		scanner.setScanListener(new ScanListener() {
+			@Override
+			public void scanning(File dir) { }
+			@Override
+			public void fileAccepted(Path rel) { accepted.add(rel); }
+			@Override
+			public void fileRejected(Path rel) { }
+		});
+		assertEquals(expected, scanner.scan());
+		assertEquals("listener should be notified of each file", expected.size(), accepted.size());
+	}
+
+	@Test
+	public void testScanToConsumer() {
+		DirectoryScanner scanner = new DirectoryScanner(
+				new File("src/test/resources/DirectoryScanner"),
+				log
+		);
+		final Set<Path> found = ConcurrentHashMap.newKeySet();
+		scanner.scan(found::add);
+		assertEquals(new HashSet<>(scanner.scan()), found);
+	}
 }
@@ -0,0 +1,103 @@
+/**
+ * Copyright © 2017, Christophe Marchand
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package top.marchand.xml.maven.plugin.xsl.scandir;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import top.marchand.xml.maven.plugin.xsl.FileSet;
+
+/**
+ * Tests {@link GlobMatcher}
+ * @author cmarchand
+ */
+public class GlobMatcherTest {
+    private static final List<String> PATTERNS = new ArrayList<>(FileSet.getDefaultExcludes());
+    static {
+        PATTERNS.addAll(FileSet.getDefaultIncludes());
+        PATTERNS.addAll(Arrays.asList(
+                "pipes/form/prepare.xml", "**/xml/**/*.xsl", "**/xml/*.xsl", "**/??.xsl",
+                "lib/**", "*.{xsl,xslt}", "**/[a-c]*.xsl", "**/[!a-c]*.xml", "regex:.*\\.sef"));
+    }
+    private static final List<String> PATHS = Arrays.asList(
+            "a.xsl", "a.xslt", "dir/a.xsl", "dir/sub/b.xml", "CVS", "dir/CVS", "dir/CVS/x.xsl", "CVS/x.xsl",
+            "x.xsl~", "dir/#tmp#", "dir/.#lock", "dir/%x%", "dir/._res", ".gitignore", "dir/.gitignore",
+            "pipes/form/prepare.xml", "pipes/prepare.xml", "top/xml/1.xsl", "top/xml/files/AA.xsl", "xml/1.xsl",
+            "lib/a/b.xsl", "lib", "sub/lib/a.xsl", "dir/c.xsl", "dir/d.xml", "dir/a.sef", "AA.xsl");
+
+    @Test
+    public void testSameAsPathMatcher() {
+        for(String pattern: PATTERNS) {
+            // a leading / only anchors the glob to the base directory
+            String syntax = pattern.startsWith("regex:") ? pattern : "glob:"+GlobMatcher.normalize(pattern);
+            PathMatcher expected = FileSystems.getDefault().getPathMatcher(syntax);
+            GlobMatcher actual = new GlobMatcher(Collections.singletonList(pattern));
+            for(String path: PATHS) {
+                Path rel = Paths.get(path);
+                assertEquals(pattern+" on "+path, expected.matches(rel), actual.matches(rel));
+            }
+        }
+    }
+
+    @Test
+    public void testCombined() {
+        GlobMatcher matcher = new GlobMatcher(PATTERNS);
+        for(String path: PATHS) {
+            Path rel = Paths.get(path);
+            boolean expected = false;
+            for(String pattern: PATTERNS) {
+                String syntax = pattern.startsWith("regex:") ? pattern : "glob:"+GlobMatcher.normalize(pattern);
+                expected |= FileSystems.getDefault().getPathMatcher(syntax).matches(rel);
+            }
+            assertEquals(path, expected, matcher.matches(rel));
+        }
+    }
+
+    @Test
+    public void testLeadingSlash() {
+        GlobMatcher matcher = new GlobMatcher(Arrays.asList("/lib/**", "glob:/a.xsl", "//b.xsl"));
+        assertTrue(matcher.matches(Paths.get("lib", "x.xsl")));
+        assertTrue(matcher.matches(Paths.get("a.xsl")));
+        assertTrue(matcher.matches(Paths.get("b.xsl")));
+        assertFalse("anchored to base directory", matcher.matches(Paths.get("src", "lib", "x.xsl")));
+        assertFalse("anchored to base directory", matcher.matches(Paths.get("src", "a.xsl")));
+        assertEquals("regex:/a", GlobMatcher.normalize("regex:/a"));
+    }
+
+    @Test
+    public void testEmpty() {
+        assertFalse(new GlobMatcher(Collections.<String>emptyList()).matches(Paths.get("a.xsl")));
+    }
+}
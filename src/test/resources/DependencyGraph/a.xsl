@@ -0,0 +1,8 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<xsl:stylesheet xmlns:xsl="http://www.w3.org/1999/XSL/Transform" version="3.0">
+    <xsl:import href="lib/util.xsl"/>
+    <xsl:template match="/">
+        <xsl:include href="not-a-declaration.xsl"/>
+    </xsl:template>
+    <xsl:include href="inc.xsl"/>
+</xsl:stylesheet>
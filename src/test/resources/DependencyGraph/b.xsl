@@ -0,0 +1,7 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<xsl:stylesheet xmlns:xsl="http://www.w3.org/1999/XSL/Transform" version="3.0">
+    <xsl:use-package name="http://example.org/p" package-version="1.0"/>
+    <xsl:template match="/">
+        <xsl:call-template name="p"/>
+    </xsl:template>
+</xsl:stylesheet>
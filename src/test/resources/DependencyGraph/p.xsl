@@ -0,0 +1,5 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<xsl:package xmlns:xsl="http://www.w3.org/1999/XSL/Transform" name="http://example.org/p" package-version="1.0" version="3.0">
+    <xsl:include href="lib/util.xsl"/>
+    <xsl:template name="p" visibility="public"/>
+</xsl:package>
@@ -0,0 +1,4 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<html xmlns:xsl="http://www.w3.org/1999/XSL/Transform" xsl:version="3.0">
+    <xsl:import href="ignored.xsl"/>
+</html>